@@ -0,0 +1,23 @@
+package jahspotify;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link PlaybackListener} which reads the audio straight from the direct buffer when direct
+ * audio delivery is enabled. Listeners which only implement {@link PlaybackListener} get a
+ * copy of the frames through {@link PlaybackListener#addToBuffer(byte[])} instead.
+ */
+public interface DirectPlaybackListener extends PlaybackListener
+{
+    /**
+     * Called instead of {@link #addToBuffer(byte[])} when direct audio delivery is enabled.
+     * The buffer is positioned at the first byte of the delivered frames and its limit is
+     * set to the end of them. It is shared with the native side and reused for the next
+     * delivery, so the data must be consumed (or copied) before this method returns.
+     *
+     * @param buffer Native ordered PCM data.
+     * @param frames The number of frames between the position and the limit of the buffer.
+     * @return The number of frames that were consumed.
+     */
+    public int addToBuffer(ByteBuffer buffer, int frames);
+}
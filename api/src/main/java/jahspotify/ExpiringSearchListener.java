@@ -0,0 +1,15 @@
+package jahspotify;
+
+/**
+ * A {@link SearchListener} which is told when its search did not complete in time. Listeners
+ * which only implement {@link SearchListener} are dropped silently when their search expires.
+ */
+public interface ExpiringSearchListener extends SearchListener
+{
+    /**
+     * Called instead of {@link #searchComplete(SearchResult)} when the search did not complete
+     * within the timeout, <code>jahspotify.search.timeout</code>. The listener is not called
+     * afterwards, also not when the result arrives late.
+     */
+    public void searchExpired();
+}
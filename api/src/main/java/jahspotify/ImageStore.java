@@ -0,0 +1,334 @@
+package jahspotify;
+
+import jahspotify.media.Link;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps the images which were loaded by {@link JahSpotify}, by their image id. Recently used
+ * images are kept on the heap up to a byte budget. When a directory is configured every
+ * image is also written there, and images which aren't on the heap anymore are mapped from
+ * their file instead of being loaded again. A mapped image takes the place of the evicted one,
+ * so it isn't mapped again on the next read. The settings are read from the system properties:
+ * <ul>
+ * <li><code>jahspotify.images.dir</code>: the directory for the images, no images are written to disk when it is not set.</li>
+ * <li><code>jahspotify.images.memory</code>: the number of bytes kept on the heap, 16MB by default.</li>
+ * </ul>
+ * The buffers which are returned are read only and shared, they should not be modified.
+ */
+public class ImageStore
+{
+    private static Log _log = LogFactory.getLog(ImageStore.class);
+
+    private final File _directory;
+    private final long _memoryBudget;
+    private final Executor _writer;
+
+    private final LinkedHashMap<String, ByteBuffer> _memory = new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true);
+    private long _memoryBytes;
+
+    private final AtomicLong _memoryHits = new AtomicLong();
+    private final AtomicLong _diskHits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _written = new AtomicLong();
+
+    public ImageStore()
+    {
+        this(System.getProperty("jahspotify.images.dir") == null ? null : new File(System.getProperty("jahspotify.images.dir")),
+                Long.getLong("jahspotify.images.memory", 16 * 1024 * 1024));
+    }
+
+    /**
+     * @param directory The directory the images are written to, or null to keep them on the heap only.
+     * @param memoryBudget The number of bytes kept on the heap.
+     */
+    public ImageStore(final File directory, final long memoryBudget)
+    {
+        _directory = directory;
+        _memoryBudget = Math.max(0, memoryBudget);
+        if (_directory != null && !_directory.isDirectory() && !_directory.mkdirs())
+        {
+            _log.warn("Unable to create the image directory " + _directory);
+        }
+
+        final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "JahSpotify image store");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        writer.allowCoreThreadTimeOut(true);
+        _writer = writer;
+    }
+
+    /**
+     * Returns the image with the id of the link.
+     *
+     * @param link An image link.
+     * @return The image data, or null if the image is not stored.
+     */
+    public ByteBuffer get(final Link link)
+    {
+        final String id = link.getImageId();
+        if (id == null)
+        {
+            return null;
+        }
+
+        synchronized (_memory)
+        {
+            final ByteBuffer buffer = _memory.get(id);
+            if (buffer != null)
+            {
+                _memoryHits.incrementAndGet();
+                return buffer.duplicate();
+            }
+        }
+
+        final ByteBuffer mapped = map(id);
+        if (mapped == null)
+        {
+            _misses.incrementAndGet();
+            return null;
+        }
+        _diskHits.incrementAndGet();
+        remember(id, mapped);
+        return mapped.duplicate();
+    }
+
+    /**
+     * Stores the image with the id of the link. The bytes are kept as they are, they should
+     * not be changed afterwards.
+     *
+     * @param link An image link.
+     * @param bytes The image data.
+     */
+    public void put(final Link link, final byte[] bytes)
+    {
+        final String id = link.getImageId();
+        if (id == null || bytes == null)
+        {
+            return;
+        }
+
+        remember(id, ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+        if (_directory != null)
+        {
+            _writer.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    write(id, bytes);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes the image from the heap and from disk.
+     */
+    public void invalidate(final Link link)
+    {
+        final String id = link.getImageId();
+        if (id == null)
+        {
+            return;
+        }
+        synchronized (_memory)
+        {
+            final ByteBuffer removed = _memory.remove(id);
+            if (removed != null)
+            {
+                _memoryBytes -= removed.capacity();
+            }
+        }
+        if (_directory != null)
+        {
+            new File(_directory, id).delete();
+        }
+    }
+
+    private void remember(final String id, final ByteBuffer buffer)
+    {
+        if (buffer.capacity() > _memoryBudget)
+        {
+            return;
+        }
+        synchronized (_memory)
+        {
+            final ByteBuffer previous = _memory.put(id, buffer);
+            if (previous != null)
+            {
+                _memoryBytes -= previous.capacity();
+            }
+            _memoryBytes += buffer.capacity();
+
+            for (Iterator<Map.Entry<String, ByteBuffer>> it = _memory.entrySet().iterator(); _memoryBytes > _memoryBudget && it.hasNext();)
+            {
+                _memoryBytes -= it.next().getValue().capacity();
+                it.remove();
+            }
+        }
+    }
+
+    private ByteBuffer map(final String id)
+    {
+        if (_directory == null)
+        {
+            return null;
+        }
+        final File file = new File(_directory, id);
+        if (!file.isFile())
+        {
+            return null;
+        }
+
+        RandomAccessFile in = null;
+        try
+        {
+            in = new RandomAccessFile(file, "r");
+            final FileChannel channel = in.getChannel();
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asReadOnlyBuffer();
+        }
+        catch (IOException e)
+        {
+            _log.warn("Unable to read image " + file, e);
+            return null;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    /**
+     * Writes the image to a temporary file which is renamed when complete, so a partial file
+     * is never mapped. The data for an image id doesn't change, so an existing file is kept.
+     */
+    private void write(final String id, final byte[] bytes)
+    {
+        final File file = new File(_directory, id);
+        if (file.isFile())
+        {
+            return;
+        }
+
+        final File temporary = new File(_directory, id + ".tmp");
+        FileOutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(temporary);
+            out.write(bytes);
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file))
+            {
+                temporary.delete();
+                return;
+            }
+            _written.incrementAndGet();
+        }
+        catch (IOException e)
+        {
+            _log.warn("Unable to write image " + file, e);
+            temporary.delete();
+        }
+        finally
+        {
+            close(out);
+        }
+    }
+
+    private static void close(final Closeable closeable)
+    {
+        if (closeable == null)
+        {
+            return;
+        }
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            // Nothing left to do.
+        }
+    }
+
+    public File getDirectory()
+    {
+        return _directory;
+    }
+
+    /**
+     * @return The number of bytes of the images which are on the heap.
+     */
+    public long getMemoryBytes()
+    {
+        synchronized (_memory)
+        {
+            return _memoryBytes;
+        }
+    }
+
+    public long getMemoryHits()
+    {
+        return _memoryHits.get();
+    }
+
+    public long getDiskHits()
+    {
+        return _diskHits.get();
+    }
+
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    /**
+     * @return The number of images which were written to disk.
+     */
+    public long getWritten()
+    {
+        return _written.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ImageStore{" +
+                "directory=" + _directory +
+                ", memoryBytes=" + getMemoryBytes() +
+                ", memoryBudget=" + _memoryBudget +
+                ", memoryHits=" + _memoryHits +
+                ", diskHits=" + _diskHits +
+                ", misses=" + _misses +
+                ", written=" + _written +
+                '}';
+    }
+}
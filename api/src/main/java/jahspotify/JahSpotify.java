@@ -9,6 +9,8 @@ import jahspotify.media.TopListType;
 import jahspotify.media.Track;
 import jahspotify.media.User;
 
+import java.util.List;
+
 /**
  * Main interface into the Spotify system. This provides the API's required to
  * login and interact with the Spotify APIs.
@@ -77,6 +79,18 @@ public interface JahSpotify {
 	 */
 	public Track readTrack(Link link);
 
+	/**
+	 * Read the information for the specified tracks in one call to the native
+	 * library. Tracks which are not yet loaded are returned unloaded and will
+	 * be filled in when the metadata arrives.
+	 * 
+	 * @param links
+	 *            The links for the tracks in question
+	 * @return The tracks, in the same order as the links. An entry is null if
+	 *         the link could not be resolved to a track.
+	 */
+	public List<Track> readTracks(List<Link> links);
+
 	/**
 	 * Read the information for the specified album.
 	 * 
@@ -140,6 +154,31 @@ public interface JahSpotify {
 	 */
 	public void setBitrate(Bitrate rate);
 
+	/**
+	 * Turns the volume normalization of libspotify on or off, it is off by
+	 * default. It applies to the audio for every listener, the
+	 * {@link jahspotify.services.MediaPlayer} can normalize its own output
+	 * instead.
+	 * 
+	 * @param normalize
+	 */
+	public void setVolumeNormalization(boolean normalize);
+
+	/**
+	 * Switches between delivering audio as a new byte array for every callback
+	 * and writing it to a long lived direct buffer which is passed to
+	 * {@link DirectPlaybackListener#addToBuffer(java.nio.ByteBuffer, int)}. Can also
+	 * be enabled with the system property <code>jahspotify.audio.direct</code>.
+	 *
+	 * @param direct
+	 */
+	public void setDirectAudioDelivery(boolean direct);
+
+	/**
+	 * @return true if audio is delivered through a direct buffer.
+	 */
+	public boolean isDirectAudioDelivery();
+
 	/**
 	 * Pauses the currently playing track. Does nothing if nothing is currently
 	 * playing
@@ -156,7 +195,9 @@ public interface JahSpotify {
 
 	/**
 	 * Starts playback of the specified media link. This link may a track, an
-	 * album, a playlist or a playlist folder.
+	 * album, a playlist or a playlist folder. A track which isn't loaded yet
+	 * starts playing once it is, unless another link was played in the
+	 * meantime.
 	 * 
 	 * @param link
 	 *            The link of the media to play
@@ -226,24 +267,58 @@ public interface JahSpotify {
 	 */
 	public void addPlaybackListener(PlaybackListener playbackListener);
 
+	/**
+	 * Adds a playback listener which is called before the listeners with a
+	 * lower priority.
+	 * 
+	 * @param playbackListener
+	 * @param priority
+	 *            See {@link jahspotify.util.ListenerRegistry#PRIORITY_AUDIO}.
+	 */
+	public void addPlaybackListener(PlaybackListener playbackListener, int priority);
+
+	/**
+	 * 
+	 * @param playbackListener
+	 */
+	public void removePlaybackListener(PlaybackListener playbackListener);
+
 	/**
 	 * 
 	 * @param playlistListener
 	 */
 	public void addPlaylistListener(PlaylistListener playlistListener);
 
+	/**
+	 * 
+	 * @param playlistListener
+	 */
+	public void removePlaylistListener(PlaylistListener playlistListener);
+
 	/**
 	 * 
 	 * @param connectionListener
 	 */
 	public void addConnectionListener(ConnectionListener connectionListener);
 
+	/**
+	 * 
+	 * @param connectionListener
+	 */
+	public void removeConnectionListener(ConnectionListener connectionListener);
+
 	/**
 	 * 
 	 * @param searchListener
 	 */
 	public void addSearchListener(SearchListener searchListener);
 
+	/**
+	 * 
+	 * @param searchListener
+	 */
+	public void removeSearchListener(SearchListener searchListener);
+
 	/**
 	 * Shuts down the JahSpotify instance.
 	 */
@@ -251,4 +326,47 @@ public interface JahSpotify {
 	
 	public PlayerStatus getStatus(); 
 
+	/**
+	 * Returns the number of searches started with
+	 * {@link #initiateSearch(Search, SearchListener)} which did not complete
+	 * yet. Searches which don't complete within
+	 * <code>jahspotify.search.timeout</code> milliseconds (15 seconds by
+	 * default) are dropped and their listener is not called anymore.
+	 *
+	 * @return The number of searches in flight.
+	 */
+	public int getSearchesInFlight();
+
+	/**
+	 * Returns the dispatcher which runs the listener callbacks, it also keeps the
+	 * queue depth of the callbacks.
+	 *
+	 * @return The listener dispatcher.
+	 */
+	public ListenerDispatcher getListenerDispatcher();
+
+	/**
+	 * Returns the cache of the tracks, albums and artists which were read. An
+	 * entry can be invalidated when its media should be read again, the cache
+	 * also keeps the hit and miss counts.
+	 *
+	 * @return The metadata cache.
+	 */
+	public MetadataCache getMetadataCache();
+
+	/**
+	 * Returns the store of the images which were read. Images which are in the
+	 * store are not loaded again.
+	 *
+	 * @return The image store.
+	 */
+	public ImageStore getImageStore();
+
+	/**
+	 * Reads the counters kept by the native library.
+	 *
+	 * @return A new snapshot of the native counters.
+	 */
+	public NativeStatistics getNativeStatistics();
+
 }
@@ -0,0 +1,317 @@
+package jahspotify;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs the listener callbacks of {@link JahSpotify} off the native callback thread. The mode is
+ * read from the system property <code>jahspotify.listener.dispatch</code>:
+ * <ul>
+ * <li><code>serial</code> (default): a bounded pool, the events for one listener are delivered in order.</li>
+ * <li><code>pool</code>: a bounded pool without ordering between the events.</li>
+ * <li><code>virtual</code>: a virtual thread per event when the JVM supports them, otherwise <code>pool</code>.</li>
+ * </ul>
+ * The size of the pool is read from <code>jahspotify.listener.threads</code> and defaults to 4.
+ */
+public class ListenerDispatcher
+{
+    public enum Mode
+    {
+        SERIAL,
+        POOL,
+        VIRTUAL;
+    }
+
+    private static Log _log = LogFactory.getLog(ListenerDispatcher.class);
+
+    private final Mode _mode;
+    private final Executor _executor;
+    private final ConcurrentMap<Object, SerialQueue> _serialQueues = new ConcurrentHashMap<Object, SerialQueue>();
+
+    private final AtomicInteger _queueDepth = new AtomicInteger();
+    private final AtomicInteger _maxQueueDepth = new AtomicInteger();
+    private final AtomicLong _dispatched = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+
+    public ListenerDispatcher()
+    {
+        this(parseMode(System.getProperty("jahspotify.listener.dispatch")), Integer.getInteger("jahspotify.listener.threads", 4));
+    }
+
+    public ListenerDispatcher(final Mode mode, final int threads)
+    {
+        final Executor virtual = mode == Mode.VIRTUAL ? createVirtualThreadExecutor() : null;
+        _mode = mode == Mode.VIRTUAL && virtual == null ? Mode.POOL : mode;
+        _executor = virtual != null ? virtual : createPool(Math.max(1, threads));
+    }
+
+    private static Mode parseMode(final String mode)
+    {
+        if (mode == null || mode.length() == 0)
+        {
+            return Mode.SERIAL;
+        }
+        try
+        {
+            return Mode.valueOf(mode.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            _log.warn("Unknown listener dispatch mode " + mode + ", using " + Mode.SERIAL);
+            return Mode.SERIAL;
+        }
+    }
+
+    private static Executor createPool(final int threads)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "JahSpotify listener dispatch " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor, which only exists on newer JVMs.
+     */
+    private static Executor createVirtualThreadExecutor()
+    {
+        try
+        {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e)
+        {
+            _log.info("Virtual threads are not available, using a thread pool for the listeners");
+            return null;
+        }
+    }
+
+    /**
+     * Runs the event for the listener. In the serial mode the events for the same listener
+     * run one after the other, in the order they were dispatched.
+     *
+     * @param listener The listener the event is for.
+     * @param event Calls the listener.
+     */
+    public void dispatch(final Object listener, final Runnable event)
+    {
+        final int depth = _queueDepth.incrementAndGet();
+        int max;
+        while (depth > (max = _maxQueueDepth.get()) && !_maxQueueDepth.compareAndSet(max, depth))
+            ;
+
+        final Runnable counted = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                _queueDepth.decrementAndGet();
+                try
+                {
+                    event.run();
+                }
+                catch (Throwable t)
+                {
+                    _failed.incrementAndGet();
+                    _log.warn("Listener " + listener + " failed", t);
+                }
+                _dispatched.incrementAndGet();
+            }
+        };
+
+        if (_mode != Mode.SERIAL)
+        {
+            _executor.execute(counted);
+            return;
+        }
+
+        // A queue which was removed after it drained refuses the event, the next one is used instead.
+        while (true)
+        {
+            SerialQueue queue = _serialQueues.get(listener);
+            if (queue == null)
+            {
+                final SerialQueue created = new SerialQueue(listener);
+                synchronized (_serialQueues)
+                {
+                    queue = _serialQueues.get(listener);
+                    if (queue == null)
+                    {
+                        _serialQueues.put(listener, created);
+                        queue = created;
+                    }
+                }
+            }
+            if (queue.add(counted))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets the event ordering kept for a listener which was removed. The events which are
+     * still queued for the listener are delivered first, the ordering is dropped once they ran.
+     */
+    public void forget(final Object listener)
+    {
+        final SerialQueue queue = _serialQueues.get(listener);
+        if (queue != null)
+        {
+            queue.retire();
+        }
+    }
+
+    public Mode getMode()
+    {
+        return _mode;
+    }
+
+    /**
+     * @return The number of events which were dispatched but did not start yet.
+     */
+    public int getQueueDepth()
+    {
+        return _queueDepth.get();
+    }
+
+    /**
+     * @return The highest number of events which were waiting at the same time.
+     */
+    public int getMaxQueueDepth()
+    {
+        return _maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of events which have been delivered.
+     */
+    public long getDispatched()
+    {
+        return _dispatched.get();
+    }
+
+    /**
+     * @return The number of events for which the listener threw an exception.
+     */
+    public long getFailed()
+    {
+        return _failed.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ListenerDispatcher{" +
+                "mode=" + _mode +
+                ", queueDepth=" + _queueDepth +
+                ", maxQueueDepth=" + _maxQueueDepth +
+                ", dispatched=" + _dispatched +
+                ", failed=" + _failed +
+                '}';
+    }
+
+    /**
+     * Events of one listener, at most one of them runs on the executor at a time.
+     */
+    private class SerialQueue implements Runnable
+    {
+        private final Object _listener;
+        private final Queue<Runnable> _events = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicBoolean _scheduled = new AtomicBoolean();
+        private boolean _retired;
+        private boolean _removed;
+
+        SerialQueue(final Object listener)
+        {
+            _listener = listener;
+        }
+
+        /**
+         * @return false if the queue was already removed, the event was not added.
+         */
+        boolean add(final Runnable event)
+        {
+            synchronized (this)
+            {
+                if (_removed)
+                {
+                    return false;
+                }
+                _events.add(event);
+            }
+            schedule();
+            return true;
+        }
+
+        /**
+         * Removes the queue once the events which are still queued have run.
+         */
+        void retire()
+        {
+            synchronized (this)
+            {
+                _retired = true;
+            }
+            removeIfDrained();
+        }
+
+        private void removeIfDrained()
+        {
+            synchronized (this)
+            {
+                if (!_retired || _removed || !_events.isEmpty() || _scheduled.get())
+                {
+                    return;
+                }
+                _removed = true;
+            }
+            _serialQueues.remove(_listener, this);
+        }
+
+        private void schedule()
+        {
+            if (!_events.isEmpty() && _scheduled.compareAndSet(false, true))
+            {
+                _executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            Runnable event;
+            while ((event = _events.poll()) != null)
+            {
+                event.run();
+            }
+            _scheduled.set(false);
+            // An event can have been added after the last poll but before the flag was cleared.
+            schedule();
+            removeIfDrained();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package jahspotify;
+
+import jahspotify.media.Album;
+import jahspotify.media.Artist;
+import jahspotify.media.Link;
+import jahspotify.media.LoadableListener;
+import jahspotify.media.Media;
+import jahspotify.media.Track;
+import jahspotify.util.LruCache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the tracks, albums and artists which were read by {@link JahSpotify} so reading them
+ * again doesn't go through the native library. Albums and artists which were browsed are kept
+ * apart from the ones that weren't. Media which isn't loaded yet is only cached once it is loaded,
+ * so a read before that goes to the native library again instead of returning the empty instance.
+ * The sizes and times to live are read from the system properties:
+ * <ul>
+ * <li><code>jahspotify.cache.size</code>: the number of entries per type, 1000 by default, 0 disables the cache.</li>
+ * <li><code>jahspotify.cache.ttl.track</code>, <code>jahspotify.cache.ttl.album</code> and
+ * <code>jahspotify.cache.ttl.artist</code>: the time to live in seconds, 600 by default.</li>
+ * </ul>
+ */
+public class MetadataCache
+{
+    private final LruCache<Key, Track> _tracks;
+    private final LruCache<Key, Album> _albums;
+    private final LruCache<Key, Artist> _artists;
+
+    public MetadataCache()
+    {
+        this(Integer.getInteger("jahspotify.cache.size", 1000),
+                Long.getLong("jahspotify.cache.ttl.track", 600),
+                Long.getLong("jahspotify.cache.ttl.album", 600),
+                Long.getLong("jahspotify.cache.ttl.artist", 600));
+    }
+
+    /**
+     * @param size The maximum number of entries per type.
+     * @param trackTtl The time to live of a track in seconds.
+     * @param albumTtl The time to live of an album in seconds.
+     * @param artistTtl The time to live of an artist in seconds.
+     */
+    public MetadataCache(final int size, final long trackTtl, final long albumTtl, final long artistTtl)
+    {
+        _tracks = new LruCache<Key, Track>(size, trackTtl, TimeUnit.SECONDS);
+        _albums = new LruCache<Key, Album>(size, albumTtl, TimeUnit.SECONDS);
+        _artists = new LruCache<Key, Artist>(size, artistTtl, TimeUnit.SECONDS);
+    }
+
+    public Track getTrack(final Link link)
+    {
+        return _tracks.get(new Key(link, 0));
+    }
+
+    public void putTrack(final Link link, final Track track)
+    {
+        putWhenLoaded(_tracks, new Key(link, 0), track);
+    }
+
+    /**
+     * @param browse The browse flag the album was read with.
+     */
+    public Album getAlbum(final Link link, final int browse)
+    {
+        return _albums.get(new Key(link, browse));
+    }
+
+    public void putAlbum(final Link link, final int browse, final Album album)
+    {
+        putWhenLoaded(_albums, new Key(link, browse), album);
+    }
+
+    /**
+     * @param browse The browse flag the artist was read with.
+     */
+    public Artist getArtist(final Link link, final int browse)
+    {
+        return _artists.get(new Key(link, browse));
+    }
+
+    public void putArtist(final Link link, final int browse, final Artist artist)
+    {
+        putWhenLoaded(_artists, new Key(link, browse), artist);
+    }
+
+    private static <T extends Media<T>> void putWhenLoaded(final LruCache<Key, T> cache, final Key key, final T media)
+    {
+        if (media == null)
+        {
+            return;
+        }
+        if (media.isLoaded())
+        {
+            cache.put(key, media);
+            return;
+        }
+        media.addLoadableListener(new LoadableListener<T>()
+        {
+            @Override
+            public void loaded(final T loaded)
+            {
+                loaded.removeLoadableListener(this);
+                cache.put(key, loaded);
+            }
+        });
+    }
+
+    /**
+     * Removes everything which was cached for the link, browsed or not.
+     *
+     * @return true if anything was removed.
+     */
+    public boolean invalidate(final Link link)
+    {
+        final LruCache.Matcher<Key> matcher = new LruCache.Matcher<Key>()
+        {
+            @Override
+            public boolean matches(final Key key)
+            {
+                return key._link.equals(link);
+            }
+        };
+        int removed = _tracks.invalidateAll(matcher);
+        removed += _albums.invalidateAll(matcher);
+        removed += _artists.invalidateAll(matcher);
+        return removed > 0;
+    }
+
+    public void clear()
+    {
+        _tracks.clear();
+        _albums.clear();
+        _artists.clear();
+    }
+
+    public LruCache<?, Track> getTracks()
+    {
+        return _tracks;
+    }
+
+    public LruCache<?, Album> getAlbums()
+    {
+        return _albums;
+    }
+
+    public LruCache<?, Artist> getArtists()
+    {
+        return _artists;
+    }
+
+    public long getHits()
+    {
+        return _tracks.getHits() + _albums.getHits() + _artists.getHits();
+    }
+
+    public long getMisses()
+    {
+        return _tracks.getMisses() + _albums.getMisses() + _artists.getMisses();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MetadataCache{" +
+                "tracks=" + _tracks +
+                ", albums=" + _albums +
+                ", artists=" + _artists +
+                '}';
+    }
+
+    private static class Key
+    {
+        private final Link _link;
+        private final int _browse;
+
+        Key(final Link link, final int browse)
+        {
+            _link = link;
+            _browse = browse;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            final Key key = (Key) o;
+            return _browse == key._browse && _link.equals(key._link);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * _link.hashCode() + _browse;
+        }
+    }
+}
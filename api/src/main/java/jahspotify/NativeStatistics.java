@@ -0,0 +1,175 @@
+package jahspotify;
+
+/**
+ * Snapshot of counters kept by the native library, filled by {@link JahSpotify#getNativeStatistics()}.
+ */
+public class NativeStatistics
+{
+    private long threadAttaches;
+    private long threadDetaches;
+    private boolean persistentAttach;
+    private int pendingLoads;
+    private int maxPendingLoads;
+    private long pendingWaiters;
+    private long loadsCompleted;
+    private long checkLoadedCalls;
+    private long checkLoadedNanos;
+    private long checkLoadedMaxNanos;
+    private long playRequests;
+    private long parkedPlays;
+    private long timeToFirstAudioCount;
+    private long timeToFirstAudioNanos;
+    private long timeToFirstAudioMaxNanos;
+    private long lastTimeToFirstAudioNanos;
+
+    /**
+     * @return The number of times a native thread was attached to the JVM.
+     */
+    public long getThreadAttaches()
+    {
+        return threadAttaches;
+    }
+
+    /**
+     * @return The number of times a native thread was detached from the JVM.
+     */
+    public long getThreadDetaches()
+    {
+        return threadDetaches;
+    }
+
+    /**
+     * @return true if native threads stay attached between callbacks.
+     */
+    public boolean isPersistentAttach()
+    {
+        return persistentAttach;
+    }
+
+    /**
+     * @return The number of tracks, albums and artists currently waiting for their metadata.
+     */
+    public int getPendingLoads()
+    {
+        return pendingLoads;
+    }
+
+    /**
+     * @return The highest number of tracks, albums and artists that were waiting at the same time.
+     */
+    public int getMaxPendingLoads()
+    {
+        return maxPendingLoads;
+    }
+
+    /**
+     * @return The number of media instances that were queued to be filled in once loaded.
+     */
+    public long getPendingWaiters()
+    {
+        return pendingWaiters;
+    }
+
+    /**
+     * @return The number of media instances that were filled in after their metadata arrived.
+     */
+    public long getLoadsCompleted()
+    {
+        return loadsCompleted;
+    }
+
+    /**
+     * @return The number of sweeps over the pending loads.
+     */
+    public long getCheckLoadedCalls()
+    {
+        return checkLoadedCalls;
+    }
+
+    /**
+     * @return The total time spent sweeping the pending loads, in nanoseconds.
+     */
+    public long getCheckLoadedNanos()
+    {
+        return checkLoadedNanos;
+    }
+
+    /**
+     * @return The longest single sweep over the pending loads, in nanoseconds.
+     */
+    public long getCheckLoadedMaxNanos()
+    {
+        return checkLoadedMaxNanos;
+    }
+
+    /**
+     * @return The number of tracks which were requested to play.
+     */
+    public long getPlayRequests()
+    {
+        return playRequests;
+    }
+
+    /**
+     * @return The number of play requests which waited for their track to load.
+     */
+    public long getParkedPlays()
+    {
+        return parkedPlays;
+    }
+
+    /**
+     * @return The number of plays for which the first audio was delivered.
+     */
+    public long getTimeToFirstAudioCount()
+    {
+        return timeToFirstAudioCount;
+    }
+
+    /**
+     * @return The total time between the play requests and their first audio, in nanoseconds.
+     */
+    public long getTimeToFirstAudioNanos()
+    {
+        return timeToFirstAudioNanos;
+    }
+
+    /**
+     * @return The longest time between a play request and its first audio, in nanoseconds.
+     */
+    public long getTimeToFirstAudioMaxNanos()
+    {
+        return timeToFirstAudioMaxNanos;
+    }
+
+    /**
+     * @return The time between the last play request and its first audio, in nanoseconds.
+     */
+    public long getLastTimeToFirstAudioNanos()
+    {
+        return lastTimeToFirstAudioNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NativeStatistics{" +
+                "threadAttaches=" + threadAttaches +
+                ", threadDetaches=" + threadDetaches +
+                ", persistentAttach=" + persistentAttach +
+                ", pendingLoads=" + pendingLoads +
+                ", maxPendingLoads=" + maxPendingLoads +
+                ", pendingWaiters=" + pendingWaiters +
+                ", loadsCompleted=" + loadsCompleted +
+                ", checkLoadedCalls=" + checkLoadedCalls +
+                ", checkLoadedNanos=" + checkLoadedNanos +
+                ", checkLoadedMaxNanos=" + checkLoadedMaxNanos +
+                ", playRequests=" + playRequests +
+                ", parkedPlays=" + parkedPlays +
+                ", timeToFirstAudioCount=" + timeToFirstAudioCount +
+                ", timeToFirstAudioNanos=" + timeToFirstAudioNanos +
+                ", timeToFirstAudioMaxNanos=" + timeToFirstAudioMaxNanos +
+                ", lastTimeToFirstAudioNanos=" + lastTimeToFirstAudioNanos +
+                '}';
+    }
+}
@@ -9,7 +9,17 @@ public interface PlaybackListener
 {
     public void trackStarted(Link link);
     public void trackEnded(Link link, boolean forcedEnd);
+
+    /**
+     * Called when a track started playing. The returned track is prefetched and, when it has
+     * loaded by the time the current track ends, started right away. In that case
+     * {@link #trackStarted(Link)} is called for it before {@link #trackEnded(Link, boolean)}
+     * is called for the track which ended.
+     *
+     * @return The track to play next, or null to let the player stop.
+     */
     public Link nextTrackToPreload();
+
     public void playTokenLost();
 
     public void setAudioFormat(int rate, int channels);
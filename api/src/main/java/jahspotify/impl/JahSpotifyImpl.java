@@ -2,7 +2,12 @@ package jahspotify.impl;
 
 import jahspotify.Bitrate;
 import jahspotify.ConnectionListener;
+import jahspotify.DirectPlaybackListener;
+import jahspotify.ImageStore;
 import jahspotify.JahSpotify;
+import jahspotify.ListenerDispatcher;
+import jahspotify.MetadataCache;
+import jahspotify.NativeStatistics;
 import jahspotify.PlaybackListener;
 import jahspotify.PlaylistListener;
 import jahspotify.Search;
@@ -13,6 +18,7 @@ import jahspotify.media.Artist;
 import jahspotify.media.Image;
 import jahspotify.media.ImageSize;
 import jahspotify.media.Link;
+import jahspotify.media.LoadableListener;
 import jahspotify.media.Playlist;
 import jahspotify.media.PlaylistContainer;
 import jahspotify.media.TopListType;
@@ -20,21 +26,26 @@ import jahspotify.media.Track;
 import jahspotify.media.User;
 import jahspotify.services.JahSpotifyService;
 import jahspotify.services.MediaHelper;
+import jahspotify.util.ListenerRegistry;
+import jahspotify.util.LruCache;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.imageio.ImageIO;
 
@@ -49,7 +60,21 @@ public class JahSpotifyImpl implements JahSpotify
 	private PlayerStatus status = PlayerStatus.STOPPED;
     private static Log _log = LogFactory.getLog(JahSpotify.class);
 
-    private Lock _libSpotifyLock = new ReentrantLock();
+    private final ListenerDispatcher _dispatcher = new ListenerDispatcher();
+    private final MetadataCache _metadataCache = new MetadataCache();
+    private final ImageStore _imageStore = new ImageStore();
+    private final LruCache<String, Image> _playlistImages = new LruCache<String, Image>(Integer.getInteger("jahspotify.cache.playlistimages", 100), 0, TimeUnit.SECONDS);
+    // The number of changes to the tracks of each playlist which is watched for its image.
+    private final ConcurrentMap<String, AtomicInteger> _watchedPlaylists = new ConcurrentHashMap<String, AtomicInteger>();
+    private static final int PLAYLIST_IMAGE_BATCH = 16;
+    private final NativeCommandQueue _commands = new NativeCommandQueue(new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            nativeWakeup();
+        }
+    });
 
     private boolean _loggedIn = false;
     private boolean _loggingIn = false;
@@ -57,18 +82,22 @@ public class JahSpotifyImpl implements JahSpotify
     private boolean initialized = false;
     private boolean playlistsLoadedBefore = false;
 
-    private List<PlaybackListener> _playbackListeners = new ArrayList<PlaybackListener>();
-    private List<ConnectionListener> _connectionListeners = new ArrayList<ConnectionListener>();
+    private final ListenerRegistry<PlaybackListener> _playbackListeners = new ListenerRegistry<PlaybackListener>(PlaybackListener.class);
+    private final ListenerRegistry<ConnectionListener> _connectionListeners = new ListenerRegistry<ConnectionListener>(ConnectionListener.class);
 
-    private List<SearchListener> _searchListeners = new ArrayList<SearchListener>();
-    private Map<Integer, SearchListener> _prioritySearchListeners = new HashMap<Integer, SearchListener>();
-    private List<PlaylistListener> _playlistListeners = new ArrayList<PlaylistListener>();
+    private final ListenerRegistry<SearchListener> _searchListeners = new ListenerRegistry<SearchListener>(SearchListener.class);
+    private final SearchTokenTable _prioritySearchListeners = new SearchTokenTable(Long.getLong("jahspotify.search.timeout", 15000));
+    private final ListenerRegistry<PlaylistListener> _playlistListeners = new ListenerRegistry<PlaylistListener>(PlaylistListener.class);
 
     private Thread _jahSpotifyThread;
     private static JahSpotifyImpl _jahSpotify;
     private boolean _synching = false;
     private User _user;
-    private AtomicInteger _globalToken = new AtomicInteger(1);
+
+    /** Size of the ring the native side writes PCM data to when direct audio delivery is used. */
+    private static final int AUDIO_BUFFER_SIZE = 256 * 1024;
+    private volatile ByteBuffer _audioBuffer;
+    private volatile ByteBuffer _audioView;
 
     protected JahSpotifyImpl()
     {
@@ -103,6 +132,12 @@ public class JahSpotifyImpl implements JahSpotify
             {
                 artistLoadedCallback(token, artist);
             }
+
+            @Override
+            public void playlistChanged(final Link link)
+            {
+                playlistChangedCallback(link);
+            }
         });
 
         registerNativePlaybackListener(new NativePlaybackListener()
@@ -111,7 +146,7 @@ public class JahSpotifyImpl implements JahSpotify
             public void trackStarted(final String uri)
             {
                 _log.debug("Track started: " + uri);
-                for (PlaybackListener listener : _playbackListeners)
+                for (PlaybackListener listener : _playbackListeners.listeners())
                 {
                     listener.trackStarted(Link.create(uri));
                 }
@@ -121,7 +156,7 @@ public class JahSpotifyImpl implements JahSpotify
             public void trackEnded(final String uri, final boolean forcedEnd)
             {
                 _log.debug("Track ended signalled: " + uri + " (" + (forcedEnd ? "forced)" : "natural ending)"));
-                for (PlaybackListener listener : _playbackListeners)
+                for (PlaybackListener listener : _playbackListeners.listeners())
                 {
                     listener.trackEnded(Link.create(uri), forcedEnd);
                 }
@@ -132,7 +167,7 @@ public class JahSpotifyImpl implements JahSpotify
             public String nextTrackToPreload()
             {
                 _log.debug("Next to pre-load, will query listeners");
-                for (PlaybackListener listener : _playbackListeners)
+                for (PlaybackListener listener : _playbackListeners.listeners())
                 {
                     Link nextTrack = listener.nextTrackToPreload();
                     if (nextTrack != null)
@@ -146,7 +181,7 @@ public class JahSpotifyImpl implements JahSpotify
 
 			@Override
 			public void setAudioFormat(final int rate, final int channels) {
-                for (PlaybackListener listener : _playbackListeners)
+                for (PlaybackListener listener : _playbackListeners.listeners())
                 {
                 	listener.setAudioFormat(rate, channels);
                 }
@@ -155,26 +190,54 @@ public class JahSpotifyImpl implements JahSpotify
 			@Override
 			public int addToBuffer(final byte[] buffer) {
 				int highestReturn = 0;
-				for (PlaybackListener listener : _playbackListeners)
+				for (PlaybackListener listener : _playbackListeners.listeners())
                 {
 					highestReturn = Math.max(listener.addToBuffer(buffer), highestReturn);
                 }
 				return highestReturn;
 			}
 
+			@Override
+			public int addToBuffer(final int offset, final int length, final int frames) {
+				final ByteBuffer view = _audioView;
+				if (view == null) return 0;
+				int highestReturn = 0;
+				byte[] copy = null;
+				for (PlaybackListener listener : _playbackListeners.listeners())
+                {
+					view.clear();
+					view.position(offset);
+					view.limit(offset + length);
+					if (listener instanceof DirectPlaybackListener)
+					{
+						highestReturn = Math.max(((DirectPlaybackListener) listener).addToBuffer(view, frames), highestReturn);
+						continue;
+					}
+
+					// A new array per delivery like the native side creates, listeners may keep it.
+					if (copy == null)
+					{
+						copy = new byte[length];
+						view.get(copy);
+					}
+					highestReturn = Math.max(listener.addToBuffer(copy), highestReturn);
+                }
+				return highestReturn;
+			}
+
 			@Override
 			public void playTokenLost() {
-                for (PlaybackListener listener : _playbackListeners)
+                for (PlaybackListener listener : _playbackListeners.listeners())
                 {
                     listener.playTokenLost();
                 }
 
-                for (final ConnectionListener listener : _connectionListeners)
+                for (final ConnectionListener listener : _connectionListeners.listeners())
                 {
-                	new Thread() {
+                	_dispatcher.dispatch(listener, new Runnable() {
                 		@Override
 						public void run() {listener.playTokenLost();}
-                	}.start();
+                	});
                 }
 			}
         });
@@ -188,13 +251,13 @@ public class JahSpotifyImpl implements JahSpotify
 
                 if (token > 0)
                 {
-                    final SearchListener searchListener = _prioritySearchListeners.get(token);
+                    final SearchListener searchListener = _prioritySearchListeners.complete(token);
                     if (searchListener != null)
                     {
                         searchListener.searchComplete(searchResult);
                     }
                 }
-                for (SearchListener searchListener : _searchListeners)
+                for (SearchListener searchListener : _searchListeners.listeners())
                 {
                     searchListener.searchComplete(searchResult);
                 }
@@ -207,12 +270,12 @@ public class JahSpotifyImpl implements JahSpotify
             public void connected()
             {
                 _connected = true;
-                for (final ConnectionListener listener : _connectionListeners)
+                for (final ConnectionListener listener : _connectionListeners.listeners())
                 {
-                	new Thread() {
+                	_dispatcher.dispatch(listener, new Runnable() {
                 		@Override
 						public void run() {listener.connected();}
-                	}.start();
+                	});
                 }
             }
 
@@ -230,12 +293,12 @@ public class JahSpotifyImpl implements JahSpotify
                 _loggedIn = success;
                 _connected = success;
                 _loggingIn = false;
-                for (final ConnectionListener listener : _connectionListeners)
+                for (final ConnectionListener listener : _connectionListeners.listeners())
                 {
-                	new Thread() {
+                	_dispatcher.dispatch(listener, new Runnable() {
                 		@Override
 						public void run() {listener.loggedIn(success);}
-                	}.start();
+                	});
                 }
             }
 
@@ -245,35 +308,35 @@ public class JahSpotifyImpl implements JahSpotify
                 _log.debug("Logged out");
                 _loggedIn = false;
 
-                for (final ConnectionListener listener : _connectionListeners)
+                for (final ConnectionListener listener : _connectionListeners.listeners())
                 {
-                	new Thread() {
+                	_dispatcher.dispatch(listener, new Runnable() {
                 		@Override
 						public void run() {listener.loggedOut();}
-                	}.start();
+                	});
                 }
             }
 
 			@Override
 			public void blobUpdated(final String blob) {
-				for (final ConnectionListener listener : _connectionListeners)
+				for (final ConnectionListener listener : _connectionListeners.listeners())
                 {
-                	new Thread() {
+                	_dispatcher.dispatch(listener, new Runnable() {
                 		@Override
 						public void run() {listener.blobUpdated(blob);}
-                	}.start();
+                	});
                 }
 			}
 
 			@Override
 			public void initialized(final boolean initialized) {
 				JahSpotifyImpl.this.initialized = initialized;
-				for (final ConnectionListener listener : _connectionListeners)
+				for (final ConnectionListener listener : _connectionListeners.listeners())
                 {
-                	new Thread() {
+                	_dispatcher.dispatch(listener, new Runnable() {
                 		@Override
 						public void run() {listener.initialized(initialized);}
-                	}.start();
+                	});
                 }
 			}
 
@@ -290,11 +353,11 @@ public class JahSpotifyImpl implements JahSpotify
 				}
 
 				final boolean contents = allLoaded;
-				for (final ConnectionListener listener : _connectionListeners) {
-                	new Thread() {
+				for (final ConnectionListener listener : _connectionListeners.listeners()) {
+                	_dispatcher.dispatch(listener, new Runnable() {
                 		@Override
 						public void run() {listener.playlistsLoaded(contents);}
-                	}.start();
+                	});
                 }
 
 				if (contents) {
@@ -309,16 +372,24 @@ public class JahSpotifyImpl implements JahSpotify
 							while (isLoggedIn() && !MediaHelper.waitFor(pl, 5))
 								; // Do nothing.
 						}
-						for (final ConnectionListener listener : _connectionListeners) {
-							new Thread() {
+						for (final ConnectionListener listener : _connectionListeners.listeners()) {
+							_dispatcher.dispatch(listener, new Runnable() {
 								@Override
 								public void run() {listener.playlistsLoaded(true);}
-							}.start();
+							});
 						}
 					}
 				}.start();
 			}
         });
+
+        if (Boolean.getBoolean("jahspotify.audio.direct"))
+        {
+            setDirectAudioDelivery(true);
+        }
+
+        // Keep libspotify threads attached to the JVM between callbacks unless explicitly disabled.
+        nativeSetPersistentAttach(!"false".equals(System.getProperty("jahspotify.jni.persistentAttach")));
     }
 
     @Override
@@ -331,7 +402,11 @@ public class JahSpotifyImpl implements JahSpotify
             @Override
             public void run()
             {
-            	nativeInitialize(cacheFolder);
+            	try {
+            		nativeInitialize(cacheFolder);
+            	} finally {
+            		_commands.detach();
+            	}
             }
         };
         _jahSpotifyThread.start();
@@ -372,33 +447,36 @@ public class JahSpotifyImpl implements JahSpotify
     		throw new IllegalStateException("You should initialize libJah'Spotify before attempting to login.");
     	_loggingIn = false;
     	if (_loggingIn) return; // Still trying to login.
-        _libSpotifyLock.lock();
-        try {
-        	_loggingIn = true;
-        	nativeLogin(username, password, blob, savePassword);
-        } finally {
-            _libSpotifyLock.unlock();
-        }
+        _loggingIn = true;
+        _commands.execute(new NativeCommandQueue.Command<Void>() {
+        	@Override
+        	protected Void execute() {
+        		nativeLogin(username, password, blob, savePassword);
+        		return null;
+        	}
+        });
     }
 
 	@Override
 	public void logout() {
-		_libSpotifyLock.lock();
-    	try {
-        	nativeLogout();
-        } finally {
-            _libSpotifyLock.unlock();
-        }
+		_commands.execute(new NativeCommandQueue.Command<Void>() {
+			@Override
+			protected Void execute() {
+				nativeLogout();
+				return null;
+			}
+		});
 	}
 
     @Override
 	public void forgetMe() {
-    	_libSpotifyLock.lock();
-    	try {
-        	nativeForgetMe();
-        } finally {
-            _libSpotifyLock.unlock();
-        }
+		_commands.execute(new NativeCommandQueue.Command<Void>() {
+			@Override
+			protected Void execute() {
+				nativeForgetMe();
+				return null;
+			}
+		});
 	}
 
     @Override
@@ -411,15 +489,20 @@ public class JahSpotifyImpl implements JahSpotify
     {
         ensureLoggedIn();
 
-        _libSpotifyLock.lock();
-        try
-        {
-            return retrieveAlbum(uri.asString(), browse);
-        }
-        finally
+        final int browseKey = browse ? 1 : 0;
+        Album album = _metadataCache.getAlbum(uri, browseKey);
+        if (album != null) return album;
+
+        album = _commands.execute(new NativeCommandQueue.Command<Album>()
         {
-            _libSpotifyLock.unlock();
-        }
+            @Override
+            protected Album execute()
+            {
+                return retrieveAlbum(uri.asString(), browse);
+            }
+        });
+        _metadataCache.putAlbum(uri, browseKey, album);
+        return album;
     }
 
     @Override
@@ -441,30 +524,62 @@ public class JahSpotifyImpl implements JahSpotify
     private Artist readArtist(final Link uri, final int browse) {
         ensureLoggedIn();
 
-        _libSpotifyLock.lock();
-        try
-        {
-            return retrieveArtist(uri.asString(), browse);
-        }
-        finally
+        Artist artist = _metadataCache.getArtist(uri, browse);
+        if (artist != null) return artist;
+
+        artist = _commands.execute(new NativeCommandQueue.Command<Artist>()
         {
-            _libSpotifyLock.unlock();
-        }
+            @Override
+            protected Artist execute()
+            {
+                return retrieveArtist(uri.asString(), browse);
+            }
+        });
+        _metadataCache.putArtist(uri, browse, artist);
+        return artist;
     }
 
     @Override
     public Track readTrack(final Link uri)
     {
         ensureLoggedIn();
-        _libSpotifyLock.lock();
-        try
+
+        Track track = _metadataCache.getTrack(uri);
+        if (track != null) return track;
+
+        track = _commands.execute(new NativeCommandQueue.Command<Track>()
         {
-            return retrieveTrack(uri.asString());
-        }
-        finally
+            @Override
+            protected Track execute()
+            {
+                return retrieveTrack(uri.asString());
+            }
+        });
+        _metadataCache.putTrack(uri, track);
+        return track;
+    }
+
+    @Override
+    public List<Track> readTracks(final List<Link> links)
+    {
+        ensureLoggedIn();
+
+        final String[] uris = new String[links.size()];
+        int i = 0;
+        for (Link link : links)
         {
-            _libSpotifyLock.unlock();
+            uris[i++] = link.asString();
         }
+
+        final Track[] tracks = _commands.execute(new NativeCommandQueue.Command<Track[]>()
+        {
+            @Override
+            protected Track[] execute()
+            {
+                return nativeReadTracks(uris);
+            }
+        });
+        return tracks == null ? new ArrayList<Track>() : Arrays.asList(tracks);
     }
 
     @Override
@@ -483,16 +598,34 @@ public class JahSpotifyImpl implements JahSpotify
         uri = getCorrectImageLink(uri);
         if (uri == null) return null;
 
-        _libSpotifyLock.lock();
-        Image image = new Image(uri);
-        try
+        final Link imageLink = uri;
+        final Image image = new Image(uri);
+        final ByteBuffer stored = _imageStore.get(imageLink);
+        if (stored != null)
         {
-            readImage(uri.getId(), image);
+            image.setBuffer(stored);
+            image.setLoaded(true);
+            return image;
         }
-        finally
+
+        image.addLoadableListener(new LoadableListener<Image>()
         {
-            _libSpotifyLock.unlock();
-        }
+            @Override
+            public void loaded(final Image loaded)
+            {
+                loaded.removeLoadableListener(this);
+                _imageStore.put(imageLink, loaded.getBytes());
+            }
+        });
+        _commands.execute(new NativeCommandQueue.Command<Void>()
+        {
+            @Override
+            protected Void execute()
+            {
+                readImage(imageLink.getId(), image);
+                return null;
+            }
+        });
 
         return image;
     }
@@ -532,12 +665,23 @@ public class JahSpotifyImpl implements JahSpotify
      * Gets the playlist image if available. If not this method will try to create a
      * 2x2 image of the albums of the first 4 tracks in the playlist.
      * If there are less than 4 different albums, only the first album will be used.
+     * The tracks, albums and covers are read in batches so they load at the same time.
+     * The 2x2 image is kept by the link of the playlist until its tracks change, the playlist
+     * is watched for that from the first time its image is created.
      * @param link
      * @return
      * @throws IOException
      */
     private Image createPlaylistImage(final Link link) throws IOException {
 		if (!link.isPlaylistLink()) throw new IllegalArgumentException("Link should be of type playlist");
+		final String key = link.asString();
+		Image cached = _playlistImages.get(key);
+		if (cached != null) return cached;
+
+		// Watch before reading, an image of tracks which changed meanwhile isn't kept.
+		final AtomicInteger changes = watchPlaylist(key);
+		final int changesBefore = changes.get();
+
 		Playlist playlist = readPlaylist(link, 0, 0);
 		MediaHelper.waitFor(playlist, 1);
 
@@ -547,20 +691,33 @@ public class JahSpotifyImpl implements JahSpotify
 
 		// Get the first 4 different images.
 		Set<Link> albums = new TreeSet<Link>();
-		for (int i = 0; i < playlist.getTracks().size(); i++) {
-			Track track = readTrack(playlist.getTracks().get(i));
-			if (albums.contains(track.getAlbum())) continue;
-			albums.add(track.getAlbum());
-			if (albums.size() == 4) break;
+		List<Link> trackLinks = playlist.getTracks();
+		for (int start = 0; start < trackLinks.size() && albums.size() < 4; start += PLAYLIST_IMAGE_BATCH) {
+			List<Track> tracks = new ArrayList<Track>(readTracks(trackLinks.subList(start, Math.min(trackLinks.size(), start + PLAYLIST_IMAGE_BATCH))));
+			tracks.removeAll(Collections.singleton(null));
+			MediaHelper.waitFor(tracks, 2);
+			for (Track track : tracks) {
+				if (track.getAlbum() == null) continue;
+				albums.add(track.getAlbum());
+				if (albums.size() == 4) break;
+			}
 		}
 
 		if (albums.size() == 0) return null; // Empty playlist, no image.
 		if (albums.size() < 4) return readImage(albums.iterator().next()); // Too few images, just get the first one.
 
-		// Create an image with the 4 images combined.
+		// Create an image with the 4 images combined. All albums and then all covers are
+		// requested before waiting for them.
+		List<Album> albumList = new ArrayList<Album>();
+		for (Link aLink : albums) {
+			Album album = readAlbum(aLink);
+			if (album != null) albumList.add(album);
+		}
+		MediaHelper.waitFor(albumList, 2);
 		List<Image> images = new ArrayList<Image>();
-		for (Link iLink : albums) {
-			images.add(readImage(iLink));
+		for (Album album : albumList) {
+			Image image = album.getCover() == null ? null : readImage(album.getCover());
+			if (image != null) images.add(image);
 		}
 		MediaHelper.waitFor(images, 2);
 
@@ -590,28 +747,60 @@ public class JahSpotifyImpl implements JahSpotify
 		Image result = new Image();
 		result.setBytes(baos.toByteArray());
 		result.setLoaded(true);
+		if (changes.get() == changesBefore) _playlistImages.put(key, result);
 
 		return result;
 	}
 
+    /**
+     * Starts watching the tracks of the playlist, if it isn't watched yet.
+     * @return The number of changes to the tracks of the playlist.
+     */
+    private AtomicInteger watchPlaylist(final String uri)
+    {
+        AtomicInteger changes = _watchedPlaylists.get(uri);
+        if (changes != null) return changes;
+
+        changes = new AtomicInteger();
+        final AtomicInteger existing = _watchedPlaylists.putIfAbsent(uri, changes);
+        if (existing != null) return existing;
+
+        _commands.execute(new NativeCommandQueue.Command<Void>()
+        {
+            @Override
+            protected Void execute()
+            {
+                nativeWatchPlaylist(uri);
+                return null;
+            }
+        });
+        return changes;
+    }
+
+    private void playlistChangedCallback(final Link link)
+    {
+        final AtomicInteger changes = _watchedPlaylists.get(link.asString());
+        if (changes != null) changes.incrementAndGet();
+        _playlistImages.invalidate(link.asString());
+    }
+
     @Override
     public Playlist readPlaylist(final Link uri, final int index, final int numEntries)
     {
         ensureLoggedIn();
-        _libSpotifyLock.lock();
-        try
+        final Playlist playlist = _commands.execute(new NativeCommandQueue.Command<Playlist>()
         {
-            final Playlist playlist = retrievePlaylist(uri == null ? null : uri.asString());
-            if (index == 0 && numEntries == 0 || playlist == null)
-                return playlist;
+            @Override
+            protected Playlist execute()
+            {
+                return retrievePlaylist(uri == null ? null : uri.asString());
+            }
+        });
+        if (index == 0 && numEntries == 0 || playlist == null)
+            return playlist;
 
-            // Trim the playlist accordingly now
-            return trimPlaylist(playlist, index, numEntries);
-        }
-        finally
-        {
-            _libSpotifyLock.unlock();
-        }
+        // Trim the playlist accordingly now
+        return trimPlaylist(playlist, index, numEntries);
     }
 
     @Override
@@ -620,17 +809,14 @@ public class JahSpotifyImpl implements JahSpotify
     }
     @Override
 	public SearchResult getTopList(final TopListType type, final String country) {
-    	int countrycode = -1;
-    	if (country != null && country.length() == 2) {
-    		countrycode = country.charAt(0) << 8 | country.charAt(1);
-    	}
+    	final int countrycode = country != null && country.length() == 2 ? country.charAt(0) << 8 | country.charAt(1) : -1;
     	ensureLoggedIn();
-    	_libSpotifyLock.lock();
-    	try {
-    		return retrieveTopList(type.ordinal(), countrycode);
-    	} finally {
-    		_libSpotifyLock.unlock();
-    	}
+    	return _commands.execute(new NativeCommandQueue.Command<SearchResult>() {
+    		@Override
+    		protected SearchResult execute() {
+    			return retrieveTopList(type.ordinal(), countrycode);
+    		}
+    	});
     }
 
     private Playlist trimPlaylist(final Playlist playlist, final int index, final int numEntries)
@@ -653,7 +839,14 @@ public class JahSpotifyImpl implements JahSpotify
     public void pause()
     {
         ensureLoggedIn();
-        nativePause();
+        _commands.execute(new NativeCommandQueue.Command<Integer>()
+        {
+            @Override
+            protected Integer execute()
+            {
+                return nativePause();
+            }
+        });
         status = PlayerStatus.PAUSED;
     }
 
@@ -663,7 +856,14 @@ public class JahSpotifyImpl implements JahSpotify
     public void resume()
     {
         ensureLoggedIn();
-        nativeResume();
+        _commands.execute(new NativeCommandQueue.Command<Integer>()
+        {
+            @Override
+            protected Integer execute()
+            {
+                return nativeResume();
+            }
+        });
         status = PlayerStatus.PLAYING;
     }
 
@@ -674,13 +874,61 @@ public class JahSpotifyImpl implements JahSpotify
 		setBitrate(rate.ordinal());
 	}
 
+	@Override
+	public void setVolumeNormalization(final boolean normalize) {
+		if (!initialized)
+			throw new RuntimeException("libJah'Spotify isn't initialized yet.");
+		_commands.execute(new NativeCommandQueue.Command<Void>() {
+			@Override
+			protected Void execute() {
+				nativeSetVolumeNormalization(normalize);
+				return null;
+			}
+		});
+	}
+
     private native int nativeResume();
 
+    @Override
+    public synchronized void setDirectAudioDelivery(final boolean direct)
+    {
+        if (direct == (_audioBuffer != null))
+            return;
+
+        if (direct)
+        {
+            _audioBuffer = ByteBuffer.allocateDirect(AUDIO_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+            _audioView = _audioBuffer.duplicate().order(ByteOrder.nativeOrder());
+            registerNativeAudioBuffer(_audioBuffer);
+        }
+        else
+        {
+            // Unregister first so the native side stops writing to the buffer before it is released.
+            registerNativeAudioBuffer(null);
+            _audioBuffer = null;
+            _audioView = null;
+        }
+    }
+
+    @Override
+    public boolean isDirectAudioDelivery()
+    {
+        return _audioBuffer != null;
+    }
+
     @Override
     public void play(final Link link)
     {
         ensureLoggedIn();
-        nativePlayTrack(link.asString());
+        // Runs on the main loop thread, which also starts tracks that were parked until they loaded.
+        _commands.execute(new NativeCommandQueue.Command<Integer>()
+        {
+            @Override
+            protected Integer execute()
+            {
+                return nativePlayTrack(link.asString());
+            }
+        });
         status = PlayerStatus.PLAYING;
     }
 
@@ -741,12 +989,30 @@ public class JahSpotifyImpl implements JahSpotify
         _playbackListeners.add(playbackListener);
     }
 
+    @Override
+    public void addPlaybackListener(final PlaybackListener playbackListener, final int priority)
+    {
+        _playbackListeners.add(playbackListener, priority);
+    }
+
+    @Override
+    public void removePlaybackListener(final PlaybackListener playbackListener)
+    {
+        _playbackListeners.remove(playbackListener);
+    }
+
     @Override
     public void addPlaylistListener(final PlaylistListener playlistListener)
     {
         _playlistListeners.add(playlistListener);
     }
 
+    @Override
+    public void removePlaylistListener(final PlaylistListener playlistListener)
+    {
+        _playlistListeners.remove(playlistListener);
+    }
+
     @Override
     public void addConnectionListener(final ConnectionListener connectionListener)
     {
@@ -755,17 +1021,38 @@ public class JahSpotifyImpl implements JahSpotify
         _connectionListeners.add(connectionListener);
     }
 
+    @Override
+    public void removeConnectionListener(final ConnectionListener connectionListener)
+    {
+        if (_connectionListeners.remove(connectionListener))
+            _dispatcher.forget(connectionListener);
+    }
+
     @Override
     public void addSearchListener(final SearchListener searchListener)
     {
         _searchListeners.add(searchListener);
     }
 
+    @Override
+    public void removeSearchListener(final SearchListener searchListener)
+    {
+        _searchListeners.remove(searchListener);
+    }
+
     @Override
     public void seek(final int offset)
     {
         ensureLoggedIn();
-        nativeTrackSeek(offset);
+        _commands.execute(new NativeCommandQueue.Command<Void>()
+        {
+            @Override
+            protected Void execute()
+            {
+                nativeTrackSeek(offset);
+                return null;
+            }
+        });
     }
 
     @Override
@@ -785,7 +1072,16 @@ public class JahSpotifyImpl implements JahSpotify
     public void stop()
     {
         ensureLoggedIn();
-        nativeStopTrack();
+        // Also on the main loop thread, so a play which is still parked is dropped.
+        _commands.execute(new NativeCommandQueue.Command<Void>()
+        {
+            @Override
+            protected Void execute()
+            {
+                nativeStopTrack();
+                return null;
+            }
+        });
         status = PlayerStatus.STOPPED;
     }
 
@@ -793,17 +1089,17 @@ public class JahSpotifyImpl implements JahSpotify
     {
         ensureLoggedIn();
 
-        _libSpotifyLock.lock();
-        try
-        {
-            NativeSearchParameters nativeSearchParameters = initializeFromSearch(search);
-            // TODO: Register the lister for the specified token
-            nativeInitiateSearch(0, nativeSearchParameters);
-        }
-        finally
+        final NativeSearchParameters nativeSearchParameters = initializeFromSearch(search);
+        _commands.execute(new NativeCommandQueue.Command<Void>()
         {
-            _libSpotifyLock.unlock();
-        }
+            @Override
+            protected Void execute()
+            {
+                // TODO: Register the lister for the specified token
+                nativeInitiateSearch(0, nativeSearchParameters);
+                return null;
+            }
+        });
     }
 
     @Override
@@ -811,17 +1107,24 @@ public class JahSpotifyImpl implements JahSpotify
     {
         ensureLoggedIn();
 
-        _libSpotifyLock.lock();
+        final NativeSearchParameters nativeSearchParameters = initializeFromSearch(search);
+        final int token = _prioritySearchListeners.register(searchListener);
         try
         {
-            int token = _globalToken.getAndIncrement();
-            NativeSearchParameters nativeSearchParameters = initializeFromSearch(search);
-            _prioritySearchListeners.put(token, searchListener);
-            nativeInitiateSearch(token, nativeSearchParameters);
+            _commands.execute(new NativeCommandQueue.Command<Void>()
+            {
+                @Override
+                protected Void execute()
+                {
+                    nativeInitiateSearch(token, nativeSearchParameters);
+                    return null;
+                }
+            });
         }
-        finally
+        catch (RuntimeException e)
         {
-            _libSpotifyLock.unlock();
+            _prioritySearchListeners.cancel(token);
+            throw e;
         }
     }
 
@@ -864,7 +1167,49 @@ public class JahSpotifyImpl implements JahSpotify
     	return status;
     }
 
+    @Override
+    public int getSearchesInFlight()
+    {
+        return _prioritySearchListeners.getInFlight();
+    }
+
+    @Override
+    public ListenerDispatcher getListenerDispatcher()
+    {
+        return _dispatcher;
+    }
+
+    @Override
+    public MetadataCache getMetadataCache()
+    {
+        return _metadataCache;
+    }
+
+    @Override
+    public ImageStore getImageStore()
+    {
+        return _imageStore;
+    }
+
+    @Override
+    public NativeStatistics getNativeStatistics()
+    {
+        NativeStatistics statistics = new NativeStatistics();
+        nativeReadStatistics(statistics);
+        return statistics;
+    }
+
+    /**
+     * Runs the commands queued by other threads. Called by the native main loop.
+     */
+    private void processCommands()
+    {
+        _commands.drain();
+        _prioritySearchListeners.sweepIfDue();
+    }
+
     private native int nativeInitialize(String cacheFolder);
+    private native void nativeWakeup();
     private native int nativeDestroy();
 	private native int nativeLogin(String username, String password, String blob, boolean savePassword);
 	private native void nativeLogout();
@@ -881,11 +1226,14 @@ public class JahSpotifyImpl implements JahSpotify
     private native Artist retrieveArtist(String uri, int browse);
 
     private native Track retrieveTrack(String uri);
+    private native Track[] nativeReadTracks(String[] uris);
 
     private native Playlist retrievePlaylist(String uri);
+    private native void nativeWatchPlaylist(String uri);
     private native SearchResult retrieveTopList(int type, int countrycode);
 
     private native void setBitrate(int bitrate);
+    private native void nativeSetVolumeNormalization(boolean normalize);
     private native int nativePlayTrack(String uri);
     private native void nativeStopTrack();
     private native void nativeTrackSeek(int offset);
@@ -897,5 +1245,8 @@ public class JahSpotifyImpl implements JahSpotify
     private native boolean nativeShutdown();
 
     private native boolean registerNativePlaybackListener(NativePlaybackListener playbackListener);
+    private native void registerNativeAudioBuffer(ByteBuffer buffer);
+    private native void nativeSetPersistentAttach(boolean persistent);
+    private native void nativeReadStatistics(NativeStatistics statistics);
 
 }
@@ -0,0 +1,149 @@
+package jahspotify.impl;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs calls into libspotify on the native message handler thread. Callers add
+ * their command to a lock free queue which the main loop drains between two
+ * rounds of sp_session_process_events, so callers only wait for their own
+ * command instead of for one global lock.
+ * Until the main loop drained the queue for the first time and after it
+ * stopped, commands run on the calling thread.
+ */
+class NativeCommandQueue
+{
+    /**
+     * A call into the native library.
+     */
+    static abstract class Command<T>
+    {
+        private final CountDownLatch _done = new CountDownLatch(1);
+        private T _result;
+        private Throwable _failure;
+
+        protected abstract T execute();
+
+        private void run()
+        {
+            try
+            {
+                _result = execute();
+            }
+            catch (Throwable t)
+            {
+                _failure = t;
+            }
+            _done.countDown();
+        }
+
+        private void fail(final Throwable cause)
+        {
+            _failure = cause;
+            _done.countDown();
+        }
+
+        private T result()
+        {
+            if (_failure instanceof RuntimeException)
+            {
+                throw (RuntimeException) _failure;
+            }
+            if (_failure instanceof Error)
+            {
+                throw (Error) _failure;
+            }
+            if (_failure != null)
+            {
+                throw new RuntimeException(_failure);
+            }
+            return _result;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Command<?>> _queue = new ConcurrentLinkedQueue<Command<?>>();
+    private final Runnable _wakeup;
+    private volatile Thread _loopThread;
+
+    /**
+     * @param wakeup Wakes up the main loop after a command was added.
+     */
+    NativeCommandQueue(final Runnable wakeup)
+    {
+        _wakeup = wakeup;
+    }
+
+    /**
+     * Runs the command on the main loop thread and returns its result. Exceptions
+     * thrown by the command are rethrown on the calling thread.
+     */
+    <T> T execute(final Command<T> command)
+    {
+        final Thread loopThread = _loopThread;
+        if (loopThread == null || loopThread == Thread.currentThread())
+        {
+            return executeInline(command);
+        }
+
+        _queue.add(command);
+        if (_loopThread == null && _queue.remove(command))
+        {
+            // The loop stopped before it saw the command.
+            return executeInline(command);
+        }
+        _wakeup.run();
+
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                command._done.await();
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                // The command is already queued, it can't be taken back.
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return command.result();
+    }
+
+    private synchronized <T> T executeInline(final Command<T> command)
+    {
+        command.run();
+        return command.result();
+    }
+
+    /**
+     * Runs all queued commands. Called from the main loop, the first call marks
+     * the calling thread as the main loop thread.
+     */
+    void drain()
+    {
+        _loopThread = Thread.currentThread();
+        Command<?> command;
+        while ((command = _queue.poll()) != null)
+        {
+            command.run();
+        }
+    }
+
+    /**
+     * Called when the main loop stopped, fails the commands which were not run.
+     */
+    void detach()
+    {
+        _loopThread = null;
+        Command<?> command;
+        while ((command = _queue.poll()) != null)
+        {
+            command.fail(new IllegalStateException("libJahSpotify has stopped"));
+        }
+    }
+}
@@ -19,4 +19,9 @@ public interface NativeMediaLoadedListener
     public void image(final int token, final Link link, final ImageSize imageSize, final byte[] imageBytes);
 
     public void artist(final int token, Artist artist);
+
+    /**
+     * Called when the tracks of a playlist which is watched were added, removed or moved.
+     */
+    public void playlistChanged(final Link link);
 }
@@ -12,4 +12,13 @@ public interface NativePlaybackListener
 
     public void setAudioFormat(int rate, int channels);
     public int addToBuffer(byte[] buffer);
+
+    /**
+     * Direct delivery, the frames have been written to the registered audio buffer.
+     * @param offset The offset of the first byte in the audio buffer.
+     * @param length The number of bytes written.
+     * @param frames The number of frames written.
+     * @return The number of frames consumed.
+     */
+    public int addToBuffer(int offset, int length, int frames);
 }
@@ -0,0 +1,169 @@
+package jahspotify.impl;
+
+import jahspotify.ExpiringSearchListener;
+import jahspotify.SearchListener;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps the listeners of the searches which are in flight, by the token that is passed to
+ * the native library. An entry is removed when its search completes, or when the search
+ * did not complete within the timeout. Listeners which implement {@link ExpiringSearchListener}
+ * are told when their search expired.
+ */
+class SearchTokenTable
+{
+    private static Log _log = LogFactory.getLog(SearchTokenTable.class);
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private static class Entry
+    {
+        private final SearchListener _listener;
+        private final long _deadline;
+
+        Entry(final SearchListener listener, final long deadline)
+        {
+            _listener = listener;
+            _deadline = deadline;
+        }
+    }
+
+    private final Map<Integer, Entry> _entries = new ConcurrentHashMap<Integer, Entry>();
+    private final AtomicInteger _nextToken = new AtomicInteger(1);
+    private final AtomicLong _lastSweep = new AtomicLong(System.nanoTime());
+    private final AtomicLong _completed = new AtomicLong();
+    private final AtomicLong _expired = new AtomicLong();
+    private final long _timeout;
+    private final long _sweepInterval;
+
+    /**
+     * @param timeoutMillis The time after which the listener of a search which did not complete is dropped.
+     */
+    SearchTokenTable(final long timeoutMillis)
+    {
+        _timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        _sweepInterval = Math.min(SWEEP_INTERVAL, _timeout);
+    }
+
+    /**
+     * Registers the listener for a new search.
+     *
+     * @return The token for the search, always positive.
+     */
+    int register(final SearchListener listener)
+    {
+        sweepIfDue();
+        int token;
+        do
+        {
+            token = _nextToken.getAndIncrement() & Integer.MAX_VALUE;
+        }
+        while (token == 0 || _entries.containsKey(token));
+        _entries.put(token, new Entry(listener, System.nanoTime() + _timeout));
+        return token;
+    }
+
+    /**
+     * Removes the entry for a completed search.
+     *
+     * @return The listener of the search, null if the token is unknown or expired.
+     */
+    SearchListener complete(final int token)
+    {
+        final Entry entry = _entries.remove(token);
+        if (entry == null)
+        {
+            return null;
+        }
+        _completed.incrementAndGet();
+        return entry._listener;
+    }
+
+    /**
+     * Removes the entry without notifying its listener, for searches which could not be started.
+     */
+    void cancel(final int token)
+    {
+        _entries.remove(token);
+    }
+
+    /**
+     * Removes the entries of the searches which expired, at most once per sweep interval.
+     * Called when a search is registered and from the main loop.
+     */
+    void sweepIfDue()
+    {
+        final long now = System.nanoTime();
+        final long last = _lastSweep.get();
+        if (now - last >= _sweepInterval && _lastSweep.compareAndSet(last, now))
+        {
+            sweep(now);
+        }
+    }
+
+    private void sweep(final long now)
+    {
+        List<ExpiringSearchListener> expired = null;
+        for (Iterator<Map.Entry<Integer, Entry>> it = _entries.entrySet().iterator(); it.hasNext();)
+        {
+            final Map.Entry<Integer, Entry> entry = it.next();
+            // Removed by key, a search which completes at the same time is either completed or expired.
+            if (now - entry.getValue()._deadline >= 0 && _entries.remove(entry.getKey()) != null)
+            {
+                _expired.incrementAndGet();
+                if (entry.getValue()._listener instanceof ExpiringSearchListener)
+                {
+                    if (expired == null)
+                    {
+                        expired = new ArrayList<ExpiringSearchListener>();
+                    }
+                    expired.add((ExpiringSearchListener) entry.getValue()._listener);
+                }
+            }
+        }
+        if (expired == null)
+        {
+            return;
+        }
+        for (ExpiringSearchListener listener : expired)
+        {
+            try
+            {
+                listener.searchExpired();
+            }
+            catch (RuntimeException e)
+            {
+                _log.warn("Search listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return The number of searches which were started and did not complete or expire.
+     */
+    int getInFlight()
+    {
+        sweepIfDue();
+        return _entries.size();
+    }
+
+    long getCompleted()
+    {
+        return _completed.get();
+    }
+
+    long getExpired()
+    {
+        return _expired.get();
+    }
+}
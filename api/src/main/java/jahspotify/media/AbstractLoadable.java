@@ -1,15 +1,15 @@
 package jahspotify.media;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Helper class for loadable classes.
  * @author Niels
  */
 public abstract class AbstractLoadable<T extends Loadable> implements Loadable {
-	private boolean loaded;
-	private List<LoadableListener<T>> listeners = new ArrayList<LoadableListener<T>>();
+	private volatile boolean loaded;
+	private final List<LoadableListener<T>> listeners = new CopyOnWriteArrayList<LoadableListener<T>>();
 	
 	/**
 	 * Sets the loaded state. If the state is set to true the loadablelisteners will be
@@ -31,7 +31,8 @@ public abstract class AbstractLoadable<T extends Loadable> implements Loadable {
 	/**
 	 * Adds a listener which will receive an event if the object is loaded.
 	 * If the object is already loaded, the listener will immediately receive
-	 * the event.
+	 * the event. The listener can receive the event more than once when the
+	 * object is loaded while it is being added.
 	 * 
 	 * @param listener
 	 */
@@ -42,6 +43,15 @@ public abstract class AbstractLoadable<T extends Loadable> implements Loadable {
 			listener.loaded((T) this);
 	}
 	
+	/**
+	 * Removes a listener which was added with addLoadableListener.
+	 * 
+	 * @param listener
+	 */
+	public void removeLoadableListener(LoadableListener<T> listener) {
+		listeners.remove(listener);
+	}
+	
 	/**
 	 * Sends the loaded event to all listeners.
 	 */
@@ -1,5 +1,6 @@
 package jahspotify.media;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -10,6 +11,7 @@ public class Image extends AbstractLoadable<Image>
     private Link id;
     private ImageFormat imageFormat = ImageFormat.JPEG;
     private byte[] bytes;
+    private ByteBuffer buffer;
 
     public Image()
     {
@@ -26,14 +28,47 @@ public class Image extends AbstractLoadable<Image>
         this.bytes = bytes;
     }
 
+    /**
+     * Returns the image data. When the image was read from the image store the data is
+     * copied into a new array the first time, {@link #getBuffer()} doesn't copy it.
+     */
     public byte[] getBytes()
     {
+        if (bytes == null && buffer != null)
+        {
+            final ByteBuffer source = buffer.duplicate();
+            final byte[] copy = new byte[source.remaining()];
+            source.get(copy);
+            bytes = copy;
+        }
         return bytes;
     }
 
     public void setBytes(final byte[] bytes)
     {
         this.bytes = bytes;
+        this.buffer = null;
+    }
+
+    /**
+     * Returns the image data without copying it. The buffer is read only and can be a
+     * mapped file.
+     *
+     * @return The image data, or null if the image is not loaded.
+     */
+    public ByteBuffer getBuffer()
+    {
+        if (buffer != null)
+        {
+            return buffer.duplicate();
+        }
+        return bytes == null ? null : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public void setBuffer(final ByteBuffer buffer)
+    {
+        this.buffer = buffer == null ? null : buffer.asReadOnlyBuffer();
+        this.bytes = null;
     }
 
     public Link getId()
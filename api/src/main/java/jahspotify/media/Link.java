@@ -1,14 +1,14 @@
 package jahspotify.media;
 
-import jahspotify.util.BaseConvert;
 import jahspotify.util.Hex;
+import jahspotify.util.IdCodec;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.WeakHashMap;
 
 /**
  * Represents a link (Spotify or Jah'Spotify URI) to a media object.
@@ -79,68 +79,8 @@ public class Link implements Comparable<Link>, Serializable
         }
     }
 
-    /**
-     * A regular expression to match artist, album and track URIs:
-     * <p/>
-     * <pre>spotify:(artist|album|track):([0-9A-Za-z]{22})</pre>
-     */
-    private static final Pattern mediaPattern = Pattern.compile("spotify:(artist|album|track):([0-9A-Za-z]{22})");
-
-    /**
-     * A regular expression to match artist, album and track URIs:
-     * <p/>
-     * <pre>spotify:image:([0-9A-Za-z]{40})</pre>
-     */
-    private static final Pattern imagePattern = Pattern.compile("spotify:image:([0-9A-Za-z]{40})");
-
-    /**
-     * A regular expression to match playlist URIs:
-     * <p/>
-     * <pre>spotify:user:([^:]+):playlist:([0-9A-Za-z]{22})</pre>
-     */
-    private static final Pattern playlistPattern = Pattern.compile("spotify:user:([^:]+):playlist:([0-9A-Za-z]{22})");
-
-    /**
-     * A regular expression to match search URIs:
-     * <p/>
-     * <pre>spotify:search:([^\\s]+)</pre>
-     */
-    private static final Pattern searchPattern = Pattern.compile("spotify:search:([^\\s]+)");
-
-    /**
-     * A regular expression to match search URIs:
-     * <p/>
-     * <pre>jahspotify:queue:([^\\s]+)</pre>
-     */
-    private static final Pattern jahQueuePattern = Pattern.compile("jahspotify:queue((:)([^\\s]+))");
-
-    /**
-     * A regular expression to match podcast URIs:
-     * <p/>
-     * <pre>jahspotify:podcast:([^\\s]+)</pre>
-     */
-    private static final Pattern jahPodcastPattern = Pattern.compile("jahspotify:podcast:([^\\s]+)");
-
-    /**
-     * A regular expression to match MP3 URIs:
-     * <p/>
-     * <pre>jahspotify:podcast:([^\\s]+)</pre>
-     */
-    private static final Pattern jahMP3Pattern = Pattern.compile("jahspotify:mp3:([^\\s]+)");
-
-    /**
-     * A regular expression to match local URIs:
-     * <p/>
-     * <pre>jahspotify:folder:([^\\s]+)</pre>
-     */
-    private static final Pattern localPattern = Pattern.compile("spotify:local:(.*)");
-
-    /**
-     * A regular expression to match local URIs:
-     * <p/>
-     * <pre>jahspotify:folder:([^\\s]+)</pre>
-     */
-    private static final Pattern userPattern = Pattern.compile("spotify:user:(.*)");
+    private static final String SPOTIFY_PREFIX = "spotify:";
+    private static final String JAHSPOTIFY_PREFIX = "jahspotify:";
 
     /**
      * The {@link Link.Type} of this link.
@@ -170,6 +110,16 @@ public class Link implements Comparable<Link>, Serializable
 
     private Long folderId;
 
+    /**
+     * The 128 bit id of an artist, album or track link. The id field is null for these links,
+     * unless their base62 id doesn't fit in 128 bits.
+     */
+    private long idHigh;
+    private long idLow;
+
+    private static final int INTERN_STRIPES = 16;
+    private static final InternStripe[] internPool = createInternPool();
+
     /**
      * Create a {@link Link} using the given parameters.
      *
@@ -188,118 +138,214 @@ public class Link implements Comparable<Link>, Serializable
     }
 
     /**
-     * Create a {@link Link} from a Spotify URI.
+     * Create a {@link Link} from a Spotify URI. The URI is dispatched on its prefix and the
+     * rest is checked in a single pass. The accepted forms are:
+     * <p/>
+     * <pre>
+     * spotify:(artist|album|track):[0-9A-Za-z]{22}
+     * spotify:image:[0-9A-Za-z]{40}
+     * spotify:user:[^:]+:playlist:[0-9A-Za-z]{22}
+     * spotify:user:.*
+     * spotify:search:[^\s]+
+     * spotify:local:.*
+     * jahspotify:queue:[^\s]+
+     * jahspotify:podcast:[^\s]+
+     * jahspotify:mp3:[^\s]+
+     * </pre>
      *
      * @param uri A Spotify URI to parse.
      * @throws InvalidSpotifyURIException If the Spotify URI is invalid.
      */
     private Link(String uri) throws InvalidSpotifyURIException
     {
-        /* Regex for matching Spotify URIs. */
-        Matcher mediaMatcher = mediaPattern.matcher(uri);
-        Matcher imageMatcher = imagePattern.matcher(uri);
-        Matcher playlistMatcher = playlistPattern.matcher(uri);
-        Matcher searchMatcher = searchPattern.matcher(uri);
-        Matcher jahQueueMatcher = jahQueuePattern.matcher(uri);
-        Matcher jahPodcastMatcher = jahPodcastPattern.matcher(uri);
-        Matcher jahMp3Matcher = jahMP3Pattern.matcher(uri);
-        Matcher localMatcher = localPattern.matcher(uri);
-        Matcher userMatcher = userPattern.matcher(uri);
-
-        /* Check if URI matches artist/album/track pattern. */
-        if (mediaMatcher.matches())
+        if (uri.startsWith(SPOTIFY_PREFIX))
         {
-            String type = mediaMatcher.group(1);
-
-            if (type.equals("artist"))
+            final int start = SPOTIFY_PREFIX.length();
+            if (uri.startsWith("artist:", start) && isBase62(uri, start + 7, 22))
             {
                 this.type = Type.ARTIST;
+                setMediaId(uri, start + 7);
+                return;
             }
-            else if (type.equals("album"))
+            if (uri.startsWith("album:", start) && isBase62(uri, start + 6, 22))
             {
                 this.type = Type.ALBUM;
+                setMediaId(uri, start + 6);
+                return;
             }
-            else if (type.equals("track"))
+            if (uri.startsWith("track:", start) && isBase62(uri, start + 6, 22))
             {
                 this.type = Type.TRACK;
+                setMediaId(uri, start + 6);
+                return;
             }
-            else
+            if (uri.startsWith("image:", start) && isBase62(uri, start + 6, 40))
             {
-                throw new InvalidSpotifyURIException("Invalid type: " + type);
+                this.type = Type.IMAGE;
+                this.id = uri;
+                return;
             }
-
-            this.id = uri;
-            this.user = null;
-            this.query = null;
-        }
-        else if (imageMatcher.matches())
-        {
-            this.type = Type.IMAGE;
-            this.id = uri;
-            this.user = null;
-            this.query = null;
-        }
-        /* Check if URI matches playlist pattern. */
-        else if (playlistMatcher.matches())
-        {
-            this.type = Type.PLAYLIST;
-            this.user = playlistMatcher.group(1);
-            this.id = uri;
-            this.query = null;
-        }
-        /* Check if URI matches search pattern. */
-        else if (searchMatcher.matches())
-        {
-            this.type = Type.SEARCH;
-            this.id = null;
-            this.user = null;
-
-            try
+            if (uri.startsWith("user:", start))
             {
-                this.query = URLDecoder.decode(searchMatcher.group(1), "UTF-8");
+                final int userStart = start + 5;
+                final int userEnd = uri.indexOf(':', userStart);
+                if (userEnd > userStart && uri.startsWith(":playlist:", userEnd) && isBase62(uri, userEnd + 10, 22))
+                {
+                    this.type = Type.PLAYLIST;
+                    this.user = uri.substring(userStart, userEnd);
+                    this.id = uri;
+                    return;
+                }
+                if (hasNoLineTerminator(uri, userStart))
+                {
+                    this.type = Type.USER;
+                    this.id = uri;
+                    return;
+                }
             }
-            catch (UnsupportedEncodingException e)
+            else if (uri.startsWith("search:", start) && hasNoWhitespace(uri, start + 7))
+            {
+                this.type = Type.SEARCH;
+                try
+                {
+                    this.query = URLDecoder.decode(uri.substring(start + 7), "UTF-8");
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    throw new InvalidSpotifyURIException("Invalid encoding of query");
+                }
+                return;
+            }
+            else if (uri.startsWith("local:", start) && hasNoLineTerminator(uri, start + 6))
             {
-                throw new InvalidSpotifyURIException("Invalid encoding of query");
+                this.type = Type.LOCAL;
+                this.id = uri;
+                return;
             }
         }
-        else if (jahQueueMatcher.matches())
+        else if (uri.startsWith(JAHSPOTIFY_PREFIX))
         {
-            this.type = Type.QUEUE;
-            this.id = uri;
-            this.queue = "default";
-            if (searchMatcher.groupCount() > 0)
+            final int start = JAHSPOTIFY_PREFIX.length();
+            if (uri.startsWith("queue:", start) && hasNoWhitespace(uri, start + 6))
             {
-                this.queue = jahQueueMatcher.group(3);
+                this.type = Type.QUEUE;
+                this.id = uri;
+                this.queue = uri.substring(start + 6);
+                return;
+            }
+            if (uri.startsWith("podcast:", start) && hasNoWhitespace(uri, start + 8))
+            {
+                this.type = Type.PODCAST;
+                this.id = uri;
+                this.uri = uri.substring(start + 8);
+                return;
+            }
+            if (uri.startsWith("mp3:", start) && hasNoWhitespace(uri, start + 4))
+            {
+                this.type = Type.MP3;
+                this.id = uri;
+                this.uri = uri.substring(start + 4);
+                return;
             }
         }
-        else if (jahPodcastMatcher.matches())
+
+        throw new InvalidSpotifyURIException("Invalid URI: " + uri);
+    }
+
+    /**
+     * Keeps the base62 id of a media link, which starts at from, as two longs.
+     */
+    private void setMediaId(final String uri, final int from)
+    {
+        if (!IdCodec.isBase62(uri, from))
         {
-            this.type = Type.PODCAST;
+            // Not a 128 bit id, keep the uri.
             this.id = uri;
-            this.uri = jahPodcastMatcher.group(1);
+            return;
         }
-        else if (jahMp3Matcher.matches())
+        this.idHigh = IdCodec.base62High(uri, from);
+        this.idLow = IdCodec.base62Low(uri, from);
+    }
+
+    /**
+     * @return true if the id of this link is kept in idHigh and idLow.
+     */
+    private boolean isCompact()
+    {
+        return this.id == null && (this.type == Type.ARTIST || this.type == Type.ALBUM || this.type == Type.TRACK);
+    }
+
+    /**
+     * @return The 22 character base62 id of a compact link.
+     */
+    private String base62Id()
+    {
+        return IdCodec.toBase62(this.idHigh, this.idLow);
+    }
+
+    /**
+     * @return true if the uri ends with exactly length characters from [0-9A-Za-z], starting at from.
+     */
+    private static boolean isBase62(final String uri, final int from, final int length)
+    {
+        if (uri.length() != from + length)
         {
-            this.type = Type.MP3;
-            this.id = uri;
-            this.uri = jahMp3Matcher.group(1);
+            return false;
         }
-        else if (localMatcher.matches())
+        for (int i = from; i < uri.length(); i++)
         {
-        	this.type = Type.LOCAL;
-        	this.id = uri;
+            final char c = uri.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'A' || c > 'Z') && (c < 'a' || c > 'z'))
+            {
+                return false;
+            }
         }
-        else if (userMatcher.matches())
+        return true;
+    }
+
+    /**
+     * @return true if the uri has at least one character after from and none of them is whitespace, like [^\s]+.
+     */
+    private static boolean hasNoWhitespace(final String uri, final int from)
+    {
+        if (uri.length() <= from)
         {
-        	this.type = Type.USER;
-        	this.id = uri;
+            return false;
         }
-        /* If nothing was matched. */
-        else
+        for (int i = from; i < uri.length(); i++)
         {
-            throw new InvalidSpotifyURIException("Invalid URI: " + uri);
+            switch (uri.charAt(i))
+            {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\u000B':
+                case '\f':
+                case '\r':
+                    return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * @return true if the uri has no line terminator after from, like .*
+     */
+    private static boolean hasNoLineTerminator(final String uri, final int from)
+    {
+        for (int i = from; i < uri.length(); i++)
+        {
+            switch (uri.charAt(i))
+            {
+                case '\n':
+                case '\r':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    return false;
+            }
+        }
+        return true;
     }
 
     public static Link createFolderLink(final long folderID)
@@ -371,6 +417,20 @@ public class Link implements Comparable<Link>, Serializable
         return this.type.equals(Type.IMAGE);
     }
 
+    /**
+     * Returns the 40 character id of an image link.
+     *
+     * @return The image id, or {@code null} if this is not an image link.
+     */
+    public String getImageId()
+    {
+        if (!isImageLink())
+        {
+            return null;
+        }
+        return this.id.substring(this.id.length() - 40);
+    }
+
     /**
      * Check if this link is a playlist link.
      *
@@ -411,6 +471,10 @@ public class Link implements Comparable<Link>, Serializable
     {
         if (this.id == null)
         {
+            if (isCompact())
+            {
+                return asString();
+            }
             throw new IllegalStateException("Link doesn't have an id!");
         }
 
@@ -466,6 +530,11 @@ public class Link implements Comparable<Link>, Serializable
      */
     public String asString()
     {
+        if (isCompact())
+        {
+            final String prefix = this.type == Type.ARTIST ? "spotify:artist:" : this.type == Type.ALBUM ? "spotify:album:" : "spotify:track:";
+            return prefix + base62Id();
+        }
         return id;
     }
 
@@ -481,7 +550,7 @@ public class Link implements Comparable<Link>, Serializable
         {
             return String.format(
                     "http://open.spotify.com/user/%s/playlist/%s",
-                    this.user, Link.toBase62(this.id)
+                    this.user, this.id.substring(this.id.length() - IdCodec.BASE62_LENGTH)
             );
         }
         else if (this.isSearchLink())
@@ -502,7 +571,7 @@ public class Link implements Comparable<Link>, Serializable
         {
             return String.format(
                     "http://open.spotify.com/%s/%s",
-                    this.type, Link.toBase62(this.id)
+                    this.type, isCompact() ? base62Id() : Link.toBase62(this.id)
             );
         }
     }
@@ -527,27 +596,81 @@ public class Link implements Comparable<Link>, Serializable
      * @throws InvalidSpotifyURIException If the Spotify URI is invalid.
      */
     public static Link create(String uri) throws InvalidSpotifyURIException
+    {
+        return parse(uri).intern();
+    }
+
+    /**
+     * Parses the uri into a new link which isn't interned, so the parsing can be timed on its own.
+     */
+    static Link parse(String uri) throws InvalidSpotifyURIException
     {
         return new Link(uri);
     }
 
     /**
-     * Convert a hexadecimal id into a base-62 encoded id.
+     * Returns the link from the pool which is equal to this link, so the same link is kept only
+     * once. The pool only holds the links weakly. {@link #create(String)} returns pooled links.
      *
-     * @param hex A hexadecimal id.
-     * @return A base-62 encoded id.
+     * @return The pooled link.
      */
-    private static String toBase62(String hex)
+    public Link intern()
     {
-        StringBuffer uri = new StringBuffer(BaseConvert.convert(hex, 16, 62));
+        final int hash = hashCode();
+        final InternStripe stripe = internPool[(hash ^ (hash >>> 16)) & (INTERN_STRIPES - 1)];
+        synchronized (stripe)
+        {
+            final WeakReference<Link> reference = stripe.get(this);
+            final Link pooled = reference == null ? null : reference.get();
+            if (pooled != null)
+            {
+                return pooled;
+            }
+            stripe.put(this, new WeakReference<Link>(this));
+            return this;
+        }
+    }
 
-        /* Prepend zeroes until base-62 string length is 22. */
-        while (uri.length() < 22)
+    private static InternStripe[] createInternPool()
+    {
+        final InternStripe[] pool = new InternStripe[INTERN_STRIPES];
+        for (int i = 0; i < pool.length; i++)
         {
-            uri.insert(0, '0');
+            pool[i] = new InternStripe();
         }
+        return pool;
+    }
 
-        return uri.toString();
+    /**
+     * Part of the intern pool, a class of its own so the pool can be an array without
+     * generics.
+     */
+    private static final class InternStripe extends WeakHashMap<Link, WeakReference<Link>>
+    {
+    }
+
+    /**
+     * Media links are parsed again, so links which were serialized with their id as a string
+     * are equal to the compact links which are created now.
+     */
+    private Object readResolve()
+    {
+        if (this.type == Type.ARTIST || this.type == Type.ALBUM || this.type == Type.TRACK)
+        {
+            return create(asString());
+        }
+        return intern();
+    }
+
+    /**
+     * Convert a hexadecimal id into a base-62 encoded id.
+     *
+     * @param hex A 32 character hexadecimal id.
+     * @return A 22 character base-62 encoded id.
+     */
+    private static String toBase62(String hex)
+    {
+        return IdCodec.hexToBase62(hex);
     }
 
     @Override
@@ -557,6 +680,11 @@ public class Link implements Comparable<Link>, Serializable
         {
             return true;
         }
+        if (o instanceof Link && isCompact())
+        {
+            final Link link = (Link) o;
+            return this.type == link.type && link.isCompact() && this.idHigh == link.idHigh && this.idLow == link.idLow;
+        }
         if (!(o instanceof Link))
         {
             return false;
@@ -603,6 +731,11 @@ public class Link implements Comparable<Link>, Serializable
     @Override
     public int hashCode()
     {
+        if (isCompact())
+        {
+            final long bits = this.idHigh ^ this.idLow;
+            return 31 * this.type.ordinal() + (int) (bits ^ (bits >>> 32));
+        }
         int result = type != null ? type.hashCode() : 0;
         result = 31 * result + (id != null ? id.hashCode() : 0);
         result = 31 * result + (user != null ? user.hashCode() : 0);
@@ -614,8 +747,19 @@ public class Link implements Comparable<Link>, Serializable
         return result;
     }
 
+	/**
+	 * Artist, album and track links come first, ordered by type and then by their 128 bit id.
+	 * Other links are ordered by their id.
+	 */
 	@Override
 	public int compareTo(Link o) {
-		return this.getId().compareTo(o.getId());
+		boolean compact = isCompact();
+		if (compact != o.isCompact()) return compact ? -1 : 1;
+		if (!compact) return this.getId().compareTo(o.getId());
+
+		if (this.type != o.type) return this.type.ordinal() < o.type.ordinal() ? -1 : 1;
+		if (this.idHigh != o.idHigh) return (this.idHigh ^ Long.MIN_VALUE) < (o.idHigh ^ Long.MIN_VALUE) ? -1 : 1;
+		if (this.idLow != o.idLow) return (this.idLow ^ Long.MIN_VALUE) < (o.idLow ^ Long.MIN_VALUE) ? -1 : 1;
+		return 0;
 	}
 }
@@ -0,0 +1,178 @@
+package jahspotify.services;
+
+import jahspotify.ExpiringSearchListener;
+import jahspotify.JahSpotify;
+import jahspotify.Search;
+import jahspotify.SearchResult;
+import jahspotify.media.AbstractLoadable;
+import jahspotify.media.Album;
+import jahspotify.media.Artist;
+import jahspotify.media.Image;
+import jahspotify.media.Link;
+import jahspotify.media.LoadableListener;
+import jahspotify.media.Playlist;
+import jahspotify.media.Track;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non blocking variants of the read methods of {@link JahSpotify}. The returned
+ * futures are completed by the loaded events of the media, so any number of
+ * lookups can be in flight without a thread waiting for each of them.
+ */
+public class AsyncJahSpotify
+{
+    private final JahSpotify _jahSpotify;
+
+    private static AsyncJahSpotify instance;
+    public static synchronized AsyncJahSpotify getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new AsyncJahSpotify(JahSpotifyService.getInstance().getJahSpotify());
+        }
+        return instance;
+    }
+
+    public AsyncJahSpotify(final JahSpotify jahSpotify)
+    {
+        _jahSpotify = jahSpotify;
+    }
+
+    public MediaFuture<Track> readTrack(final Link link)
+    {
+        try
+        {
+            return whenLoaded(_jahSpotify.readTrack(link));
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+    }
+
+    public MediaFuture<Album> readAlbum(final Link link)
+    {
+        return readAlbum(link, false);
+    }
+
+    public MediaFuture<Album> readAlbum(final Link link, final boolean browse)
+    {
+        try
+        {
+            return whenLoaded(_jahSpotify.readAlbum(link, browse));
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+    }
+
+    public MediaFuture<Artist> readArtist(final Link link)
+    {
+        return readArtist(link, false);
+    }
+
+    public MediaFuture<Artist> readArtist(final Link link, final boolean browse)
+    {
+        try
+        {
+            return whenLoaded(_jahSpotify.readArtist(link, browse));
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Reads an image. Only image links are read without blocking, for album,
+     * artist, track and playlist links the calling thread first resolves the
+     * link to the image.
+     */
+    public MediaFuture<Image> readImage(final Link link)
+    {
+        try
+        {
+            return whenLoaded(_jahSpotify.readImage(link));
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+    }
+
+    public MediaFuture<Playlist> readPlaylist(final Link link, final int index, final int numEntries)
+    {
+        try
+        {
+            return whenLoaded(_jahSpotify.readPlaylist(link, index, numEntries));
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+    }
+
+    public MediaFuture<SearchResult> search(final Search search)
+    {
+        final MediaFuture<SearchResult> future = new MediaFuture<SearchResult>();
+        try
+        {
+            _jahSpotify.initiateSearch(search, new ExpiringSearchListener()
+            {
+                @Override
+                public void searchComplete(final SearchResult searchResult)
+                {
+                    searchResult.setLoaded(true);
+                    future.complete(searchResult);
+                }
+
+                @Override
+                public void searchExpired()
+                {
+                    future.fail(new TimeoutException("Search did not complete in time: " + search.getQuery().serialize()));
+                }
+            });
+        }
+        catch (RuntimeException e)
+        {
+            future.fail(e);
+        }
+        return future;
+    }
+
+    /**
+     * Returns a future which completes when the media is loaded. The future
+     * completes with null if the media could not be read at all.
+     */
+    private static <T extends AbstractLoadable<T>> MediaFuture<T> whenLoaded(final T media)
+    {
+        final MediaFuture<T> future = new MediaFuture<T>();
+        if (media == null || media.isLoaded())
+        {
+            future.complete(media);
+            return future;
+        }
+
+        media.addLoadableListener(new LoadableListener<T>()
+        {
+            @Override
+            public void loaded(final T loaded)
+            {
+                if (future.complete(loaded))
+                {
+                    media.removeLoadableListener(this);
+                }
+            }
+        });
+        return future;
+    }
+
+    private static <T> MediaFuture<T> failed(final Throwable cause)
+    {
+        final MediaFuture<T> future = new MediaFuture<T>();
+        future.fail(cause);
+        return future;
+    }
+}
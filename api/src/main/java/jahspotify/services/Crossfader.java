@@ -0,0 +1,244 @@
+package jahspotify.services;
+
+/**
+ * Mixing stage of the {@link MediaPlayer} which overlaps the end of a track with the start of
+ * the next one. libspotify only decodes one track at a time, so the audio is held back in a
+ * delay line as long as the crossfade. When the player continues with the next track the delay
+ * line holds the tail of the previous track, which is faded out while the head of the new
+ * track is faded in. The delay line is refilled from the new track afterwards, so libspotify
+ * delivers a little faster than real time for a moment.
+ * <p>
+ * The audio is 16 bit little endian PCM. The mixing works on primitive arrays which are only
+ * allocated when the format or the duration changes. All methods are synchronized, audio is
+ * delivered from the libspotify thread while track changes come from the main loop.
+ */
+public class Crossfader {
+	/**
+	 * Shape of the fade, the gain of the track which fades in at a point of the fade. The track
+	 * which fades out uses the mirrored gain.
+	 */
+	public enum Curve {
+		/** Gains add up to one, there is a dip in loudness halfway for uncorrelated tracks. */
+		LINEAR {
+			@Override
+			double gain(double x) {
+				return x;
+			}
+		},
+		/** Powers add up to one, the loudness stays the same during the fade. */
+		EQUAL_POWER {
+			@Override
+			double gain(double x) {
+				return Math.sin(x * Math.PI / 2);
+			}
+		},
+		/** Slow start and end, the tracks are mostly heard on their own. */
+		S_CURVE {
+			@Override
+			double gain(double x) {
+				return (1 - Math.cos(x * Math.PI)) / 2;
+			}
+		};
+
+		/**
+		 * @param x Position in the fade, from 0 to 1.
+		 * @return The gain, from 0 to 1.
+		 */
+		abstract double gain(double x);
+	}
+
+	private int duration;
+	private Curve curve;
+	private int rate, channels;
+
+	/** Delay line with the samples which weren't written yet. */
+	private short[] ring = new short[0];
+	private int ringStart, ringSize;
+	/** Gain of the incoming track per frame of a full length fade. */
+	private float[] fadeIn = new float[0];
+	/** Samples of the ring which are still mixed with the incoming track. */
+	private int fadeRemaining, fadeLength;
+
+	private long crossfades;
+
+	/**
+	 * @param duration The length of the crossfade in milliseconds, 0 disables it.
+	 * @param curve
+	 */
+	public Crossfader(int duration, Curve curve) {
+		configure(duration, curve);
+	}
+
+	/**
+	 * Changes the length and shape of the crossfade. The audio which is held back is dropped.
+	 * @param duration The length of the crossfade in milliseconds, 0 disables it.
+	 * @param curve
+	 */
+	public synchronized void configure(int duration, Curve curve) {
+		if (duration < 0) throw new IllegalArgumentException("duration should not be negative");
+		if (curve == null) throw new IllegalArgumentException("curve should not be null");
+		this.duration = duration;
+		this.curve = curve;
+		allocate();
+	}
+
+	/**
+	 * Sets the format of the audio, the audio which is held back is dropped when it changes.
+	 */
+	public synchronized void setFormat(int rate, int channels) {
+		if (rate == this.rate && channels == this.channels) return;
+		this.rate = rate;
+		this.channels = channels;
+		allocate();
+	}
+
+	private void allocate() {
+		int frames = (int) ((long) rate * duration / 1000);
+		if (ring.length != frames * channels)
+			ring = new short[frames * channels];
+		if (fadeIn.length != frames)
+			fadeIn = new float[frames];
+		// Sampled halfway each frame, so the mirrored table is the fade out.
+		for (int i = 0; i < frames; i++)
+			fadeIn[i] = (float) curve.gain((i + 0.5) / frames);
+		flush();
+	}
+
+	public synchronized boolean isEnabled() {
+		return ring.length > 0;
+	}
+
+	/**
+	 * Starts the fade to the next track: the audio which is held back is mixed with the next
+	 * audio which is processed.
+	 */
+	public synchronized void crossfade() {
+		if (ringSize == 0) return;
+		fadeRemaining = fadeLength = ringSize;
+		crossfades++;
+	}
+
+	/**
+	 * @param available The number of bytes which can be written.
+	 * @param length The number of bytes which are offered.
+	 * @return The number of bytes which can be processed without producing more than are available.
+	 */
+	public synchronized int acceptable(int available, int length) {
+		int frameSize = 2 * Math.max(1, channels);
+		int samples = available / 2;
+		if (samples >= fadeRemaining)
+			samples += ring.length - (ringSize - fadeRemaining);
+		int bytes = Math.min(length, samples * 2);
+		return bytes - bytes % frameSize;
+	}
+
+	/**
+	 * Processes the audio, everything is consumed. Use {@link #acceptable(int, int)} first to
+	 * know how much will be produced at most.
+	 * @param in The audio of the current track.
+	 * @param offset The index of the first byte in in.
+	 * @param length The number of bytes in, a whole number of frames.
+	 * @param out Receives the mixed audio, should be at least as long as in.
+	 * @return The number of bytes written to out.
+	 */
+	public synchronized int process(byte[] in, int offset, int length, byte[] out) {
+		int written = 0;
+		for (int i = offset; i < offset + length; i += 2) {
+			int sample = (short) ((in[i] & 0xFF) | (in[i + 1] << 8));
+
+			if (fadeRemaining > 0) {
+				int frame = (fadeLength - fadeRemaining) / channels;
+				int index = (int) ((long) frame * fadeIn.length / (fadeLength / channels));
+				float gain = fadeIn[index];
+				int mixed = Math.round(pop() * fadeIn[fadeIn.length - 1 - index] + sample * gain);
+				fadeRemaining--;
+				written = put(out, written, mixed);
+				continue;
+			}
+
+			if (ringSize == ring.length) {
+				// Steady state, the oldest sample leaves the delay line.
+				if (ring.length == 0) {
+					written = put(out, written, sample);
+					continue;
+				}
+				written = put(out, written, pop());
+			}
+			ring[(ringStart + ringSize) % ring.length] = (short) sample;
+			ringSize++;
+		}
+		return written;
+	}
+
+	/**
+	 * Writes the audio which is held back, for when there is no next track.
+	 * @param out Receives the audio, should hold {@link #getDelayedBytes()} bytes.
+	 * @return The number of bytes written to out.
+	 */
+	public synchronized int drain(byte[] out) {
+		int written = 0;
+		while (ringSize > 0)
+			written = put(out, written, pop());
+		fadeRemaining = 0;
+		return written;
+	}
+
+	/**
+	 * Drops the audio which is held back, for seeks and track changes without a crossfade.
+	 */
+	public synchronized void flush() {
+		ringStart = ringSize = 0;
+		fadeRemaining = fadeLength = 0;
+	}
+
+	/**
+	 * @return true while the audio which is held back is mixed with the next track.
+	 */
+	public synchronized boolean isFading() {
+		return fadeRemaining > 0;
+	}
+
+	public synchronized int getDelayedBytes() {
+		return ringSize * 2;
+	}
+
+	private int pop() {
+		short sample = ring[ringStart];
+		ringStart = (ringStart + 1) % ring.length;
+		ringSize--;
+		return sample;
+	}
+
+	private static int put(byte[] out, int offset, int sample) {
+		if (sample > Short.MAX_VALUE) sample = Short.MAX_VALUE;
+		else if (sample < Short.MIN_VALUE) sample = Short.MIN_VALUE;
+		out[offset] = (byte) sample;
+		out[offset + 1] = (byte) (sample >> 8);
+		return offset + 2;
+	}
+
+	public synchronized int getDuration() {
+		return duration;
+	}
+
+	public synchronized Curve getCurve() {
+		return curve;
+	}
+
+	/**
+	 * @return The number of track changes which were crossfaded.
+	 */
+	public synchronized long getCrossfades() {
+		return crossfades;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Crossfader{" +
+				"duration=" + duration +
+				", curve=" + curve +
+				", delayedBytes=" + getDelayedBytes() +
+				", crossfades=" + crossfades +
+				'}';
+	}
+}
@@ -0,0 +1,135 @@
+package jahspotify.services;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Sink for machines without a sound card. The audio isn't played anywhere, the sink only
+ * accepts it at the rate it would be played so the streamers receive it in real time.
+ * Enabled with the system property <code>jahspotify.audio.headless</code>.
+ */
+public class HeadlessPcmSink implements PcmSink {
+	private final long bufferMicros;
+
+	private AudioFormat format;
+	private int bytesPerSecond;
+	private long written;
+	private long playedBeforeStart;
+	private long startedAt = -1;
+
+	/**
+	 * Creates a sink which buffers one second of audio, like the sound card line.
+	 */
+	public HeadlessPcmSink() {
+		this(1000);
+	}
+
+	/**
+	 * @param bufferMillis How far the written audio may run ahead of the playback position.
+	 */
+	public HeadlessPcmSink(int bufferMillis) {
+		this.bufferMicros = bufferMillis * 1000L;
+	}
+
+	@Override
+	public synchronized void open(AudioFormat format) {
+		this.format = format;
+		this.bytesPerSecond = Math.max(1, (int) format.getFrameRate() * format.getFrameSize());
+		written = 0;
+		playedBeforeStart = 0;
+		startedAt = -1;
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return format != null;
+	}
+
+	@Override
+	public synchronized AudioFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * The number of bytes which have been played according to the clock.
+	 */
+	private long played() {
+		long played = playedBeforeStart;
+		if (startedAt >= 0)
+			played += (System.nanoTime() - startedAt) / 1000 * bytesPerSecond / 1000000;
+		return Math.min(played, written);
+	}
+
+	@Override
+	public synchronized int available() {
+		if (format == null) return 0;
+		long buffered = written - played();
+		long free = bufferMicros * bytesPerSecond / 1000000 - buffered;
+		return (int) Math.max(0, free - free % format.getFrameSize());
+	}
+
+	@Override
+	public synchronized int write(byte[] buffer, int offset, int length) {
+		int accepted = Math.min(length, available());
+		if (accepted <= 0) return 0;
+		if (startedAt >= 0 && played() == written) {
+			// Ran dry, the clock restarts from the current position.
+			playedBeforeStart = written;
+			startedAt = System.nanoTime();
+		}
+		written += accepted;
+		return accepted;
+	}
+
+	@Override
+	public synchronized void start() {
+		if (format == null || startedAt >= 0) return;
+		startedAt = System.nanoTime();
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (startedAt < 0) return;
+		playedBeforeStart = played();
+		startedAt = -1;
+	}
+
+	@Override
+	public synchronized void flush() {
+		written = played();
+	}
+
+	@Override
+	public void drain() {
+		while (true) {
+			long remainingMillis;
+			synchronized (this) {
+				if (format == null || startedAt < 0) return;
+				long remaining = written - played();
+				if (remaining <= 0) return;
+				remainingMillis = Math.max(1, remaining * 1000 / bytesPerSecond);
+			}
+			try {
+				Thread.sleep(remainingMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		format = null;
+		startedAt = -1;
+	}
+
+	@Override
+	public synchronized long getMicrosecondPosition() {
+		if (format == null) return 0;
+		return played() * 1000000 / bytesPerSecond;
+	}
+
+	@Override
+	public void setVolume(int volume) {
+	}
+}
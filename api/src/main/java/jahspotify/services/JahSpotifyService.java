@@ -2,6 +2,7 @@ package jahspotify.services;
 
 import jahspotify.JahSpotify;
 import jahspotify.impl.JahSpotifyImpl;
+import jahspotify.util.ListenerRegistry;
 
 import java.io.File;
 
@@ -58,7 +59,7 @@ public class JahSpotifyService
             if (!_jahSpotify.isStarted()) {
             	_jahSpotify.initialize(tempFolder);
             }
-            _jahSpotify.addPlaybackListener(MediaPlayer.getInstance());
+            _jahSpotify.addPlaybackListener(MediaPlayer.getInstance(), ListenerRegistry.PRIORITY_AUDIO);
         }
     }
 
@@ -0,0 +1,136 @@
+package jahspotify.services;
+
+/**
+ * Evens out the loudness of tracks in the spirit of ReplayGain, computed while the audio
+ * streams by instead of from a scan of the whole track. The audio is measured in blocks of 50ms;
+ * the loudness of a track is the level which 95% of its blocks stay below, from a histogram
+ * of the blocks so far. The gain moves slowly towards the gain which brings that loudness to
+ * the target, so it doesn't pump when the estimate changes at the start of a track.
+ * <p>
+ * The audio is 16 bit little endian PCM. It is only measured, the caller applies the gain of
+ * {@link #getFixedGain()} with {@link PcmGain}. Nothing is allocated per block.
+ * All methods are synchronized.
+ */
+public class LoudnessNormalizer {
+	/** Blocks below this level are silence and don't count. */
+	private static final double SILENCE_DB = -70;
+	private static final double BIN_DB = 0.5;
+	private static final int BINS = (int) (-SILENCE_DB / BIN_DB);
+	/** The fastest the gain changes, 5dB per second. */
+	private static final double STEP_DB = 0.25;
+	private static final double MIN_GAIN_DB = -24;
+	private static final double FULL_SCALE = 32768.0 * 32768.0;
+
+	private final double target;
+	private final double maxBoost;
+
+	private final int[] histogram = new int[BINS];
+	private int blocks;
+	private int blockSamples;
+	private int blockFill;
+	private long blockSquares;
+
+	private double loudness = Double.NaN;
+	private double gainDb;
+	private int gain = PcmGain.UNITY;
+
+	/**
+	 * @param target The loudness tracks are brought to, in dB relative to full scale. ReplayGain's
+	 * reference level is about -14dB, -18dB leaves more headroom.
+	 * @param maxBoost The most quiet tracks are amplified, in dB.
+	 */
+	public LoudnessNormalizer(double target, double maxBoost) {
+		this.target = target;
+		this.maxBoost = Math.min(maxBoost, 20 * Math.log10((double) PcmGain.MAX / PcmGain.UNITY));
+		setFormat(44100, 2);
+	}
+
+	public synchronized void setFormat(int rate, int channels) {
+		blockSamples = Math.max(1, rate / 20 * channels);
+		blockFill = 0;
+		blockSquares = 0;
+	}
+
+	/**
+	 * Starts measuring a new track. The current gain is kept until the new track has been
+	 * measured long enough.
+	 */
+	public synchronized void trackChanged() {
+		for (int i = 0; i < BINS; i++)
+			histogram[i] = 0;
+		blocks = 0;
+		loudness = Double.NaN;
+	}
+
+	/**
+	 * Measures the samples without changing them.
+	 * @param buffer
+	 * @param offset
+	 * @param length The number of bytes, a whole number of samples.
+	 */
+	public synchronized void measure(byte[] buffer, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i += 2) {
+			int sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+			blockSquares += sample * sample;
+			if (++blockFill == blockSamples)
+				endBlock();
+		}
+	}
+
+	private void endBlock() {
+		double level = 10 * Math.log10(blockSquares / (blockSamples * FULL_SCALE));
+		blockFill = 0;
+		blockSquares = 0;
+		if (level <= SILENCE_DB) return;
+
+		histogram[Math.min(BINS - 1, (int) ((level - SILENCE_DB) / BIN_DB))]++;
+		blocks++;
+
+		// The level 5% of the blocks are louder than.
+		int louder = 0;
+		int bin = BINS - 1;
+		while (bin > 0 && (louder += histogram[bin]) <= blocks / 20)
+			bin--;
+		loudness = SILENCE_DB + (bin + 1) * BIN_DB;
+
+		double wanted = Math.max(MIN_GAIN_DB, Math.min(maxBoost, target - loudness));
+		gainDb += Math.max(-STEP_DB, Math.min(STEP_DB, wanted - gainDb));
+		gain = PcmGain.fromDecibels(gainDb);
+	}
+
+	/**
+	 * @return The estimated loudness of the current track in dB relative to full scale, NaN if
+	 * it wasn't measured yet.
+	 */
+	public synchronized double getLoudness() {
+		return loudness;
+	}
+
+	/**
+	 * @return The gain which is applied, in dB.
+	 */
+	public synchronized double getGain() {
+		return gainDb;
+	}
+
+	/**
+	 * @return The gain which is applied, as a fixed point gain for {@link PcmGain}.
+	 */
+	public synchronized int getFixedGain() {
+		return gain;
+	}
+
+	public double getTarget() {
+		return target;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LoudnessNormalizer{" +
+				"target=" + target +
+				", loudness=" + loudness +
+				", gain=" + gainDb +
+				'}';
+	}
+}
@@ -0,0 +1,22 @@
+package jahspotify.services;
+
+/**
+ * Callback for the result of a {@link MediaFuture}.
+ */
+public interface MediaCallback<T>
+{
+    /**
+     * Called once the media is loaded. Runs on the thread which completed the
+     * future, which is usually the native callback thread, so it should not block.
+     *
+     * @param media The loaded media, can be null if it could not be read.
+     */
+    public void completed(T media);
+
+    /**
+     * Called when the media could not be retrieved.
+     *
+     * @param cause The reason the retrieval failed.
+     */
+    public void failed(Throwable cause);
+}
@@ -0,0 +1,165 @@
+package jahspotify.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future which is completed by the loaded events of the media it represents.
+ * Callbacks can be added to be notified without parking a thread on {@link #get()}.
+ */
+public class MediaFuture<T> implements Future<T>
+{
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private List<MediaCallback<T>> _callbacks = new ArrayList<MediaCallback<T>>();
+    private T _result;
+    private Throwable _failure;
+    private boolean _cancelled;
+
+    /**
+     * Completes the future with the given media. Does nothing if the future is already done.
+     *
+     * @return true if this call completed the future.
+     */
+    public boolean complete(final T result)
+    {
+        final List<MediaCallback<T>> callbacks;
+        synchronized (this)
+        {
+            if (_callbacks == null)
+            {
+                return false;
+            }
+            _result = result;
+            callbacks = _callbacks;
+            _callbacks = null;
+        }
+        _done.countDown();
+        for (MediaCallback<T> callback : callbacks)
+        {
+            callback.completed(result);
+        }
+        return true;
+    }
+
+    /**
+     * Fails the future with the given cause. Does nothing if the future is already done.
+     *
+     * @return true if this call completed the future.
+     */
+    public boolean fail(final Throwable cause)
+    {
+        final List<MediaCallback<T>> callbacks;
+        synchronized (this)
+        {
+            if (_callbacks == null)
+            {
+                return false;
+            }
+            _failure = cause;
+            callbacks = _callbacks;
+            _callbacks = null;
+        }
+        _done.countDown();
+        for (MediaCallback<T> callback : callbacks)
+        {
+            callback.failed(cause);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a callback which is called when the future completes. If the future
+     * is already done the callback is called immediately on the calling thread.
+     */
+    public void addCallback(final MediaCallback<T> callback)
+    {
+        synchronized (this)
+        {
+            if (_callbacks != null)
+            {
+                _callbacks.add(callback);
+                return;
+            }
+        }
+        if (_failure != null)
+        {
+            callback.failed(_failure);
+        }
+        else
+        {
+            callback.completed(_result);
+        }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        final CancellationException cause = new CancellationException();
+        final List<MediaCallback<T>> callbacks;
+        synchronized (this)
+        {
+            if (_callbacks == null)
+            {
+                return false;
+            }
+            _cancelled = true;
+            _failure = cause;
+            callbacks = _callbacks;
+            _callbacks = null;
+        }
+        _done.countDown();
+        for (MediaCallback<T> callback : callbacks)
+        {
+            callback.failed(cause);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled()
+    {
+        return _cancelled;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return _done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException
+    {
+        _done.await();
+        return result();
+    }
+
+    @Override
+    public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if (!_done.await(timeout, unit))
+        {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private synchronized T result() throws ExecutionException
+    {
+        if (_cancelled)
+        {
+            throw new CancellationException();
+        }
+        if (_failure != null)
+        {
+            throw new ExecutionException(_failure);
+        }
+        return _result;
+    }
+}
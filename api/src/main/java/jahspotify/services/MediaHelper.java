@@ -1,10 +1,15 @@
 package jahspotify.services;
 
+import jahspotify.media.AbstractLoadable;
 import jahspotify.media.Loadable;
+import jahspotify.media.LoadableListener;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Helper class to wait for the loading of loadable types.
@@ -18,41 +23,91 @@ public class MediaHelper {
 	 * @return true if the loadable has been loaded.
 	 */
 	public static boolean waitFor(Loadable m, int maxSeconds) {
-		for (int i = 0; i < maxSeconds * 100; i++) {
-			if (m.isLoaded())
-				return true;
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		return false;
+		List<Loadable> ms = new ArrayList<Loadable>(1);
+		ms.add(m);
+		return waitFor(ms, maxSeconds);
 	}
 
 	/**
-	 * Block until all the loadables are loaded or the timeout has passed.
+	 * Block until all the loadables are loaded or the timeout has passed. The
+	 * calling thread is woken by the loaded events of the loadables, only
+	 * loadables which don't send those events are polled.
 	 * @param _ms The loadables to wait for.
 	 * @param maxSeconds The maximum number of seconds to wait.
 	 * @return true if the all loadables have been loaded.
 	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static boolean waitFor(Collection<? extends Loadable> _ms, int maxSeconds) {
-		List<Loadable> ms = new ArrayList<Loadable>(_ms);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(maxSeconds);
 
-		for (int i = 0; i < maxSeconds * 100; i++) {
+		List<AbstractLoadable> notifying = new ArrayList<AbstractLoadable>();
+		List<Loadable> polled = new ArrayList<Loadable>();
+		for (Loadable m : _ms) {
+			if (m.isLoaded())
+				continue;
+			if (m instanceof AbstractLoadable)
+				notifying.add((AbstractLoadable) m);
+			else
+				polled.add(m);
+		}
+		if (notifying.isEmpty() && polled.isEmpty())
+			return true;
+
+		CountDownLatch latch = new CountDownLatch(notifying.size());
+		List<LatchListener> listeners = new ArrayList<LatchListener>(notifying.size());
+		try {
+			for (AbstractLoadable m : notifying) {
+				LatchListener listener = new LatchListener(latch);
+				listeners.add(listener);
+				m.addLoadableListener(listener);
+			}
+
+			if (!latch.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+				return false;
+			return poll(polled, deadline);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			for (int i = 0; i < listeners.size(); i++)
+				notifying.get(i).removeLoadableListener(listeners.get(i));
+		}
+	}
+
+	/**
+	 * Polls the loadables which can't notify their loading until they are all
+	 * loaded or the deadline has passed.
+	 */
+	private static boolean poll(List<Loadable> ms, long deadline) throws InterruptedException {
+		while (true) {
 			for (int j = ms.size() - 1; j >= 0; j--)
 				if (ms.get(j).isLoaded())
 					ms.remove(j);
 			if (ms.size() == 0)
 				return true;
+			if (System.nanoTime() - deadline >= 0)
+				return false;
+			Thread.sleep(10);
+		}
+	}
 
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+	/**
+	 * Counts down the latch once, even if the loaded event is received more
+	 * than once.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static class LatchListener implements LoadableListener {
+		private final CountDownLatch latch;
+		private final AtomicBoolean counted = new AtomicBoolean();
+
+		LatchListener(CountDownLatch latch) {
+			this.latch = latch;
 		}
 
-		return false;
+		@Override
+		public void loaded(Loadable media) {
+			if (counted.compareAndSet(false, true))
+				latch.countDown();
+		}
 	}
 }
@@ -1,37 +1,57 @@
 package jahspotify.services;
 
+import jahspotify.DirectPlaybackListener;
 import jahspotify.JahSpotify;
-import jahspotify.PlaybackListener;
 import jahspotify.impl.JahSpotifyImpl;
 import jahspotify.media.Link;
 import jahspotify.media.Track;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.SourceDataLine;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * Class which plays the music from libspotify.
  * @author Niels
  */
-public class MediaPlayer implements PlaybackListener {
+public class MediaPlayer implements DirectPlaybackListener {
+	private static final Log log = LogFactory.getLog(MediaPlayer.class);
 	private transient final JahSpotify spotify = JahSpotifyImpl.getInstance();
 	private static final int MAX_HISTORY = 50;
 
-	private List<MediaStreamer> streamers = new ArrayList<MediaStreamer>();
+	private List<StreamerChannel> streamers = new CopyOnWriteArrayList<StreamerChannel>();
 	private List<Queue<Link>> queues = new ArrayList<Queue<Link>>();
 	private List<Track> history = new ArrayList<Track>();
 	private int rate = 0, channels = 0;
-	private int positionOffset = 0;
-	private SourceDataLine audio;
+	private volatile int positionOffset = 0;
+	/** The bytes the sink accepted since it was opened, flushed audio counts as played. */
+	private volatile long writtenBytes = 0;
+	/** Set by a gapless track change, the position restarts at the first audio written after it. */
+	private volatile boolean trackStartPending = false;
+	private volatile PcmSink audio = Boolean.getBoolean("jahspotify.audio.headless") ? new HeadlessPcmSink() : new SourceDataLineSink();
+	private byte[] scratch = new byte[0];
+	private byte[] mixed = new byte[0];
+	private byte[] line = new byte[0];
+	private byte[] streamed = new byte[0];
+	private final Crossfader crossfader = new Crossfader(Math.max(0, Integer.getInteger("jahspotify.crossfade", 0)),
+			parseCurve(System.getProperty("jahspotify.crossfade.curve")));
 	private Track currentTrack;
 	private boolean playing = false;
 	private int volume = 100;
+	private volatile int lineGain = PcmGain.UNITY;
+	private final LoudnessNormalizer normalizer = new LoudnessNormalizer(
+			Double.parseDouble(System.getProperty("jahspotify.normalization.target", "-18")),
+			Double.parseDouble(System.getProperty("jahspotify.normalization.maxboost", "12")));
+	private volatile boolean normalization = Boolean.getBoolean("jahspotify.normalization");
+	/** Set by a gapless track change, the normalizer starts on the new track once the fade is done. */
+	private volatile boolean normalizerResetPending = false;
 
 	private static MediaPlayer instance;
 	public static synchronized MediaPlayer getInstance() {
@@ -41,13 +61,89 @@ public class MediaPlayer implements PlaybackListener {
 	}
 
 	/**
-	 * Reset counters.
+	 * Replaces the sink the audio is played on, for instance with a {@link HeadlessPcmSink}
+	 * on machines without a sound card. The sink is opened on the next format change.
+	 * @param sink
+	 */
+	public synchronized void setPcmSink(PcmSink sink) {
+		if (sink == null) throw new IllegalArgumentException("sink should not be null");
+		audio.close();
+		audio = sink;
+	}
+
+	public PcmSink getPcmSink() {
+		return audio;
+	}
+
+	/**
+	 * Overlaps the end of a track with the start of the next one when the next track was
+	 * prefetched. The initial settings are read from the <code>jahspotify.crossfade</code>
+	 * (milliseconds) and <code>jahspotify.crossfade.curve</code> system properties.
+	 * @param duration The length of the crossfade in milliseconds, 0 disables it.
+	 * @param curve
+	 */
+	public void setCrossfade(int duration, Crossfader.Curve curve) {
+		crossfader.configure(duration, curve);
+	}
+
+	public Crossfader getCrossfader() {
+		return crossfader;
+	}
+
+	private static Crossfader.Curve parseCurve(String curve) {
+		if (curve == null || curve.length() == 0)
+			return Crossfader.Curve.EQUAL_POWER;
+		try {
+			return Crossfader.Curve.valueOf(curve.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			log.warn("Unknown crossfade curve " + curve + ", using " + Crossfader.Curve.EQUAL_POWER);
+			return Crossfader.Curve.EQUAL_POWER;
+		}
+	}
+
+	/**
+	 * Evens out the loudness of the tracks for the line and all streamers. It is off unless the
+	 * <code>jahspotify.normalization</code> system property is true. The
+	 * <code>jahspotify.normalization.target</code> and <code>jahspotify.normalization.maxboost</code>
+	 * system properties set the target loudness and the largest boost, in dB.
+	 * @param normalization
+	 */
+	public void setNormalization(boolean normalization) {
+		this.normalization = normalization;
+	}
+
+	public boolean isNormalization() {
+		return normalization;
+	}
+
+	public LoudnessNormalizer getNormalizer() {
+		return normalizer;
+	}
+
+	/**
+	 * Reset counters and drop the audio of the previous song. The line is kept open, it is
+	 * only reopened when the new song has a different audio format.
 	 */
 	public void changeSong() {
-		if (audio != null && audio.isOpen())
-			audio.close();
-		audio = null;
-		positionOffset = 0;
+		flush();
+		normalizerResetPending = false;
+		normalizer.trackChanged();
+		positionOffset = -(int) (audio.getMicrosecondPosition() / 1000);
+	}
+
+	/**
+	 * Drops the audio which is held back or wasn't played yet. Afterwards everything which was
+	 * written counts as played.
+	 */
+	private void flush() {
+		crossfader.flush();
+		audio.flush();
+		trackStartPending = false;
+		writtenBytes = audio.getMicrosecondPosition() * bytesPerSecond() / 1000000;
+	}
+
+	private int bytesPerSecond() {
+		return Math.max(1, rate * channels * 2);
 	}
 
 	/**
@@ -99,8 +195,8 @@ public class MediaPlayer implements PlaybackListener {
 	 */
 	public void playNow(Track track) {
 		changeSong();
-		spotify.play(track.getId());
 		currentTrack = track;
+		spotify.play(track.getId());
 	}
 
 	/**
@@ -152,7 +248,7 @@ public class MediaPlayer implements PlaybackListener {
 
 	public void seek(int position) {
 		if (currentTrack != null) {
-			audio.flush();
+			flush();
 			spotify.seek(position);
 			seekCallback(position);
 		}
@@ -169,29 +265,126 @@ public class MediaPlayer implements PlaybackListener {
 	 */
 	@Override
 	public int addToBuffer(byte[] buffer) {
-		if (audio == null || buffer == null)
+		if (!audio.isOpen() || buffer == null)
 			return 0;
 		int available = audio.available();
 		if (available == 0)
 			return 0;
-		int bufferSize = buffer.length;
-		int toWrite = Math.min(available, bufferSize);
-		int written = audio.write(buffer, 0, toWrite);
+		return deliver(buffer, accept(available, buffer.length));
+	}
 
-		try {
-			for (MediaStreamer streamer : new ArrayList<MediaStreamer>(streamers)) {
-				try {
-					streamer.addToBuffer(buffer, written);
-				} catch (Throwable t) {
-					// Remove failing streamer.
-					streamers.remove(streamer);
-				}
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
+	/**
+	 * Called from libspotify when direct audio delivery is enabled. Only the part which fits
+	 * in the audio line is copied to a reused array, so no garbage is created per callback.
+	 * @param buffer
+	 * @param frames
+	 * @return
+	 */
+	@Override
+	public int addToBuffer(ByteBuffer buffer, int frames) {
+		if (!audio.isOpen() || buffer == null)
+			return 0;
+		int available = audio.available();
+		if (available == 0)
+			return 0;
+		int toWrite = accept(available, buffer.remaining());
+		if (scratch.length < toWrite)
+			scratch = new byte[toWrite];
+		buffer.get(scratch, 0, toWrite);
+		return deliver(scratch, toWrite);
+	}
+
+	/**
+	 * @return The number of bytes which can be taken from libspotify when the line can take
+	 * the available bytes. While the crossfader refills its delay line that is more.
+	 */
+	private int accept(int available, int length) {
+		if (crossfader.isEnabled())
+			return crossfader.acceptable(available, length);
+		return Math.min(available, length);
+	}
+
+	/**
+	 * Passes the bytes through the crossfader when it is enabled and writes the result.
+	 * @return The number of frames consumed.
+	 */
+	private int deliver(byte[] buffer, int toWrite) {
+		if (!crossfader.isEnabled())
+			return write(buffer, toWrite) / 4;
+
+		if (mixed.length < toWrite)
+			mixed = new byte[toWrite];
+		write(mixed, crossfader.process(buffer, 0, toWrite, mixed));
+		return toWrite / 4;
+	}
+
+	/**
+	 * Writes the bytes to the audio line with the normalization and the volume applied. Only
+	 * the bytes the line accepted are measured by the normalizer and queued for the streamers,
+	 * libspotify delivers the rest again. The streamers get the normalized audio without the
+	 * volume of the line, they apply their own gain on their own threads. The buffer itself
+	 * is not changed, the caller may pass it on.
+	 * @return The number of bytes written.
+	 */
+	private synchronized int write(byte[] buffer, int length) {
+		if (length == 0)
+			return 0;
+		if (trackStartPending) {
+			// The first audio of a track which started without a flush, the line still holds the end of the previous one.
+			trackStartPending = false;
+			positionOffset = -(int) (writtenBytes * 1000 / bytesPerSecond());
+		}
+		if (normalizerResetPending && !crossfader.isFading()) {
+			// The end of the previous track has been mixed in, the rest is the new track.
+			normalizerResetPending = false;
+			normalizer.trackChanged();
+		}
+
+		int gain = normalization ? normalizer.getFixedGain() : PcmGain.UNITY;
+		int combined = (int) ((long) gain * lineGain >> 12);
+		byte[] out = buffer;
+		if (combined != PcmGain.UNITY) {
+			// The buffer itself is kept without the volume of the line for the streamers.
+			if (line.length < length)
+				line = new byte[length];
+			System.arraycopy(buffer, 0, line, 0, length);
+			PcmGain.apply(line, 0, length, combined);
+			out = line;
+		}
+		int written = audio.write(out, 0, length);
+		writtenBytes += written;
+		if (written == 0)
+			return 0;
+
+		if (normalization)
+			normalizer.measure(buffer, 0, written);
+		if (streamers.isEmpty())
+			return written;
+		byte[] normalized = buffer;
+		if (gain != PcmGain.UNITY) {
+			if (streamed.length < written)
+				streamed = new byte[written];
+			System.arraycopy(buffer, 0, streamed, 0, written);
+			PcmGain.apply(streamed, 0, written, gain);
+			normalized = streamed;
 		}
+		for (StreamerChannel channel : streamers) {
+			if (!channel.offer(normalized, written))
+				removeChannel(channel);
+		}
+		return written;
+	}
 
-		return written / 4;
+	/**
+	 * Writes the audio the crossfader holds back, when the track ended without a next track to fade to.
+	 */
+	private void writeDelayed() {
+		int delayed = crossfader.getDelayedBytes();
+		if (delayed == 0 || !audio.isOpen())
+			return;
+		// Not the mix buffer, audio may still be delivered while this runs.
+		byte[] tail = new byte[delayed];
+		write(tail, crossfader.drain(tail));
 	}
 
 	/**
@@ -201,10 +394,12 @@ public class MediaPlayer implements PlaybackListener {
 	 */
 	@Override
 	public void setAudioFormat(int rate, int channels) {
-		if (audio != null && rate == this.rate && channels == this.channels)
+		if (audio.isOpen() && rate == this.rate && channels == this.channels)
 			return;
 		this.rate = rate;
 		this.channels = channels;
+		crossfader.setFormat(rate, channels);
+		normalizer.setFormat(rate, channels);
 
 		try {
 			AudioFormat format = new AudioFormat(rate, 8 * channels, channels,
@@ -214,21 +409,12 @@ public class MediaPlayer implements PlaybackListener {
 					format.getChannels(), format.getFrameSize(),
 					format.getFrameRate(), false);
 
-			synchronized(streamers) {
-				for (MediaStreamer streamer : streamers) {
-					try {
-						streamer.setAudioFormat(format);
-					} catch (Throwable t) {
-						// Remove failing streamer.
-						streamers.remove(streamer);
-					}
-				}
-			}
-
-			audio = AudioSystem.getSourceDataLine(format);
-			audio.open(format, rate * 4);
-			setVolumeToAudio(volume);
+			for (StreamerChannel channel : streamers)
+				channel.setAudioFormat(format);
+
+			audio.open(format);
 			audio.start();
+			writtenBytes = 0;
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -249,32 +435,24 @@ public class MediaPlayer implements PlaybackListener {
 	}
 
 	public int getPosition() {
-		if (audio == null)
+		if (!audio.isOpen())
 			return 0;
-		return positionOffset + (int) audio.getMicrosecondPosition() / 1000;
+		// Negative while the line plays the end of the previous track after a gapless switch.
+		return Math.max(0, positionOffset + (int) (audio.getMicrosecondPosition() / 1000));
 	}
 
 	public int getVolume() {
 		return volume;
 	}
 
+	/**
+	 * Sets the volume of the audio line, it is applied to the samples so it doesn't depend on
+	 * the controls of the line. Streamers have their own volume, see {@link StreamerChannel#setVolume(int)}.
+	 * @param volume Volume from 0 to 100.
+	 */
 	public void setVolume(int volume) {
 		this.volume = volume;
-		setVolumeToAudio(volume);
-	}
-
-	private void setVolumeToAudio(int volume) {
-		if (audio == null) return;
-		if (audio.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
-			FloatControl volumeControl = (FloatControl) audio.getControl(FloatControl.Type.MASTER_GAIN);
-			
-			// Copied from: http://www.javadocexamples.com/java_source/com/limegroup/gnutella/gui/mp3/BasicPlayer.java.html#line.615
-			double minGainDB = volumeControl.getMinimum();
-			double ampGainDB = Math.min(.5*volumeControl.getMaximum(), 0) - volumeControl.getMinimum();
-			double cste = Math.log(10.0)/20;
-			double valueDB = minGainDB + (1/cste)*Math.log(1+(Math.exp(cste*ampGainDB)-1)* (volume / 100f));
-			volumeControl.setValue((float)valueDB);
-		}
+		lineGain = PcmGain.forVolume(volume);
 	}
 
 	/**
@@ -285,31 +463,51 @@ public class MediaPlayer implements PlaybackListener {
 			history.remove(MAX_HISTORY);
 	}
 
+	/**
+	 * Called from libspotify. A track which isn't the current one was prefetched and started by
+	 * the native side when the previous one ended, it is taken from the queue here.
+	 */
 	@Override
 	public void trackStarted(Link link) {
 		playing = true;
+		if (currentTrack != null && currentTrack.getId().equals(link))
+			return;
+
+		crossfader.crossfade();
+		normalizerResetPending = true;
+		if (link.equals(nextLink(false)))
+			nextLink(true);
+		currentTrack = spotify.readTrack(link);
+		history.add(0, currentTrack);
+		trimHistory();
+		trackStartPending = true;
 	}
 
 	@Override
 	public void trackEnded(Link link, boolean forcedEnd) {
+		// The native side already continued with the prefetched track.
+		if (currentTrack != null && !currentTrack.getId().equals(link))
+			return;
+
 		if (!forcedEnd) {
-			if (audio != null && audio.isOpen()) {
-				audio.drain();
-			}
+			writeDelayed();
+			audio.drain();
 		}
 			
 		if (!next()) {
 			pause();
 			currentTrack = null;
-			audio = null;
+			audio.close();
 		}
 	}
 
+	/**
+	 * Called from libspotify when a track starts playing, the returned track is prefetched
+	 * and played without a gap when the current one ends.
+	 */
 	@Override
 	public Link nextTrackToPreload() {
-		Track track = getNextTrack(false);
-		if (track == null) return null;
-		return track.getId();
+		return nextLink(false);
 	}
 
 	/**
@@ -317,6 +515,12 @@ public class MediaPlayer implements PlaybackListener {
 	 * @return
 	 */
 	public Track getNextTrack(boolean popQueue) {
+		Link next = nextLink(popQueue);
+		if (next == null) return null;
+		return JahSpotifyImpl.getInstance().readTrack(next);
+	}
+
+	private Link nextLink(boolean popQueue) {
 		for (Queue<Link> q : queues) {
 			Link next;
 			if (popQueue)
@@ -325,7 +529,7 @@ public class MediaPlayer implements PlaybackListener {
 				next = q.peek();
 
 			if (next != null)
-				return JahSpotifyImpl.getInstance().readTrack(next);
+				return next;
 		}
 		return null;
 	}
@@ -337,18 +541,44 @@ public class MediaPlayer implements PlaybackListener {
 		queues.remove(queue);
 	}
 
-	public void addStreamer(MediaStreamer streamer) {
-		synchronized(streamers) {
-			streamers.add(streamer);
-			if (audio != null)
-				streamer.setAudioFormat(audio.getFormat());
-		}
+	/**
+	 * Adds a streamer which drops audio when it falls more than the default capacity behind.
+	 */
+	public StreamerChannel addStreamer(MediaStreamer streamer) {
+		return addStreamer(streamer, StreamerChannel.OverflowPolicy.DROP, StreamerChannel.DEFAULT_CAPACITY);
+	}
+	/**
+	 * Adds a streamer which is fed from its own thread.
+	 * @param streamer
+	 * @param policy What to do when the streamer can't keep up.
+	 * @param capacity The number of bytes which can be queued for the streamer.
+	 * @return The channel, which keeps the lag and drop counters of the streamer.
+	 */
+	public StreamerChannel addStreamer(MediaStreamer streamer, StreamerChannel.OverflowPolicy policy, int capacity) {
+		StreamerChannel channel = new StreamerChannel(streamer, policy, capacity);
+		AudioFormat format = audio.getFormat();
+		if (format != null)
+			channel.setAudioFormat(format);
+		streamers.add(channel);
+		return channel;
 	}
 	public void removeStreamer(MediaStreamer streamer) {
-		synchronized(streamers) {
-			streamers.remove(streamer);
+		for (StreamerChannel channel : streamers) {
+			if (channel.getStreamer() == streamer)
+				removeChannel(channel);
 		}
 	}
+	private void removeChannel(StreamerChannel channel) {
+		streamers.remove(channel);
+		channel.close();
+	}
+
+	/**
+	 * Returns the channels of the streamers, with their lag and drop counters.
+	 */
+	public List<StreamerChannel> getStreamerChannels() {
+		return new ArrayList<StreamerChannel>(streamers);
+	}
 
 	public List<Track> getHistory() {
 		return history;
@@ -0,0 +1,63 @@
+package jahspotify.services;
+
+/**
+ * Applies gain to 16 bit little endian PCM in place. Gains are fixed point numbers with
+ * {@link #UNITY} as a gain of one, so the loop over the samples only uses integer math.
+ */
+public class PcmGain {
+	/** The fixed point gain which leaves the audio unchanged. */
+	public static final int UNITY = 1 << 12;
+	/** The highest gain, 8 times or about 18dB, which can't overflow an int. */
+	public static final int MAX = 8 * UNITY;
+
+	/** The volume range of {@link #forVolume(int)}, a volume of 1 is this much below 100. */
+	private static final double VOLUME_RANGE_DB = 50;
+
+	private PcmGain() {
+	}
+
+	/**
+	 * Multiplies the samples with the gain, clipping what doesn't fit in 16 bits.
+	 * @param buffer
+	 * @param offset
+	 * @param length The number of bytes, a whole number of samples.
+	 * @param gain A fixed point gain from 0 to {@link #MAX}.
+	 */
+	public static void apply(byte[] buffer, int offset, int length, int gain) {
+		if (gain == UNITY) return;
+		int end = offset + length;
+		for (int i = offset; i < end; i += 2) {
+			int sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+			put(buffer, i, (sample * gain) >> 12);
+		}
+	}
+
+	/**
+	 * Stores the sample at the offset, clipped to 16 bits.
+	 */
+	static void put(byte[] buffer, int offset, int sample) {
+		if (sample > Short.MAX_VALUE) sample = Short.MAX_VALUE;
+		else if (sample < Short.MIN_VALUE) sample = Short.MIN_VALUE;
+		buffer[offset] = (byte) sample;
+		buffer[offset + 1] = (byte) (sample >> 8);
+	}
+
+	/**
+	 * Converts a volume to a gain. The volume is logarithmic, like the loudness we hear: every
+	 * step is the same number of decibels.
+	 * @param volume Volume from 0 (silent) to 100 (unchanged).
+	 * @return The fixed point gain.
+	 */
+	public static int forVolume(int volume) {
+		if (volume <= 0) return 0;
+		if (volume >= 100) return UNITY;
+		return fromDecibels((volume - 100) * VOLUME_RANGE_DB / 100);
+	}
+
+	/**
+	 * @return The fixed point gain for the decibels, at most {@link #MAX}.
+	 */
+	public static int fromDecibels(double decibels) {
+		return (int) Math.min(MAX, Math.round(UNITY * Math.pow(10, decibels / 20)));
+	}
+}
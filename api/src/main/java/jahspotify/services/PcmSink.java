@@ -0,0 +1,67 @@
+package jahspotify.services;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Destination for the PCM audio played by the {@link MediaPlayer}. The sink sets the pace of
+ * the playback: audio it doesn't accept is delivered again by libspotify later.
+ */
+public interface PcmSink {
+	/**
+	 * Opens the sink for the given format, closing it first if it was open with another format.
+	 * @param format
+	 * @throws IOException When the sink can't play the format.
+	 */
+	public void open(AudioFormat format) throws IOException;
+
+	public boolean isOpen();
+
+	/**
+	 * @return The format the sink was opened with, null if it is closed.
+	 */
+	public AudioFormat getFormat();
+
+	/**
+	 * @return The number of bytes which can be written without blocking.
+	 */
+	public int available();
+
+	/**
+	 * Writes audio to the sink.
+	 * @param buffer
+	 * @param offset
+	 * @param length Number of bytes, always a whole number of frames.
+	 * @return The number of bytes which were accepted.
+	 */
+	public int write(byte[] buffer, int offset, int length);
+
+	public void start();
+
+	public void stop();
+
+	/**
+	 * Discards the audio which was written but not yet played.
+	 */
+	public void flush();
+
+	/**
+	 * Blocks until the audio which was written has been played.
+	 */
+	public void drain();
+
+	public void close();
+
+	/**
+	 * @return The playback position since the sink was opened, in microseconds.
+	 */
+	public long getMicrosecondPosition();
+
+	/**
+	 * Sets the volume, sinks which can't change the volume ignore it. The {@link MediaPlayer}
+	 * applies its volume to the samples and doesn't use this.
+	 * @param volume Volume from 0 to 100.
+	 */
+	public void setVolume(int volume);
+}
@@ -0,0 +1,328 @@
+package jahspotify.services;
+
+import jahspotify.JahSpotify;
+import jahspotify.Search;
+import jahspotify.SearchResult;
+import jahspotify.media.AbstractLoadable;
+import jahspotify.media.Album;
+import jahspotify.media.Artist;
+import jahspotify.media.Image;
+import jahspotify.media.Link;
+import jahspotify.media.LoadableListener;
+import jahspotify.media.Playlist;
+import jahspotify.media.Track;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent requests for the same media or an equal search share one native request.
+ * While a track, album, artist, image or playlist is loading, every read for the same link
+ * returns the same instance. Equal searches which are started while one is in flight share
+ * its result. Searches are compared with {@link Search#equals(Object)}, so a search should
+ * not be changed after it was passed in. Requests which did not finish within
+ * <code>jahspotify.search.timeout</code> milliseconds are not joined anymore.
+ */
+public class RequestCoalescer
+{
+    private final JahSpotify _jahSpotify;
+    private final AsyncJahSpotify _async;
+    private final ConcurrentMap<Object, Flight<?>> _inFlight = new ConcurrentHashMap<Object, Flight<?>>();
+    private final long _timeout = TimeUnit.MILLISECONDS.toNanos(Long.getLong("jahspotify.search.timeout", 15000));
+
+    private final AtomicLong _requests = new AtomicLong();
+    private final AtomicLong _coalesced = new AtomicLong();
+    private final AtomicLong _expired = new AtomicLong();
+
+    private static RequestCoalescer instance;
+    public static synchronized RequestCoalescer getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new RequestCoalescer(JahSpotifyService.getInstance().getJahSpotify());
+        }
+        return instance;
+    }
+
+    public RequestCoalescer(final JahSpotify jahSpotify)
+    {
+        _jahSpotify = jahSpotify;
+        _async = new AsyncJahSpotify(jahSpotify);
+    }
+
+    /**
+     * A request which is in flight. Requests which are older than the deadline aren't joined
+     * anymore, in case their media never loads or their search never completes.
+     */
+    private static class Flight<T> extends MediaFuture<T>
+    {
+        private final long _deadline;
+
+        Flight(final long deadline)
+        {
+            _deadline = deadline;
+        }
+    }
+
+    /**
+     * A read of a single media instance.
+     */
+    private interface Read<T>
+    {
+        T read();
+    }
+
+    public Track readTrack(final Link link)
+    {
+        return coalesce(Arrays.<Object>asList("track", link), new Read<Track>()
+        {
+            @Override
+            public Track read()
+            {
+                return _jahSpotify.readTrack(link);
+            }
+        });
+    }
+
+    public Album readAlbum(final Link link, final boolean browse)
+    {
+        return coalesce(Arrays.<Object>asList("album", link, browse), new Read<Album>()
+        {
+            @Override
+            public Album read()
+            {
+                return _jahSpotify.readAlbum(link, browse);
+            }
+        });
+    }
+
+    public Artist readArtist(final Link link, final boolean browse)
+    {
+        return coalesce(Arrays.<Object>asList("artist", link, browse), new Read<Artist>()
+        {
+            @Override
+            public Artist read()
+            {
+                return _jahSpotify.readArtist(link, browse);
+            }
+        });
+    }
+
+    public Image readImage(final Link link)
+    {
+        return coalesce(Arrays.<Object>asList("image", link), new Read<Image>()
+        {
+            @Override
+            public Image read()
+            {
+                return _jahSpotify.readImage(link);
+            }
+        });
+    }
+
+    public Playlist readPlaylist(final Link link, final int index, final int numEntries)
+    {
+        return coalesce(Arrays.<Object>asList("playlist", link, index, numEntries), new Read<Playlist>()
+        {
+            @Override
+            public Playlist read()
+            {
+                return _jahSpotify.readPlaylist(link, index, numEntries);
+            }
+        });
+    }
+
+    /**
+     * Starts the search, or joins an equal search which is in flight.
+     */
+    public MediaFuture<SearchResult> search(final Search search)
+    {
+        final List<Object> key = Arrays.<Object>asList("search", search);
+        final Flight<SearchResult> flight = new Flight<SearchResult>(System.nanoTime() + _timeout);
+        final Flight<SearchResult> existing = join(key, flight);
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        _async.search(search).addCallback(new MediaCallback<SearchResult>()
+        {
+            @Override
+            public void completed(final SearchResult media)
+            {
+                _inFlight.remove(key, flight);
+                flight.complete(media);
+            }
+
+            @Override
+            public void failed(final Throwable cause)
+            {
+                _inFlight.remove(key, flight);
+                flight.fail(cause);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * Returns the instance which is loading for the key, or reads a new one. The instance is
+     * shared until it is loaded.
+     */
+    private <T extends AbstractLoadable<T>> T coalesce(final List<Object> key, final Read<T> read)
+    {
+        final Flight<T> flight = new Flight<T>(System.nanoTime() + _timeout);
+        final Flight<T> existing = join(key, flight);
+        if (existing != null)
+        {
+            return await(existing);
+        }
+
+        final T media;
+        try
+        {
+            media = read.read();
+        }
+        catch (RuntimeException e)
+        {
+            _inFlight.remove(key, flight);
+            flight.fail(e);
+            throw e;
+        }
+
+        if (media == null || media.isLoaded())
+        {
+            _inFlight.remove(key, flight);
+        }
+        else
+        {
+            media.addLoadableListener(new LoadableListener<T>()
+            {
+                @Override
+                public void loaded(final T loaded)
+                {
+                    _inFlight.remove(key, flight);
+                    loaded.removeLoadableListener(this);
+                }
+            });
+        }
+        flight.complete(media);
+        return media;
+    }
+
+    /**
+     * Registers the flight for the key.
+     *
+     * @return The flight to join, or null if the new flight was registered and the request
+     *         should be made. A flight which is older than the timeout is replaced.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Flight<T> join(final Object key, final Flight<T> flight)
+    {
+        _requests.incrementAndGet();
+        while (true)
+        {
+            final Flight<T> existing = (Flight<T>) _inFlight.putIfAbsent(key, flight);
+            if (existing == null)
+            {
+                return null;
+            }
+            if (System.nanoTime() - existing._deadline < 0)
+            {
+                _coalesced.incrementAndGet();
+                return existing;
+            }
+            if (_inFlight.replace(key, existing, flight))
+            {
+                _expired.incrementAndGet();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Waits for the instance of a request which is already in flight. This only waits for the
+     * native call which creates the instance, not for it to load.
+     */
+    private static <T> T await(final MediaFuture<T> flight)
+    {
+        boolean interrupted = false;
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    return flight.get();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return The number of requests which were made through the coalescer.
+     */
+    public long getRequests()
+    {
+        return _requests.get();
+    }
+
+    /**
+     * @return The number of requests which shared a request that was already in flight.
+     */
+    public long getCoalesced()
+    {
+        return _coalesced.get();
+    }
+
+    /**
+     * @return The number of flights which were replaced because they did not finish in time.
+     */
+    public long getExpired()
+    {
+        return _expired.get();
+    }
+
+    /**
+     * @return The number of distinct requests which are currently in flight.
+     */
+    public int getInFlight()
+    {
+        return _inFlight.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RequestCoalescer{" +
+                "requests=" + _requests +
+                ", coalesced=" + _coalesced +
+                ", expired=" + _expired +
+                ", inFlight=" + _inFlight.size() +
+                '}';
+    }
+}
@@ -2,12 +2,10 @@ package jahspotify.services;
 
 import jahspotify.JahSpotify;
 import jahspotify.Search;
-import jahspotify.SearchListener;
 import jahspotify.SearchResult;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author Johan Lindquist
@@ -32,35 +30,25 @@ public class SearchEngine
         _jahSpotify = _jahSpotifyService.getJahSpotify();
     }
 
+    /**
+     * Runs the search and waits up to 10 seconds for the result. Equal searches which are
+     * already in flight are joined instead of started again.
+     */
     public SearchResult search(Search search)
     {
         try
         {
-            final BlockingQueue<SearchResult> resultQueue = new ArrayBlockingQueue<SearchResult>(1);
-            _jahSpotify.initiateSearch(search, new SearchListener()
-            {
-                @Override
-                public void searchComplete(final SearchResult searchResult)
-                {
-                    try
-                    {
-                        searchResult.setLoaded(true);
-                        resultQueue.put(searchResult);
-                    }
-                    catch (InterruptedException e)
-                    {
-                        e.printStackTrace();
-                    }
-                }
-            });
-            return resultQueue.poll(10, TimeUnit.SECONDS);
+            return RequestCoalescer.getInstance().search(search).get(10, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            return null;
         }
         catch (Exception e)
         {
             e.printStackTrace();
             return null;
         }
-
     }
 
 }
@@ -0,0 +1,98 @@
+package jahspotify.services;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays the audio on the sound card through a javax.sound SourceDataLine.
+ */
+public class SourceDataLineSink implements PcmSink {
+	private SourceDataLine audio;
+	private int volume = 100;
+
+	@Override
+	public void open(AudioFormat format) throws IOException {
+		close();
+		try {
+			audio = AudioSystem.getSourceDataLine(format);
+			audio.open(format, (int) format.getFrameRate() * format.getFrameSize());
+		} catch (LineUnavailableException e) {
+			audio = null;
+			throw new IOException("Unable to open audio line: " + e.getMessage());
+		}
+		setVolume(volume);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return audio != null && audio.isOpen();
+	}
+
+	@Override
+	public AudioFormat getFormat() {
+		return audio == null ? null : audio.getFormat();
+	}
+
+	@Override
+	public int available() {
+		return audio == null ? 0 : audio.available();
+	}
+
+	@Override
+	public int write(byte[] buffer, int offset, int length) {
+		return audio == null ? 0 : audio.write(buffer, offset, length);
+	}
+
+	@Override
+	public void start() {
+		if (audio != null) audio.start();
+	}
+
+	@Override
+	public void stop() {
+		if (audio != null) audio.stop();
+	}
+
+	@Override
+	public void flush() {
+		if (audio != null) audio.flush();
+	}
+
+	@Override
+	public void drain() {
+		if (isOpen()) audio.drain();
+	}
+
+	@Override
+	public void close() {
+		if (audio != null && audio.isOpen())
+			audio.close();
+		audio = null;
+	}
+
+	@Override
+	public long getMicrosecondPosition() {
+		return audio == null ? 0 : audio.getMicrosecondPosition();
+	}
+
+	@Override
+	public void setVolume(int volume) {
+		this.volume = volume;
+		if (audio == null) return;
+		if (audio.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+			FloatControl volumeControl = (FloatControl) audio.getControl(FloatControl.Type.MASTER_GAIN);
+			
+			// Copied from: http://www.javadocexamples.com/java_source/com/limegroup/gnutella/gui/mp3/BasicPlayer.java.html#line.615
+			double minGainDB = volumeControl.getMinimum();
+			double ampGainDB = Math.min(.5*volumeControl.getMaximum(), 0) - volumeControl.getMinimum();
+			double cste = Math.log(10.0)/20;
+			double valueDB = minGainDB + (1/cste)*Math.log(1+(Math.exp(cste*ampGainDB)-1)* (volume / 100f));
+			volumeControl.setValue((float)valueDB);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package jahspotify.services;
+
+import jahspotify.util.ByteArrayInOutputStream;
+
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Delivers the audio of the MediaPlayer to a single streamer on its own thread, so a slow
+ * streamer does not hold up the audio line or the other streamers. The audio is buffered
+ * in a bounded queue, the overflow policy decides what happens when the streamer can't
+ * keep up.
+ */
+public class StreamerChannel {
+	/**
+	 * What to do with audio which doesn't fit in the queue of a streamer.
+	 */
+	public enum OverflowPolicy {
+		/** Drop the audio for this streamer. */
+		DROP,
+		/** Wait until the streamer has room, this holds up the audio for everyone. */
+		BLOCK,
+		/** Remove the streamer from the player. */
+		DISCONNECT;
+	}
+
+	/** Default queue size, about 1.5 seconds of 44.1kHz 16 bit stereo audio. */
+	public static final int DEFAULT_CAPACITY = 256 * 1024;
+
+	private static final int FRAME_SIZE = 4;
+
+	private final MediaStreamer streamer;
+	private final OverflowPolicy policy;
+	private final ByteArrayInOutputStream queue;
+	private final Queue<FormatChange> formatChanges = new ConcurrentLinkedQueue<FormatChange>();
+	private final Thread thread;
+	private volatile boolean disconnected;
+
+	private volatile long writtenBytes;
+	private volatile long deliveredBytes;
+	private final AtomicLong droppedBytes = new AtomicLong();
+	private final AtomicLong droppedChunks = new AtomicLong();
+	private volatile long maxLagBytes;
+	private volatile int bytesPerSecond = 44100 * FRAME_SIZE;
+	private volatile int volume = 100;
+	private volatile int gain = PcmGain.UNITY;
+
+	StreamerChannel(MediaStreamer streamer, OverflowPolicy policy, int capacity) {
+		this.streamer = streamer;
+		this.policy = policy;
+		this.queue = new ByteArrayInOutputStream(capacity - capacity % FRAME_SIZE, policy == OverflowPolicy.BLOCK);
+		this.thread = new Thread("MediaStreamer delivery " + streamer.getClass().getSimpleName()) {
+			@Override
+			public void run() {
+				deliverLoop();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues the audio for the streamer. Called on the audio delivery thread.
+	 * @return false if the streamer overflowed and should be disconnected.
+	 */
+	boolean offer(byte[] buffer, int length) {
+		if (disconnected) return false;
+		if (length <= 0) return true;
+
+		if (queue.capacity() - queue.size() < length) {
+			switch (policy) {
+				case BLOCK:
+					break;
+				case DISCONNECT:
+					close();
+					return false;
+				case DROP:
+				default:
+					droppedBytes.addAndGet(length);
+					droppedChunks.incrementAndGet();
+					return true;
+			}
+		}
+
+		queue.write(buffer, 0, length);
+		writtenBytes += length;
+		long lag = writtenBytes - deliveredBytes;
+		if (lag > maxLagBytes) maxLagBytes = lag;
+		return true;
+	}
+
+	/**
+	 * Passes the format on to the streamer once the audio queued before it has been delivered.
+	 */
+	void setAudioFormat(AudioFormat format) {
+		formatChanges.add(new FormatChange(format, writtenBytes));
+	}
+
+	/**
+	 * Stops the delivery thread. Audio which is still queued is not delivered.
+	 */
+	void close() {
+		disconnected = true;
+		queue.close();
+		thread.interrupt();
+	}
+
+	private void deliverLoop() {
+		byte[] chunk = new byte[16 * 1024];
+		try {
+			while (!disconnected) {
+				if (!queue.awaitAvailable(FRAME_SIZE, 1, TimeUnit.SECONDS)) continue;
+				if (disconnected) break;
+
+				long limit = Long.MAX_VALUE;
+				FormatChange change = formatChanges.peek();
+				while (change != null && change.position <= deliveredBytes) {
+					formatChanges.poll();
+					bytesPerSecond = Math.max(FRAME_SIZE, (int) change.format.getFrameRate() * change.format.getFrameSize());
+					streamer.setAudioFormat(change.format);
+					change = formatChanges.peek();
+				}
+				if (change != null) limit = change.position - deliveredBytes;
+
+				int length = (int) Math.min(Math.min(queue.size(), chunk.length), limit);
+				length -= length % FRAME_SIZE;
+				if (length == 0) continue;
+				int read = queue.read(chunk, 0, length);
+				if (read <= 0) continue;
+
+				PcmGain.apply(chunk, 0, read, gain);
+				streamer.addToBuffer(chunk, read);
+				deliveredBytes += read;
+			}
+		} catch (InterruptedIOException e) {
+			// Closed.
+		} catch (Throwable t) {
+			// Failing streamers are disconnected, like they were when they were called directly.
+			disconnected = true;
+			queue.close();
+		}
+	}
+
+	public MediaStreamer getStreamer() {
+		return streamer;
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Sets the volume of this streamer only, it is applied to the samples on the delivery thread.
+	 * @param volume Volume from 0 to 100.
+	 */
+	public void setVolume(int volume) {
+		this.volume = volume;
+		gain = PcmGain.forVolume(volume);
+	}
+
+	public int getVolume() {
+		return volume;
+	}
+
+	/**
+	 * Returns true if the streamer failed or overflowed with the DISCONNECT policy.
+	 */
+	public boolean isDisconnected() {
+		return disconnected;
+	}
+
+	/**
+	 * Returns the number of bytes which are queued but not yet delivered to the streamer.
+	 */
+	public long getLagBytes() {
+		return Math.max(0, writtenBytes - deliveredBytes);
+	}
+
+	/**
+	 * Returns the current lag of the streamer in milliseconds.
+	 */
+	public long getLagMillis() {
+		return getLagBytes() * 1000 / bytesPerSecond;
+	}
+
+	/**
+	 * Returns the highest number of bytes which were queued at the same time.
+	 */
+	public long getMaxLagBytes() {
+		return maxLagBytes;
+	}
+
+	public long getDeliveredBytes() {
+		return deliveredBytes;
+	}
+
+	public long getDroppedBytes() {
+		return droppedBytes.get();
+	}
+
+	/**
+	 * Returns the number of audio callbacks which were dropped for this streamer.
+	 */
+	public long getDroppedChunks() {
+		return droppedChunks.get();
+	}
+
+	@Override
+	public String toString() {
+		return "StreamerChannel{" +
+				"streamer=" + streamer +
+				", policy=" + policy +
+				", volume=" + volume +
+				", lagBytes=" + getLagBytes() +
+				", maxLagBytes=" + maxLagBytes +
+				", deliveredBytes=" + deliveredBytes +
+				", droppedBytes=" + droppedBytes +
+				", droppedChunks=" + droppedChunks +
+				", disconnected=" + disconnected +
+				'}';
+	}
+
+	private static class FormatChange {
+		private final AudioFormat format;
+		private final long position;
+
+		FormatChange(AudioFormat format, long position) {
+			this.format = format;
+			this.position = position;
+		}
+	}
+}
@@ -2,23 +2,66 @@ package jahspotify.util;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Input stream to which data can be added while streaming.
+ * Input stream to which data can be added while streaming. The data is kept in a bounded ring buffer
+ * which is meant to be used by one writing and one reading thread. By default data which doesn't fit in
+ * a full buffer is dropped and counted, a blocking stream makes writes wait for the reader instead.
+ * Reads with waitForFull block until enough data has been written.
  * @author Niels
  */
 public class ByteArrayInOutputStream extends InputStream {
-	private Queue<Byte> bytes = new ConcurrentLinkedQueue<Byte>();
-	int size = 0;
+	/** Default capacity, a bit under six seconds of 44.1kHz 16 bit stereo audio. */
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	private final byte[] buffer;
+	private volatile long writePosition;
+	private volatile long readPosition;
+	private final boolean blocking;
+	private volatile boolean closed;
+	private volatile long droppedBytes;
+
+	private volatile Thread waitingReader;
+	private volatile Thread waitingWriter;
+
+	public ByteArrayInOutputStream() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity The maximum number of bytes which can be buffered.
+	 */
+	public ByteArrayInOutputStream(int capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	 * @param capacity The maximum number of bytes which can be buffered.
+	 * @param blocking true if writes should wait for the reader when the buffer is full, false to drop
+	 * the data which doesn't fit.
+	 */
+	public ByteArrayInOutputStream(int capacity, boolean blocking) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity should be positive: " + capacity);
+		buffer = new byte[capacity];
+		this.blocking = blocking;
+	}
 
 	/**
 	 * Returns the size of the stream.
 	 * @return
 	 */
 	public int size() {
-		return size;
+		return (int) (writePosition - readPosition);
+	}
+
+	/**
+	 * Returns the maximum number of bytes the stream can hold.
+	 */
+	public int capacity() {
+		return buffer.length;
 	}
 
 	/**
@@ -30,6 +73,15 @@ public class ByteArrayInOutputStream extends InputStream {
 		return size();
     }
 
+	/**
+	 * Closes the stream, blocked reads and writes return. Data which was already written can still be read.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		wake(waitingReader);
+		wake(waitingWriter);
+	}
 
 	/**
 	 * Writes the complete buffer to the output.
@@ -39,17 +91,47 @@ public class ByteArrayInOutputStream extends InputStream {
 		write(buff, 0, buff.length);
 	}
 	/**
-	 * Write part of the buffer to the stream.
+	 * Write part of the buffer to the stream. When the stream is full a blocking stream waits for the reader,
+	 * otherwise the data which doesn't fit is dropped. Data written after the stream was closed is discarded.
 	 * @param buff
 	 * @param offset
 	 * @param length
 	 */
 	public void write(byte[] buff, int offset, int length) {
-		for (int i = offset; i < length; i++) {
-			bytes.add(buff[i]);
-			++size;
+		if (!blocking) {
+			int written = offer(buff, offset, length);
+			if (written < length && !closed) droppedBytes += length - written;
+			return;
+		}
+		while (length > 0 && !closed) {
+			int written = offer(buff, offset, length);
+			offset += written;
+			length -= written;
+			if (length > 0 && written == 0 && !awaitSpace()) return;
 		}
 	}
+	/**
+	 * Writes as much of the buffer as fits without blocking.
+	 * @param buff
+	 * @param offset
+	 * @param length
+	 * @return The number of bytes written.
+	 */
+	public int offer(byte[] buff, int offset, int length) {
+		if (closed) return 0;
+		long write = writePosition;
+		int count = Math.min(length, buffer.length - (int) (write - readPosition));
+		if (count <= 0) return 0;
+
+		int start = (int) (write % buffer.length);
+		int first = Math.min(count, buffer.length - start);
+		System.arraycopy(buff, offset, buffer, start, first);
+		System.arraycopy(buff, offset + first, buffer, 0, count - first);
+		writePosition = write + count;
+
+		wake(waitingReader);
+		return count;
+	}
 	/**
 	 * Translate and write the full buffer.
 	 * @param buff
@@ -64,10 +146,10 @@ public class ByteArrayInOutputStream extends InputStream {
 	 * @param length
 	 */
 	public void write(int[] buff, int offset, int length) {
-		for (int i = offset; i <= length && i < buff.length; i++) {
-			bytes.add((byte) buff[i]);
-			++size;
-		}
+		byte[] translated = new byte[length];
+		for (int i = 0; i < length; i++)
+			translated[i] = (byte) buff[offset + i];
+		write(translated, 0, length);
 	}
 
 	/**
@@ -97,13 +179,16 @@ public class ByteArrayInOutputStream extends InputStream {
 	 */
 	@Override
 	public int read() throws IOException {
-		if (bytes.isEmpty()) return -1;
-		--size;
-		return bytes.poll();
+		long read = readPosition;
+		if (read == writePosition) return -1;
+		int b = buffer[(int) (read % buffer.length)] & 0xff;
+		readPosition = read + 1;
+		wake(waitingWriter);
+		return b;
 	}
 
 	/**
-	 * Try to read len amount of bytes.
+	 * Try to read len amount of bytes, returns the number of bytes read or -1 if no data is available.
 	 */
 	@Override
 	public int read(byte b[], int off, int len) throws IOException {
@@ -115,17 +200,18 @@ public class ByteArrayInOutputStream extends InputStream {
             return 0;
         }
 
-        if (size() == 0) return -1;
-        int i = off;
-        int size = size();
-        try {
-	        for (; i < len && i < size; i++)
-	        	b[i] = (byte)read();
-        } catch (Exception e) {
+        long read = readPosition;
+        int count = Math.min(len, (int) (writePosition - read));
+        if (count == 0) return -1;
 
-        }
+        int start = (int) (read % buffer.length);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, count - first);
+        readPosition = read + count;
 
-        return i;
+        wake(waitingWriter);
+        return count;
     }
 
 	/**
@@ -138,17 +224,81 @@ public class ByteArrayInOutputStream extends InputStream {
 	 * @throws IOException
 	 */
 	public int read(byte[] b, int off, int len, boolean waitForFull) throws IOException {
-		int i = 0;
-		while (available() < len) {
-			try {
-				if (i++ > 500) return -1;
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		if (waitForFull && !awaitAvailable(Math.min(len, buffer.length), 5, TimeUnit.SECONDS)) return -1;
+		return read(b, off, len);
+	}
+
+	/**
+	 * Waits until at least count bytes are available, the stream is closed or the timeout passed.
+	 * @param count The number of bytes to wait for, at most the capacity.
+	 * @param timeout
+	 * @param unit
+	 * @return true if count bytes are available, or if the stream was closed and some data is left.
+	 * @throws InterruptedIOException When the thread was interrupted while waiting.
+	 */
+	public boolean awaitAvailable(int count, long timeout, TimeUnit unit) throws InterruptedIOException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		waitingReader = Thread.currentThread();
+		try {
+			while (size() < count) {
+				if (closed) return size() > 0;
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) return false;
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.interrupted()) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
 			}
+			return true;
+		} finally {
+			waitingReader = null;
 		}
-		return read(b, off, len);
 	}
 
+	/**
+	 * Returns if writes wait for the reader when the buffer is full.
+	 */
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	/**
+	 * Returns the number of bytes which were dropped by write because the buffer was full.
+	 */
+	public long getDroppedBytes() {
+		return droppedBytes;
+	}
+
+	/**
+	 * Returns if the stream was closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Waits until there is room in the buffer or the stream is closed.
+	 * @return false if the stream was closed or the thread was interrupted.
+	 */
+	private boolean awaitSpace() {
+		waitingWriter = Thread.currentThread();
+		try {
+			while (size() == buffer.length) {
+				if (closed) return false;
+				LockSupport.park(this);
+				if (Thread.interrupted()) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			waitingWriter = null;
+		}
+	}
+
+	private static void wake(Thread thread) {
+		if (thread != null) LockSupport.unpark(thread);
+	}
 }
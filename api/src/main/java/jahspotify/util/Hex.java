@@ -7,6 +7,8 @@ package jahspotify.util;
  */
 public class Hex
 {
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
     /**
      * Convert a hexadecimal string into a byte array.
      * <ul>
@@ -46,14 +48,15 @@ public class Hex
      */
     public static String toHex(byte[] bytes)
     {
-        String hex = "";
+        char[] hex = new char[bytes.length * 2];
 
         for (int i = 0; i < bytes.length; i++)
         {
-            hex += String.format("%02x", bytes[i]);
+            hex[i * 2] = DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = DIGITS[bytes[i] & 0xF];
         }
 
-        return hex;
+        return new String(hex);
     }
 
     /**
@@ -64,7 +67,19 @@ public class Hex
      */
     public static boolean isHex(String hex)
     {
-        return (hex.length() % 2 == 0) && hex.matches("[0-9A-Fa-f]+");
+        if (hex.length() == 0 || hex.length() % 2 != 0)
+        {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i++)
+        {
+            char c = hex.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f') && (c < 'A' || c > 'F'))
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static String toHex(long number, final int maxLen)
@@ -0,0 +1,250 @@
+package jahspotify.util;
+
+/**
+ * Converts 128 bit Spotify ids between their 22 character base62 form, their 32 character
+ * hexadecimal form and two longs. Both string forms have a fixed width and keep their leading
+ * zeroes. Unlike {@link BaseConvert} the conversions don't go through {@link java.math.BigInteger},
+ * the only allocation is the result. An id is decoded as its high and low 64 bits separately, so
+ * nothing is allocated to return them.
+ */
+public class IdCodec
+{
+    public static final int BASE62_LENGTH = 22;
+    public static final int HEX_LENGTH = 32;
+
+    private static final char[] BASE62_DIGITS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final long MASK32 = 0xFFFFFFFFL;
+    /** The digits of the largest id, 2^128 - 1. */
+    private static final int[] MAX_BASE62_DIGITS = base62Digits(toBase62(-1L, -1L));
+
+    /**
+     * @param source The characters to check.
+     * @param offset The index of the first character.
+     * @return true if there are 22 base62 digits at the offset, with a value which fits in 128 bits.
+     */
+    public static boolean isBase62(final CharSequence source, final int offset)
+    {
+        if (source.length() < offset + BASE62_LENGTH)
+        {
+            return false;
+        }
+
+        // Compared digit by digit with the largest id, as long as the digits so far are equal.
+        boolean equalToMax = true;
+        for (int i = 0; i < BASE62_LENGTH; i++)
+        {
+            final int digit = base62Digit(source.charAt(offset + i));
+            if (digit < 0)
+            {
+                return false;
+            }
+            if (equalToMax && digit != MAX_BASE62_DIGITS[i])
+            {
+                if (digit > MAX_BASE62_DIGITS[i])
+                {
+                    return false;
+                }
+                equalToMax = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the high 64 bits of the 22 base62 characters at the offset, which should be
+     * checked with {@link #isBase62(CharSequence, int)}.
+     */
+    public static long base62High(final CharSequence source, final int offset)
+    {
+        long high = 0;
+        long low = 0;
+        for (int i = offset; i < offset + BASE62_LENGTH; i++)
+        {
+            // Multiply the 128 bit value by 62 and add the digit, 32 bits at a time.
+            final long lowLow = (low & MASK32) * 62 + base62Digit(source.charAt(i));
+            final long lowHigh = (low >>> 32) * 62 + (lowLow >>> 32);
+            final long highLow = (high & MASK32) * 62 + (lowHigh >>> 32);
+            final long highHigh = (high >>> 32) * 62 + (highLow >>> 32);
+            low = (lowHigh << 32) | (lowLow & MASK32);
+            high = (highHigh << 32) | (highLow & MASK32);
+        }
+        return high;
+    }
+
+    /**
+     * Decodes the low 64 bits of the 22 base62 characters at the offset, which should be
+     * checked with {@link #isBase62(CharSequence, int)}.
+     */
+    public static long base62Low(final CharSequence source, final int offset)
+    {
+        // The low bits don't depend on the carries into the high bits, overflow drops them.
+        long low = 0;
+        for (int i = offset; i < offset + BASE62_LENGTH; i++)
+        {
+            low = low * 62 + base62Digit(source.charAt(i));
+        }
+        return low;
+    }
+
+    /**
+     * @param source The characters to check.
+     * @param offset The index of the first character.
+     * @return true if there are 32 hexadecimal digits at the offset, upper and lower case are accepted.
+     */
+    public static boolean isHex(final CharSequence source, final int offset)
+    {
+        if (source.length() < offset + HEX_LENGTH)
+        {
+            return false;
+        }
+        for (int i = offset; i < offset + HEX_LENGTH; i++)
+        {
+            if (hexDigit(source.charAt(i)) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the high 64 bits of the 32 hexadecimal characters at the offset, which should
+     * be checked with {@link #isHex(CharSequence, int)}.
+     */
+    public static long hexHigh(final CharSequence source, final int offset)
+    {
+        return hexLong(source, offset);
+    }
+
+    /**
+     * Decodes the low 64 bits of the 32 hexadecimal characters at the offset, which should
+     * be checked with {@link #isHex(CharSequence, int)}.
+     */
+    public static long hexLow(final CharSequence source, final int offset)
+    {
+        return hexLong(source, offset + 16);
+    }
+
+    private static long hexLong(final CharSequence source, final int offset)
+    {
+        long value = 0;
+        for (int i = offset; i < offset + 16; i++)
+        {
+            value = (value << 4) | hexDigit(source.charAt(i));
+        }
+        return value;
+    }
+
+    /**
+     * @return The 22 character base62 form of the id.
+     */
+    public static String toBase62(final long high, final long low)
+    {
+        final char[] chars = new char[BASE62_LENGTH];
+        long h = high;
+        long l = low;
+        for (int i = chars.length - 1; i >= 0; i--)
+        {
+            // Divide the 128 bit value by 62, 32 bits at a time.
+            long current = h >>> 32;
+            final long q3 = current / 62;
+            current = ((current % 62) << 32) | (h & MASK32);
+            final long q2 = current / 62;
+            current = ((current % 62) << 32) | (l >>> 32);
+            final long q1 = current / 62;
+            current = ((current % 62) << 32) | (l & MASK32);
+            final long q0 = current / 62;
+            chars[i] = BASE62_DIGITS[(int) (current % 62)];
+            h = (q3 << 32) | q2;
+            l = (q1 << 32) | q0;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return The 32 character lower case hexadecimal form of the id.
+     */
+    public static String toHex(final long high, final long low)
+    {
+        final char[] chars = new char[HEX_LENGTH];
+        for (int i = 0; i < 16; i++)
+        {
+            chars[15 - i] = HEX_DIGITS[(int) (high >>> (i * 4)) & 0xF];
+            chars[31 - i] = HEX_DIGITS[(int) (low >>> (i * 4)) & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Converts a 32 character hexadecimal id to its 22 character base62 form.
+     *
+     * @throws IllegalArgumentException If the id is not 32 hexadecimal characters.
+     */
+    public static String hexToBase62(final String hex)
+    {
+        if (hex.length() != HEX_LENGTH || !isHex(hex, 0))
+        {
+            throw new IllegalArgumentException("Not a hexadecimal id: " + hex);
+        }
+        return toBase62(hexHigh(hex, 0), hexLow(hex, 0));
+    }
+
+    /**
+     * Converts a 22 character base62 id to its 32 character hexadecimal form.
+     *
+     * @throws IllegalArgumentException If the id is not 22 base62 characters or too large.
+     */
+    public static String base62ToHex(final String base62)
+    {
+        if (base62.length() != BASE62_LENGTH || !isBase62(base62, 0))
+        {
+            throw new IllegalArgumentException("Not a base62 id: " + base62);
+        }
+        return toHex(base62High(base62, 0), base62Low(base62, 0));
+    }
+
+    private static int[] base62Digits(final String base62)
+    {
+        final int[] digits = new int[base62.length()];
+        for (int i = 0; i < digits.length; i++)
+        {
+            digits[i] = base62Digit(base62.charAt(i));
+        }
+        return digits;
+    }
+
+    private static int hexDigit(final char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f')
+        {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F')
+        {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static int base62Digit(final char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'z')
+        {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'Z')
+        {
+            return c - 'A' + 36;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,106 @@
+package jahspotify.util;
+
+import java.lang.reflect.Array;
+
+/**
+ * Copy on write list of listeners which can be changed from any thread while it is being
+ * iterated. Listeners with a higher priority come first, listeners with the same priority
+ * keep the order in which they were added.
+ */
+public class ListenerRegistry<T> {
+	/** Priority for listeners which should be called before all others, like audio outputs. */
+	public static final int PRIORITY_AUDIO = 100;
+	public static final int PRIORITY_DEFAULT = 0;
+
+	private final Class<T> type;
+	private volatile T[] listeners;
+	private volatile int[] priorities = new int[0];
+
+	@SuppressWarnings("unchecked")
+	public ListenerRegistry(Class<T> type) {
+		this.type = type;
+		this.listeners = (T[]) Array.newInstance(type, 0);
+	}
+
+	/**
+	 * Adds the listener with the default priority.
+	 * @param listener
+	 */
+	public void add(T listener) {
+		add(listener, PRIORITY_DEFAULT);
+	}
+
+	/**
+	 * Adds the listener. A listener which was already added is moved to the new priority.
+	 * @param listener
+	 * @param priority Listeners with a higher priority are called first.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void add(T listener, int priority) {
+		if (listener == null) throw new IllegalArgumentException("listener should not be null");
+		remove(listener);
+
+		T[] current = listeners;
+		int[] currentPriorities = priorities;
+		int index = 0;
+		while (index < current.length && currentPriorities[index] >= priority)
+			index++;
+
+		T[] updated = (T[]) Array.newInstance(type, current.length + 1);
+		int[] updatedPriorities = new int[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, index);
+		System.arraycopy(currentPriorities, 0, updatedPriorities, 0, index);
+		updated[index] = listener;
+		updatedPriorities[index] = priority;
+		System.arraycopy(current, index, updated, index + 1, current.length - index);
+		System.arraycopy(currentPriorities, index, updatedPriorities, index + 1, current.length - index);
+
+		priorities = updatedPriorities;
+		listeners = updated;
+	}
+
+	/**
+	 * Removes the listener.
+	 * @param listener
+	 * @return true if the listener was registered.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized boolean remove(T listener) {
+		T[] current = listeners;
+		int index = -1;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == listener) {
+				index = i;
+				break;
+			}
+		}
+		if (index < 0) return false;
+
+		T[] updated = (T[]) Array.newInstance(type, current.length - 1);
+		int[] updatedPriorities = new int[current.length - 1];
+		System.arraycopy(current, 0, updated, 0, index);
+		System.arraycopy(priorities, 0, updatedPriorities, 0, index);
+		System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+		System.arraycopy(priorities, index + 1, updatedPriorities, index, current.length - index - 1);
+
+		priorities = updatedPriorities;
+		listeners = updated;
+		return true;
+	}
+
+	/**
+	 * Returns the listeners at this moment, ordered by priority. The array is shared and
+	 * should not be changed, iterating it doesn't allocate.
+	 */
+	public T[] listeners() {
+		return listeners;
+	}
+
+	public int size() {
+		return listeners.length;
+	}
+
+	public boolean isEmpty() {
+		return listeners.length == 0;
+	}
+}
@@ -0,0 +1,153 @@
+package jahspotify.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Map with a maximum size which evicts the least recently used entry when it is full.
+ * Entries expire after a fixed time to live. All methods are synchronized.
+ */
+public class LruCache<K, V> {
+	private static class CacheEntry<V> {
+		private final V value;
+		private final long expiresAt;
+
+		CacheEntry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int maxSize;
+	private final long ttl;
+	private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+
+	/**
+	 * @param maxSize The maximum number of entries, 0 disables the cache.
+	 * @param ttl The time after which an entry expires, 0 or less for never.
+	 * @param unit The unit of the time to live.
+	 */
+	public LruCache(int maxSize, long ttl, TimeUnit unit) {
+		this.maxSize = Math.max(0, maxSize);
+		this.ttl = ttl > 0 ? unit.toNanos(ttl) : 0;
+		this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+				if (size() <= LruCache.this.maxSize) return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return The value for the key, null if it isn't cached or expired.
+	 */
+	public synchronized V get(K key) {
+		CacheEntry<V> entry = entries.get(key);
+		if (entry != null && ttl > 0 && System.nanoTime() - entry.expiresAt >= 0) {
+			entries.remove(key);
+			expirations++;
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * Caches the value, replacing the value which was cached for the key.
+	 */
+	public synchronized void put(K key, V value) {
+		if (maxSize == 0 || value == null) return;
+		entries.put(key, new CacheEntry<V>(value, System.nanoTime() + ttl));
+	}
+
+	/**
+	 * Removes the entry for the key.
+	 * @return true if there was an entry.
+	 */
+	public synchronized boolean invalidate(K key) {
+		return entries.remove(key) != null;
+	}
+
+	/**
+	 * Removes all entries for which the key matches.
+	 * @return The number of removed entries.
+	 */
+	public synchronized int invalidateAll(Matcher<? super K> matcher) {
+		int removed = 0;
+		for (Iterator<K> it = entries.keySet().iterator(); it.hasNext();) {
+			if (matcher.matches(it.next())) {
+				it.remove();
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of entries which were removed to make room for new ones.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return The number of entries which were removed because they expired.
+	 */
+	public synchronized long getExpirations() {
+		return expirations;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LruCache{" +
+				"size=" + entries.size() +
+				", maxSize=" + maxSize +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				", expirations=" + expirations +
+				'}';
+	}
+
+	/**
+	 * Selects keys for {@link LruCache#invalidateAll(Matcher)}.
+	 */
+	public interface Matcher<K> {
+		boolean matches(K key);
+	}
+}
@@ -0,0 +1,60 @@
+package jahspotify.impl;
+
+import jahspotify.JahSpotify;
+import jahspotify.Query;
+import jahspotify.Search;
+import jahspotify.SearchListener;
+import jahspotify.SearchResult;
+import jahspotify.services.MediaFuture;
+import jahspotify.services.RequestCoalescer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+public class TestSearchTokenTable extends TestCase
+{
+
+    public void testExpiredSearchFailsFuture() throws Exception
+    {
+        final SearchTokenTable table = new SearchTokenTable(50);
+        JahSpotify jahSpotify = (JahSpotify) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { JahSpotify.class }, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args)
+            {
+                if (method.getName().equals("initiateSearch"))
+                {
+                    table.register((SearchListener) args[1]);
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        RequestCoalescer coalescer = new RequestCoalescer(jahSpotify);
+        MediaFuture<SearchResult> future = coalescer.search(new Search(Query.token("expires")));
+        assertEquals(1, coalescer.getInFlight());
+
+        Thread.sleep(100);
+        assertEquals("expired search still in flight", 0, table.getInFlight());
+        assertEquals(1, table.getExpired());
+
+        assertTrue("future not failed", future.isDone());
+        try
+        {
+            future.get(0, TimeUnit.SECONDS);
+            fail("expired search completed");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals("expired search still coalesced", 0, coalescer.getInFlight());
+    }
+}
@@ -1,5 +1,16 @@
 package jahspotify.media;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import junit.framework.TestCase;
 
 /**
@@ -33,4 +44,145 @@ public class TestLink extends TestCase
         assertEquals("bad type", Link.Type.MP3,link.getType());
         assertEquals("bad uri","http://www.localhost/",link.getUri());
     }
+
+    public void testInternsAndKeepsIds() throws Exception
+    {
+        Link track = Link.create("spotify:track:3PogVmhNucYNfyywZvTd7F");
+        assertSame("link not interned", track, Link.create(new String("spotify:track:3PogVmhNucYNfyywZvTd7F")));
+        assertEquals("bad uri", "spotify:track:3PogVmhNucYNfyywZvTd7F", track.asString());
+        assertEquals("bad http link", "http://open.spotify.com/track/3PogVmhNucYNfyywZvTd7F", track.asHTTPLink());
+
+        Link album = Link.create("spotify:album:3PogVmhNucYNfyywZvTd7F");
+        assertFalse("different types equal", track.equals(album));
+
+        String[] ids = { "0000000000000000000000", "0000000000000000000001", "000000000000000000000Z",
+                "0000000000010000000000", "7N42dgm5tFLK9N8MT7fHC7", "7N42dgm5tFLK9N8MT7fHC8", "ZZZZZZZZZZZZZZZZZZZZZZ" };
+        for (String id : ids)
+        {
+            assertEquals("bad round trip", "spotify:artist:" + id, Link.create("spotify:artist:" + id).asString());
+        }
+
+        Link smaller = Link.create("spotify:track:0000000000000000000001");
+        Link larger = Link.create("spotify:track:7N42dgm5tFLK9N8MT7fHC7");
+        assertTrue("bad order", smaller.compareTo(larger) < 0);
+        assertTrue("bad order", larger.compareTo(smaller) > 0);
+        assertEquals("bad order", 0, larger.compareTo(Link.create("spotify:track:7N42dgm5tFLK9N8MT7fHC7")));
+    }
+
+    public void testDeserializesToPooledLink() throws Exception
+    {
+        Link track = Link.create("spotify:track:3PogVmhNucYNfyywZvTd7F");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(track);
+        out.close();
+        Object read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertSame("link not pooled", track, read);
+    }
+
+    private static final List<String> URIS = Arrays.asList(
+            "spotify:album:3PogVmhNucYNfyywZvTd7F",
+            "spotify:artist:3PogVmhNucYNfyywZvTd7F",
+            "spotify:track:3PogVmhNucYNfyywZvTd7F",
+            "spotify:track:3PogVmhNucYNfyywZvTd7",
+            "spotify:track:3PogVmhNucYNfyywZvTd7F0",
+            "spotify:track:3PogVmhNucYNfyywZvTd7-",
+            "spotify:single:3PogVmhNucYNfyywZvTd7F",
+            "spotify:image:0123456789abcdef0123456789abcdef01234567",
+            "spotify:image:0123456789abcdef0123456789abcdef0123456",
+            "spotify:user:someone:playlist:3PogVmhNucYNfyywZvTd7F",
+            "spotify:user:someone:playlist:3PogVmhNucYNfyywZvTd7",
+            "spotify:user::playlist:3PogVmhNucYNfyywZvTd7F",
+            "spotify:user:someone:starred",
+            "spotify:user:someone",
+            "spotify:user:",
+            "spotify:user:some\none",
+            "spotify:search:artist%3Asomeone+song",
+            "spotify:search:",
+            "spotify:search:two words",
+            "spotify:local:artist:album:title:180",
+            "spotify:local:",
+            "spotify:local:a\u2028b",
+            "jahspotify:queue:default",
+            "jahspotify:queue:default:entry",
+            "jahspotify:queue:",
+            "jahspotify:queue",
+            "jahspotify:podcast:http://www.localhost/",
+            "jahspotify:mp3:http://www.localhost/",
+            "jahspotify:mp3:http://www.localhost/a b",
+            "jahspotify:folder:ROOT",
+            "spotify:",
+            "",
+            "http://open.spotify.com/track/3PogVmhNucYNfyywZvTd7F");
+
+    public void testMatchesRegexParser() throws Exception
+    {
+        for (String uri : URIS)
+        {
+            String expected;
+            try
+            {
+                expected = parseWithRegex(uri);
+            }
+            catch (IllegalArgumentException e)
+            {
+                expected = "invalid";
+            }
+
+            String actual;
+            try
+            {
+                actual = describe(Link.create(uri));
+            }
+            catch (Link.InvalidSpotifyURIException e)
+            {
+                actual = "invalid";
+            }
+            assertEquals("bad parse of " + uri, expected, actual);
+        }
+    }
+
+    private static String describe(Link link)
+    {
+        return link.getType().name() + "|" + link.asString() + "|" + link.getQueueId() + "|" + link.getUri()
+                + "|" + (link.isPlaylistLink() ? link.getUser() : null)
+                + "|" + (link.isSearchLink() ? link.getQuery() : null);
+    }
+
+    private static final Pattern MEDIA = Pattern.compile("spotify:(artist|album|track):([0-9A-Za-z]{22})");
+    private static final Pattern IMAGE = Pattern.compile("spotify:image:([0-9A-Za-z]{40})");
+    private static final Pattern PLAYLIST = Pattern.compile("spotify:user:([^:]+):playlist:([0-9A-Za-z]{22})");
+    private static final Pattern SEARCH = Pattern.compile("spotify:search:([^\\s]+)");
+    private static final Pattern QUEUE = Pattern.compile("jahspotify:queue((:)([^\\s]+))");
+    private static final Pattern PODCAST = Pattern.compile("jahspotify:podcast:([^\\s]+)");
+    private static final Pattern MP3 = Pattern.compile("jahspotify:mp3:([^\\s]+)");
+    private static final Pattern LOCAL = Pattern.compile("spotify:local:(.*)");
+    private static final Pattern USER = Pattern.compile("spotify:user:(.*)");
+
+    /**
+     * The regular expression parser which Link used before, describes the link it created.
+     */
+    private static String parseWithRegex(String uri) throws UnsupportedEncodingException
+    {
+        Matcher m;
+        if ((m = MEDIA.matcher(uri)).matches())
+            return m.group(1).toUpperCase() + "|" + uri + "|null|null|null|null";
+        if (IMAGE.matcher(uri).matches())
+            return "IMAGE|" + uri + "|null|null|null|null";
+        if ((m = PLAYLIST.matcher(uri)).matches())
+            return "PLAYLIST|" + uri + "|null|null|" + m.group(1) + "|null";
+        if ((m = SEARCH.matcher(uri)).matches())
+            return "SEARCH|null|null|null|null|" + URLDecoder.decode(m.group(1), "UTF-8");
+        if ((m = QUEUE.matcher(uri)).matches())
+            return "QUEUE|" + uri + "|" + m.group(3) + "|null|null|null";
+        if ((m = PODCAST.matcher(uri)).matches())
+            return "PODCAST|" + uri + "|null|" + m.group(1) + "|null|null";
+        if ((m = MP3.matcher(uri)).matches())
+            return "MP3|" + uri + "|null|" + m.group(1) + "|null|null";
+        if (LOCAL.matcher(uri).matches())
+            return "LOCAL|" + uri + "|null|null|null|null";
+        if (USER.matcher(uri).matches())
+            return "USER|" + uri + "|null|null|null|null";
+        throw new IllegalArgumentException(uri);
+    }
 }
@@ -0,0 +1,78 @@
+package jahspotify.services;
+
+import junit.framework.TestCase;
+
+public class TestCrossfader extends TestCase
+{
+
+    public void testDisabledPassesThrough() throws Exception
+    {
+        Crossfader crossfader = new Crossfader(0, Crossfader.Curve.LINEAR);
+        crossfader.setFormat(44100, 2);
+        byte[] in = pcm(4, 1234);
+        byte[] out = new byte[in.length];
+        assertFalse("crossfader enabled", crossfader.isEnabled());
+        assertEquals("bad acceptable", 8, crossfader.acceptable(8, in.length));
+        assertEquals("bad length", in.length, crossfader.process(in, 0, in.length, out));
+        assertEquals("bad sample", 1234, sample(out, 3));
+    }
+
+    public void testDelays() throws Exception
+    {
+        // 10 samples of delay.
+        Crossfader crossfader = new Crossfader(10, Crossfader.Curve.LINEAR);
+        crossfader.setFormat(1000, 1);
+        byte[] out = new byte[20];
+        assertEquals("bad acceptable while filling", 22, crossfader.acceptable(2, 100));
+        assertEquals("output while filling", 0, crossfader.process(pcm(10, 1000), 0, 20, out));
+        assertEquals("bad delayed bytes", 20, crossfader.getDelayedBytes());
+        assertEquals("bad acceptable when full", 2, crossfader.acceptable(2, 100));
+        assertEquals("bad length", 20, crossfader.process(pcm(10, 2000), 0, 20, out));
+        assertEquals("bad delayed sample", 1000, sample(out, 9));
+    }
+
+    public void testCrossfades() throws Exception
+    {
+        Crossfader crossfader = new Crossfader(10, Crossfader.Curve.LINEAR);
+        crossfader.setFormat(1000, 1);
+        byte[] out = new byte[20];
+        crossfader.process(pcm(10, 1000), 0, 20, out);
+        crossfader.crossfade();
+
+        assertEquals("bad acceptable while fading", 40, crossfader.acceptable(20, 100));
+        assertEquals("bad length", 20, crossfader.process(pcm(10, 2000), 0, 20, out));
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals("bad mix at " + i, 1050 + i * 100, sample(out, i));
+        }
+        assertEquals("output while refilling", 0, crossfader.process(pcm(10, 2000), 0, 20, out));
+        assertEquals("bad crossfades", 1, crossfader.getCrossfades());
+    }
+
+    public void testClips() throws Exception
+    {
+        Crossfader crossfader = new Crossfader(10, Crossfader.Curve.EQUAL_POWER);
+        crossfader.setFormat(1000, 1);
+        byte[] out = new byte[20];
+        crossfader.process(pcm(10, Short.MAX_VALUE), 0, 20, out);
+        crossfader.crossfade();
+        crossfader.process(pcm(10, Short.MAX_VALUE), 0, 20, out);
+        assertEquals("not clipped", Short.MAX_VALUE, sample(out, 5));
+    }
+
+    private static byte[] pcm(int samples, int value)
+    {
+        byte[] bytes = new byte[samples * 2];
+        for (int i = 0; i < samples; i++)
+        {
+            bytes[i * 2] = (byte) value;
+            bytes[i * 2 + 1] = (byte) (value >> 8);
+        }
+        return bytes;
+    }
+
+    private static int sample(byte[] bytes, int index)
+    {
+        return (short) ((bytes[index * 2] & 0xFF) | (bytes[index * 2 + 1] << 8));
+    }
+}
@@ -0,0 +1,51 @@
+package jahspotify.services;
+
+import jahspotify.media.Image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestMediaHelper extends TestCase
+{
+
+    public void testWaitForLoaded() throws Exception
+    {
+        Image image = new Image();
+        image.setLoaded(true);
+        assertTrue("loaded image not reported", MediaHelper.waitFor(image, 0));
+    }
+
+    public void testTimeout() throws Exception
+    {
+        assertFalse("unloaded image reported as loaded", MediaHelper.waitFor(new Image(), 0));
+    }
+
+    public void testWaitForAll() throws Exception
+    {
+        final List<Image> images = new ArrayList<Image>();
+        for (int i = 0; i < 20; i++)
+        {
+            images.add(new Image());
+        }
+
+        Thread loader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for (Image image : images)
+                {
+                    image.setLoaded(true);
+                }
+            }
+        };
+        loader.start();
+
+        long started = System.nanoTime();
+        assertTrue("not all images loaded", MediaHelper.waitFor(images, 5));
+        assertTrue("waited for the timeout", System.nanoTime() - started < 4000000000L);
+        loader.join();
+    }
+}
@@ -0,0 +1,75 @@
+package jahspotify.services;
+
+import junit.framework.TestCase;
+
+public class TestPcmGain extends TestCase
+{
+
+    public void testApply() throws Exception
+    {
+        byte[] buffer = pcm(4, 1000);
+        PcmGain.apply(buffer, 0, buffer.length, PcmGain.UNITY / 2);
+        assertEquals("bad half gain", 500, sample(buffer, 2));
+
+        buffer = pcm(4, -20000);
+        PcmGain.apply(buffer, 0, buffer.length, 2 * PcmGain.UNITY);
+        assertEquals("not clipped", Short.MIN_VALUE, sample(buffer, 1));
+    }
+
+    public void testVolume() throws Exception
+    {
+        assertEquals("bad full volume", PcmGain.UNITY, PcmGain.forVolume(100));
+        assertEquals("bad muted volume", 0, PcmGain.forVolume(0));
+        assertEquals("bad half volume", PcmGain.fromDecibels(-25), PcmGain.forVolume(50));
+        assertTrue("volume not increasing", PcmGain.forVolume(30) < PcmGain.forVolume(31));
+    }
+
+    public void testNormalizesQuietTrack() throws Exception
+    {
+        LoudnessNormalizer normalizer = new LoudnessNormalizer(-18, 12);
+        normalizer.setFormat(1000, 1);
+        // A square wave at about -30dB, for ten seconds in blocks of 50 samples.
+        byte[] buffer = square(50, 1000);
+        for (int i = 0; i < 200; i++)
+        {
+            normalizer.measure(buffer, 0, buffer.length);
+        }
+        assertEquals("measured audio changed", 1000, Math.abs(sample(buffer, 10)));
+        assertEquals("bad loudness", -30.0, normalizer.getLoudness(), 0.5);
+        assertEquals("gain not limited to the boost", 12.0, normalizer.getGain(), 0.01);
+
+        PcmGain.apply(buffer, 0, buffer.length, normalizer.getFixedGain());
+        assertEquals("bad fixed gain", 3981, Math.abs(sample(buffer, 10)), 2);
+
+        normalizer.trackChanged();
+        assertTrue("loudness kept", Double.isNaN(normalizer.getLoudness()));
+        assertEquals("gain reset", 12.0, normalizer.getGain(), 0.01);
+    }
+
+    private static byte[] pcm(int samples, int value)
+    {
+        byte[] bytes = new byte[samples * 2];
+        for (int i = 0; i < samples; i++)
+        {
+            bytes[i * 2] = (byte) value;
+            bytes[i * 2 + 1] = (byte) (value >> 8);
+        }
+        return bytes;
+    }
+
+    private static byte[] square(int samples, int value)
+    {
+        byte[] bytes = pcm(samples, value);
+        for (int i = 1; i < samples; i += 2)
+        {
+            bytes[i * 2] = (byte) -value;
+            bytes[i * 2 + 1] = (byte) (-value >> 8);
+        }
+        return bytes;
+    }
+
+    private static int sample(byte[] bytes, int index)
+    {
+        return (short) ((bytes[index * 2] & 0xFF) | (bytes[index * 2 + 1] << 8));
+    }
+}
@@ -0,0 +1,95 @@
+package jahspotify.util;
+
+import junit.framework.TestCase;
+
+public class TestByteArrayInOutputStream extends TestCase
+{
+
+    public void testWrapAround() throws Exception
+    {
+        ByteArrayInOutputStream stream = new ByteArrayInOutputStream(8);
+        byte[] out = new byte[8];
+
+        stream.write(new byte[] {1, 2, 3, 4, 5, 6});
+        assertEquals("bad read", 6, stream.read(out, 0, 8));
+        stream.write(new byte[] {7, 8, 9, 10, 11}, 1, 4);
+        assertEquals("bad size", 4, stream.size());
+        assertEquals("bad read", 4, stream.read(out, 0, 8));
+        assertEquals("bad data", 8, out[0]);
+        assertEquals("bad data", 11, out[3]);
+        assertEquals("not empty", -1, stream.read());
+    }
+
+    public void testOfferWhenFull() throws Exception
+    {
+        ByteArrayInOutputStream stream = new ByteArrayInOutputStream(4);
+        assertEquals("bad offer", 4, stream.offer(new byte[] {1, 2, 3, 4, 5}, 0, 5));
+        assertEquals("full buffer accepted data", 0, stream.offer(new byte[] {6}, 0, 1));
+        assertEquals("bad read", 1, stream.read());
+    }
+
+    public void testWriteDropsWhenFull() throws Exception
+    {
+        ByteArrayInOutputStream stream = new ByteArrayInOutputStream(4);
+        stream.write(new byte[] {1, 2, 3});
+        stream.write(new byte[] {4, 5, 6});
+        assertEquals("bad size", 4, stream.size());
+        assertEquals("bad dropped bytes", 2, stream.getDroppedBytes());
+        assertEquals("bad read", 1, stream.read());
+    }
+
+    public void testBlockingTransfer() throws Exception
+    {
+        final ByteArrayInOutputStream stream = new ByteArrayInOutputStream(1000, true);
+        final int total = 1000000;
+
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                byte[] chunk = new byte[333];
+                for (int written = 0; written < total; written += chunk.length)
+                {
+                    int length = Math.min(chunk.length, total - written);
+                    for (int i = 0; i < length; i++)
+                    {
+                        chunk[i] = (byte) (written + i);
+                    }
+                    stream.write(chunk, 0, length);
+                }
+            }
+        };
+        writer.start();
+
+        byte[] in = new byte[500];
+        int read = 0;
+        while (read < total)
+        {
+            int count = stream.read(in, 0, Math.min(in.length, total - read), true);
+            assertTrue("read timed out", count > 0);
+            for (int i = 0; i < count; i++)
+            {
+                assertEquals("bad data at " + (read + i), (byte) (read + i), in[i]);
+            }
+            read += count;
+        }
+        writer.join();
+        assertEquals("data left", 0, stream.size());
+    }
+
+    public void testCloseWakesReader() throws Exception
+    {
+        final ByteArrayInOutputStream stream = new ByteArrayInOutputStream(16);
+        stream.write(new byte[] {1, 2});
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                stream.close();
+            }
+        }.start();
+        assertEquals("remaining data not read", 2, stream.read(new byte[8], 0, 8, true));
+    }
+}
@@ -0,0 +1,56 @@
+package jahspotify.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestIdCodec extends TestCase
+{
+
+    public void testMatchesBaseConvert() throws Exception
+    {
+        Random random = new Random(62);
+        for (int i = 0; i < 10000; i++)
+        {
+            long high = i == 0 ? 0 : i == 1 ? -1 : random.nextLong() >>> random.nextInt(64);
+            long low = i == 0 ? 0 : i == 1 ? -1 : random.nextLong();
+            String hex = IdCodec.toHex(high, low);
+            String base62 = IdCodec.toBase62(high, low);
+
+            assertEquals("bad hex", pad(Long.toHexString(high), 16) + pad(Long.toHexString(low), 16), hex);
+            assertEquals("bad base62 for " + hex, pad(BaseConvert.convert(hex, 16, 62), 22), base62);
+            assertEquals("bad hex for " + base62, pad(BaseConvert.convert(base62, 62, 16), 32), IdCodec.base62ToHex(base62));
+            assertEquals("bad base62 for " + hex, base62, IdCodec.hexToBase62(hex.toUpperCase()));
+
+            assertTrue("not valid", IdCodec.isBase62(base62, 0));
+            assertEquals("bad high", high, IdCodec.base62High(base62, 0));
+            assertEquals("bad low", low, IdCodec.base62Low(base62, 0));
+            assertTrue("not valid", IdCodec.isHex(hex, 0));
+            assertEquals("bad high", high, IdCodec.hexHigh(hex, 0));
+            assertEquals("bad low", low, IdCodec.hexLow(hex, 0));
+        }
+    }
+
+    public void testRejectsInvalidIds() throws Exception
+    {
+        assertFalse("too large id accepted", IdCodec.isBase62("7N42dgm5tFLK9N8MT7fHC8", 0));
+        assertFalse("too large id accepted", IdCodec.isBase62("8000000000000000000000", 0));
+        assertFalse("too large id accepted", IdCodec.isBase62("ZZZZZZZZZZZZZZZZZZZZZZ", 0));
+        assertTrue("largest id not accepted", IdCodec.isBase62("7N42dgm5tFLK9N8MT7fHC7", 0));
+        assertTrue("smaller id not accepted", IdCodec.isBase62("7N42dgm5tFLK9N8MT7fHC6", 0));
+        assertTrue("smaller id not accepted", IdCodec.isBase62("7M42dgm5tFLK9N8MT7fHCZ", 0));
+        assertFalse("bad character accepted", IdCodec.isBase62("7N42dgm5tFLK9N8MT7fH-7", 0));
+        assertFalse("bad character accepted", IdCodec.isBase62("0M42dgm5tFLK9N8MT7fH-7", 0));
+        assertFalse("short id accepted", IdCodec.isBase62("7N42dgm5tFLK9N8MT7fHC", 0));
+        assertFalse("bad character accepted", IdCodec.isHex("0123456789abcdef0123456789abcdeg", 0));
+        assertFalse("short id accepted", IdCodec.isHex("0123456789abcdef0123456789abcde", 0));
+    }
+
+    private static String pad(String value, int length)
+    {
+        StringBuilder padded = new StringBuilder(value);
+        while (padded.length() < length)
+            padded.insert(0, '0');
+        return padded.toString();
+    }
+}
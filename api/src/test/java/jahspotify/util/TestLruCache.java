@@ -0,0 +1,53 @@
+package jahspotify.util;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestLruCache extends TestCase
+{
+
+    public void testEvictsLeastRecentlyUsed() throws Exception
+    {
+        LruCache<String, String> cache = new LruCache<String, String>(2, 0, TimeUnit.SECONDS);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("bad value", "1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertNull("recently used entry evicted", cache.get("b"));
+        assertEquals("bad value", "1", cache.get("a"));
+        assertEquals("bad value", "3", cache.get("c"));
+        assertEquals("bad evictions", 1, cache.getEvictions());
+        assertEquals("bad hits", 3, cache.getHits());
+        assertEquals("bad misses", 1, cache.getMisses());
+    }
+
+    public void testExpires() throws Exception
+    {
+        LruCache<String, String> cache = new LruCache<String, String>(2, 20, TimeUnit.MILLISECONDS);
+        cache.put("a", "1");
+        Thread.sleep(40);
+        assertNull("entry did not expire", cache.get("a"));
+        assertEquals("bad expirations", 1, cache.getExpirations());
+        assertEquals("expired entry kept", 0, cache.size());
+    }
+
+    public void testInvalidate() throws Exception
+    {
+        LruCache<String, String> cache = new LruCache<String, String>(10, 0, TimeUnit.SECONDS);
+        cache.put("a:1", "1");
+        cache.put("a:2", "2");
+        cache.put("b:1", "3");
+        assertTrue("entry not removed", cache.invalidate("b:1"));
+        assertEquals("bad removed count", 2, cache.invalidateAll(new LruCache.Matcher<String>()
+        {
+            @Override
+            public boolean matches(String key)
+            {
+                return key.startsWith("a:");
+            }
+        }));
+        assertEquals("cache not empty", 0, cache.size());
+    }
+}
@@ -0,0 +1,201 @@
+package jahspotify.media;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the speed of the Link parser with the regular expressions it replaced. Parsing and
+ * interning are timed apart, create() does both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkBenchmark
+{
+    @Param({
+            "spotify:track:3PogVmhNucYNfyywZvTd7F",
+            "spotify:album:3PogVmhNucYNfyywZvTd7F",
+            "spotify:user:someone:playlist:3PogVmhNucYNfyywZvTd7F",
+            "jahspotify:queue:default" })
+    public String uri;
+
+    private Link parsed;
+
+    @Setup
+    public void setUp()
+    {
+        parsed = Link.parse(uri);
+    }
+
+    @Benchmark
+    public Link parse()
+    {
+        return Link.parse(uri);
+    }
+
+    /**
+     * Interning a link which is already in the pool, as create() does for links which are in use.
+     */
+    @Benchmark
+    public Link intern()
+    {
+        return parsed.intern();
+    }
+
+    @Benchmark
+    public Link create()
+    {
+        return Link.create(uri);
+    }
+
+    @Benchmark
+    public RegexLink regex()
+    {
+        return new RegexLink(uri);
+    }
+
+    /**
+     * The fields the regular expression parser filled, parsed the way its constructor did.
+     */
+    public static final class RegexLink
+    {
+        private static final Pattern mediaPattern = Pattern.compile("spotify:(artist|album|track):([0-9A-Za-z]{22})");
+        private static final Pattern imagePattern = Pattern.compile("spotify:image:([0-9A-Za-z]{40})");
+        private static final Pattern playlistPattern = Pattern.compile("spotify:user:([^:]+):playlist:([0-9A-Za-z]{22})");
+        private static final Pattern searchPattern = Pattern.compile("spotify:search:([^\\s]+)");
+        private static final Pattern jahQueuePattern = Pattern.compile("jahspotify:queue((:)([^\\s]+))");
+        private static final Pattern jahPodcastPattern = Pattern.compile("jahspotify:podcast:([^\\s]+)");
+        private static final Pattern jahMP3Pattern = Pattern.compile("jahspotify:mp3:([^\\s]+)");
+        private static final Pattern localPattern = Pattern.compile("spotify:local:(.*)");
+        private static final Pattern userPattern = Pattern.compile("spotify:user:(.*)");
+
+        public Link.Type type;
+        public String id;
+        public String user;
+        public String query;
+        public String queue;
+        public String uri;
+
+        RegexLink(String uri)
+        {
+            Matcher mediaMatcher = mediaPattern.matcher(uri);
+            Matcher imageMatcher = imagePattern.matcher(uri);
+            Matcher playlistMatcher = playlistPattern.matcher(uri);
+            Matcher searchMatcher = searchPattern.matcher(uri);
+            Matcher jahQueueMatcher = jahQueuePattern.matcher(uri);
+            Matcher jahPodcastMatcher = jahPodcastPattern.matcher(uri);
+            Matcher jahMp3Matcher = jahMP3Pattern.matcher(uri);
+            Matcher localMatcher = localPattern.matcher(uri);
+            Matcher userMatcher = userPattern.matcher(uri);
+
+            if (mediaMatcher.matches())
+            {
+                String type = mediaMatcher.group(1);
+
+                if (type.equals("artist"))
+                {
+                    this.type = Link.Type.ARTIST;
+                }
+                else if (type.equals("album"))
+                {
+                    this.type = Link.Type.ALBUM;
+                }
+                else if (type.equals("track"))
+                {
+                    this.type = Link.Type.TRACK;
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Invalid type: " + type);
+                }
+
+                this.id = uri;
+                this.user = null;
+                this.query = null;
+            }
+            else if (imageMatcher.matches())
+            {
+                this.type = Link.Type.IMAGE;
+                this.id = uri;
+                this.user = null;
+                this.query = null;
+            }
+            else if (playlistMatcher.matches())
+            {
+                this.type = Link.Type.PLAYLIST;
+                this.user = playlistMatcher.group(1);
+                this.id = uri;
+                this.query = null;
+            }
+            else if (searchMatcher.matches())
+            {
+                this.type = Link.Type.SEARCH;
+                this.id = null;
+                this.user = null;
+
+                try
+                {
+                    this.query = URLDecoder.decode(searchMatcher.group(1), "UTF-8");
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    throw new IllegalArgumentException("Invalid encoding of query");
+                }
+            }
+            else if (jahQueueMatcher.matches())
+            {
+                this.type = Link.Type.QUEUE;
+                this.id = uri;
+                this.queue = "default";
+                if (searchMatcher.groupCount() > 0)
+                {
+                    this.queue = jahQueueMatcher.group(3);
+                }
+            }
+            else if (jahPodcastMatcher.matches())
+            {
+                this.type = Link.Type.PODCAST;
+                this.id = uri;
+                this.uri = jahPodcastMatcher.group(1);
+            }
+            else if (jahMp3Matcher.matches())
+            {
+                this.type = Link.Type.MP3;
+                this.id = uri;
+                this.uri = jahMp3Matcher.group(1);
+            }
+            else if (localMatcher.matches())
+            {
+                this.type = Link.Type.LOCAL;
+                this.id = uri;
+            }
+            else if (userMatcher.matches())
+            {
+                this.type = Link.Type.USER;
+                this.id = uri;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Invalid URI: " + uri);
+            }
+        }
+    }
+}
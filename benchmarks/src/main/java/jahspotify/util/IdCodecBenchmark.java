@@ -0,0 +1,53 @@
+package jahspotify.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the speed of IdCodec with BaseConvert, converting random ids from hexadecimal to
+ * base62 and back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdCodecBenchmark
+{
+    private final String[] hex = new String[1024];
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        final Random random = new Random(62);
+        for (int i = 0; i < hex.length; i++)
+        {
+            hex[i] = IdCodec.toHex(random.nextLong(), random.nextLong());
+        }
+    }
+
+    @Benchmark
+    public String codec()
+    {
+        return IdCodec.base62ToHex(IdCodec.hexToBase62(hex[next++ & 1023]));
+    }
+
+    @Benchmark
+    public String baseConvert()
+    {
+        return BaseConvert.convert(BaseConvert.convert(hex[next++ & 1023], 16, 62), 62, 16);
+    }
+}
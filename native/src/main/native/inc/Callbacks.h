@@ -4,7 +4,7 @@
 
 #include <libspotify/api.h>
 
-void startPlaybackSignalled();
+char *retrieveNextTrackToPreload();
 int signalInitialized(int initialized);
 int signalLoggedIn(int loggedIn);
 int signalPlaylistsLoaded();
@@ -28,6 +28,7 @@ int signalSearchComplete(sp_search *search, int32_t token);
 int signalImageLoaded(sp_image *image, jobject imageInstance);
 int signalTrackLoaded(sp_track *track, int32_t token);
 int signalPlaylistLoaded(jobject playlist);
+int signalPlaylistChanged(sp_playlist *playlist);
 int signalAlbumBrowseLoaded(sp_albumbrowse *albumBrowse, jobject token);
 int signalArtistBrowseLoaded(sp_artistbrowse *artistBrowse, jobject token);
 
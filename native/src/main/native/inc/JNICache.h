@@ -0,0 +1,213 @@
+#include <jni.h>
+
+#ifndef JNI_CACHE
+
+#define JNI_CACHE
+
+/**
+ * Global class references and method/field ids, looked up once in JNI_OnLoad so
+ * the callbacks don't have to resolve them by name for every call.
+ */
+typedef struct jni_cache {
+	struct {
+		jclass clazz;
+		jmethodID add;
+		jmethodID ctor;
+	} arrayList;
+
+	struct {
+		jclass clazz;
+		jmethodID create;
+	} link;
+
+	struct {
+		jmethodID setLoaded;
+	} loadable;
+
+	struct {
+		jclass clazz;
+		jmethodID ctor;
+		jfieldID id;
+		jfieldID title;
+		jfieldID length;
+		jfieldID popularity;
+		jfieldID trackNumber;
+		jmethodID setAlbum;
+		jmethodID addArtist;
+	} track;
+
+	struct {
+		jclass clazz;
+		jmethodID ctor;
+		jfieldID id;
+		jfieldID name;
+		jfieldID year;
+		jfieldID type;
+		jfieldID cover;
+		jfieldID artist;
+		jfieldID review;
+		jmethodID addTrack;
+		jmethodID addCopyright;
+	} album;
+
+	struct {
+		jclass clazz;
+		jmethodID fromOrdinal;
+	} albumType;
+
+	struct {
+		jclass clazz;
+		jmethodID ctor;
+		jfieldID id;
+		jfieldID name;
+		jfieldID bios;
+		jmethodID addSimilarArtist;
+		jmethodID addPortrait;
+		jmethodID addAlbum;
+		jmethodID addTopHitTrack;
+	} artist;
+
+	struct {
+		jclass clazz;
+		jmethodID ctor;
+		jmethodID create;
+		jfieldID id;
+		jfieldID name;
+		jfieldID author;
+		jfieldID numTracks;
+		jmethodID addTrack;
+		jmethodID clear;
+	} playlist;
+
+	struct {
+		jclass clazz;
+		jmethodID addPlaylist;
+		jmethodID removePlaylist;
+	} playlistContainer;
+
+	struct {
+		jfieldID bytes;
+	} image;
+
+	struct {
+		jclass clazz;
+		jmethodID ctor;
+		jfieldID query;
+		jfieldID didYouMean;
+		jfieldID tracksFound;
+		jfieldID totalNumTracks;
+		jfieldID trackOffset;
+		jfieldID albumsFound;
+		jfieldID totalNumAlbums;
+		jfieldID albumOffset;
+		jfieldID artistsFound;
+		jfieldID totalNumArtists;
+		jfieldID artistOffset;
+		jfieldID playlistsFound;
+		jfieldID totalNumPlaylists;
+		jfieldID playlistOffset;
+	} searchResult;
+
+	struct {
+		jclass clazz;
+		jmethodID ctor;
+		jfieldID fullName;
+		jfieldID userName;
+		jfieldID displayName;
+		jfieldID country;
+	} user;
+
+	struct {
+		jfieldID threadAttaches;
+		jfieldID threadDetaches;
+		jfieldID persistentAttach;
+		jfieldID pendingLoads;
+		jfieldID maxPendingLoads;
+		jfieldID pendingWaiters;
+		jfieldID loadsCompleted;
+		jfieldID checkLoadedCalls;
+		jfieldID checkLoadedNanos;
+		jfieldID checkLoadedMaxNanos;
+		jfieldID playRequests;
+		jfieldID parkedPlays;
+		jfieldID timeToFirstAudioCount;
+		jfieldID timeToFirstAudioNanos;
+		jfieldID timeToFirstAudioMaxNanos;
+		jfieldID lastTimeToFirstAudioNanos;
+	} statistics;
+
+	struct {
+		jmethodID processCommands;
+	} jahSpotifyImpl;
+
+	struct {
+		jfieldID query;
+		jfieldID suggest;
+		jfieldID trackOffset;
+		jfieldID numTracks;
+		jfieldID albumOffset;
+		jfieldID numAlbums;
+		jfieldID artistOffset;
+		jfieldID numArtists;
+		jfieldID playlistOffset;
+		jfieldID numPlaylists;
+	} searchParameters;
+
+	struct {
+		jclass clazz;
+		jmethodID trace;
+		jmethodID debug;
+		jmethodID info;
+		jmethodID warn;
+		jmethodID error;
+		jmethodID fatal;
+		jmethodID d;
+	} logger;
+
+	struct {
+		jclass clazz;
+		jmethodID trackStarted;
+		jmethodID trackEnded;
+		jmethodID nextTrackToPreload;
+		jmethodID playTokenLost;
+		jmethodID setAudioFormat;
+		jmethodID addToBuffer;
+		jmethodID addToBufferDirect;
+	} playbackListener;
+
+	struct {
+		jclass clazz;
+		jmethodID initialized;
+		jmethodID connected;
+		jmethodID disconnected;
+		jmethodID loggedIn;
+		jmethodID playlistsLoaded;
+		jmethodID loggedOut;
+		jmethodID blobUpdated;
+	} connectionListener;
+
+	struct {
+		jclass clazz;
+		jmethodID track;
+		jmethodID playlist;
+		jmethodID album;
+		jmethodID image;
+		jmethodID artist;
+		jmethodID playlistChanged;
+	} mediaLoadedListener;
+
+	struct {
+		jclass clazz;
+		jmethodID searchCompleted;
+	} searchCompleteListener;
+} jni_cache;
+
+extern jni_cache g_jni;
+
+/**
+ * Fills g_jni, returns 0 when all classes, methods and fields were found.
+ */
+jint initJNICache(JNIEnv *env);
+void releaseJNICache(JNIEnv *env);
+
+#endif
@@ -1,34 +1,43 @@
 #include <jni.h>
 #include <stdio.h>
 
+#include "JNICache.h"
+
 #ifndef JNI_HELPERS
 
 #define JNI_HELPERS
 
 jint createNativeString(JNIEnv *env, jstring str, char **nativeStr);
 
-jint setObjectFloatField(JNIEnv * env, jobject obj, const char *name, jfloat value);
-jint setObjectIntField(JNIEnv * env, jobject obj, const char *name, jint value);
-jint setObjectLongField(JNIEnv * env, jobject obj, const char *name, jlong value);
-jint setObjectStringField(JNIEnv * env, jobject obj, const char *name, const char *value);
-jint setObjectObjectField(JNIEnv * env, jobject obj, const char *name, char *fieldTypeName, jobject value);
-jint setObjectBooleanField(JNIEnv * env, jobject obj, const char *name, jboolean value);
+jint setObjectFloatField(JNIEnv * env, jobject obj, jfieldID field, jfloat value);
+jint setObjectIntField(JNIEnv * env, jobject obj, jfieldID field, jint value);
+jint setObjectLongField(JNIEnv * env, jobject obj, jfieldID field, jlong value);
+jint setObjectStringField(JNIEnv * env, jobject obj, jfieldID field, const char *value);
+jint setObjectObjectField(JNIEnv * env, jobject obj, jfieldID field, jobject value);
+jint setObjectBooleanField(JNIEnv * env, jobject obj, jfieldID field, jboolean value);
 
-jint getObjectLongField(JNIEnv * env, jobject obj, const char *name, jlong *value);
-jstring getObjectStringField(JNIEnv * env, jobject obj, const char *name);
-jint getObjectIntField(JNIEnv * env, jobject obj, const char *name, jint *value);
-jint getObjectBoolField(JNIEnv * env, jobject obj, const char *name, jboolean *value);
+jint getObjectLongField(JNIEnv * env, jobject obj, jfieldID field, jlong *value);
+jstring getObjectStringField(JNIEnv * env, jobject obj, jfieldID field);
+jint getObjectIntField(JNIEnv * env, jobject obj, jfieldID field, jint *value);
+jint getObjectBoolField(JNIEnv * env, jobject obj, jfieldID field, jboolean *value);
 
-jobject createInstance(JNIEnv *env, char *className);
-jobject createInstanceFromJClass(JNIEnv *env, jclass jClass);
+jobject createInstance(JNIEnv *env, jclass jClass, jmethodID constructor);
 
-jint invokeVoidMethod(JNIEnv *env, jobject instance, const char *methodName);
-jint invokeVoidMethod_II(JNIEnv *env, jobject instance, const char *methodName, jint arg1, jint arg2);
-jint invokeVoidMethod_Z(JNIEnv *env, jobject instance, const char *methodName, jboolean arg1);
-jint invokeIntMethod_B(JNIEnv *env, jobject instance, const char *methodName, int *returnValue, jbyteArray arr);
+jint invokeVoidMethod(JNIEnv *env, jobject instance, jmethodID methodId);
+jint invokeVoidMethod_II(JNIEnv *env, jobject instance, jmethodID methodId, jint arg1, jint arg2);
+jint invokeVoidMethod_Z(JNIEnv *env, jobject instance, jmethodID methodId, jboolean arg1);
+jint invokeIntMethod_B(JNIEnv *env, jobject instance, jmethodID methodId, int *returnValue, jbyteArray arr);
+jint invokeIntMethod_III(JNIEnv *env, jobject instance, jmethodID methodId, int *returnValue, jint arg1, jint arg2, jint arg3);
 
 jint checkException(JNIEnv *env);
 int retrieveEnv(JNIEnv* env);
 jint detachThread();
+int beginCallback(JNIEnv* env);
+void endCallback(JNIEnv *env);
+
+void setPersistentAttach(int persistent);
+int isPersistentAttach();
+jlong getAttachCount();
+jlong getDetachCount();
 
 #endif
@@ -2,16 +2,32 @@
 
 #define JAHSPOTIFY
 
+/**
+ * A Java instance waiting for its native object to be loaded. A play request for a track
+ * which isn't loaded yet waits the same way, it has a playUri instead of a Java instance.
+ */
 typedef struct media {
-	struct media* prev;
 	struct media* next;
 	jobject javainstance;
 	sp_track* track;
 	sp_album* album;
 	sp_artist* artist;
 	int browse;
+	char* playUri;
+	int playRequest;
+	jlong playRequestedNanos;
 } media;
 
+/**
+ * A native object with pending loads, keyed by its track, album or artist pointer.
+ */
+typedef struct pending_load {
+	void *key;
+	media *waiters;
+	int slot;
+	struct pending_load *nextInBucket;
+} pending_load;
+
 void addLoading(jobject javainstance, sp_track* track, sp_album* album, sp_artist* artist, int browse);
 void checkLoaded();
 
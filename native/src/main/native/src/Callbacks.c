@@ -8,6 +8,7 @@
 #include "Callbacks.h"
 #include "JahSpotify.h"
 #include "JNIHelpers.h"
+#include "JNICache.h"
 #include "ThreadHelpers.h"
 #include "Logging.h"
 
@@ -23,24 +24,12 @@ extern jobject g_playbackListener;
 extern jobject g_searchCompleteListener;
 extern jobject g_mediaLoadedListener;
 
-extern jclass g_playbackListenerClass;
-extern jclass g_connectionListenerClass;
-extern jclass g_searchCompleteListenerClass;
-extern jclass g_nativeSearchResultClass;
-extern jclass g_mediaLoadedListenerClass;
 
 jint addObjectToCollection(JNIEnv *env, jobject collection, jobject object) {
-	jclass clazz;
-	jmethodID methodID;
-
-	clazz = (*env)->GetObjectClass(env, collection);
-	if (clazz == NULL) return 1;
-
-	methodID = (*env)->GetMethodID(env, clazz, "add", "(Ljava/lang/Object;)Z");
-	if (methodID == NULL) return 1;
+	if (collection == NULL) return 1;
 
 	// Invoke the method
-	(*env)->CallBooleanMethod(env, collection, methodID, object);
+	(*env)->CallBooleanMethod(env, collection, g_jni.arrayList.add, object);
 	if (checkException(env) != 0) {
 		log_error("callbacks", "addObjectToCollection", "Exception while adding object to collection");
 	}
@@ -48,64 +37,45 @@ jint addObjectToCollection(JNIEnv *env, jobject collection, jobject object) {
 	return 0;
 }
 
-void startPlaybackSignalled() {
-//	JNIEnv* env = NULL;
-//	int result;
-//	jclass aClass;
-//	jmethodID method;
-//	jstring nextUriStr;
-//	char *nextUri;
-//
-//     log_debug("callbacks","startPlaybackSignalled","About to start pre-loading track");
-//     
-//         
-//     if (!retrieveEnv((JNIEnv*)&env))
-//     {
-//         goto fail;
-//     }
-//     
-//     method = (*env)->GetMethodID(env, g_playbackListenerClass, "nextTrackToPreload", "()Ljava/lang/String;");
-//     
-//     if (method == NULL)
-//     {
-//         log_error("callbacks","startPlaybackSignalled","Could not load callback method string nextTrackToPreload() on class PlaybackListener");
-//         goto fail;
-//     }
-//     
-//     nextUriStr = (*env)->CallObjectMethod(env, g_playbackListener, method);
-//     checkException(env);
-//     
-//     if (nextUriStr)
-//     {
-//         nextUri = ( uint8_t * ) ( *env )->GetStringUTFChars ( env, nextUriStr, NULL );
-//         
-//         sp_link *link = sp_link_create_from_string(nextUri);
-//         
-//         if (link)
-//         {
-//             sp_track *track = sp_link_as_track(link);
-//             sp_link_release(link);
-//             sp_error error = sp_session_player_prefetch(g_sess,track);
-//             sp_track_release(track);
-//             if (error != SP_ERROR_OK)
-//             {
-//                 log_error("callbacks","startPlaybackSignalled","Error prefetch: %s",sp_error_message(error));
-//                 goto fail;
-//             }
-//         }
-//     }
-//     
-//     goto exit;
-//     
-//     fail:
-//     log_error("callbacks","startPlaybackSignalled","Error during callback");
-//     
-//     exit:
-//     
-//     if (nextUri) 
-//     {
-//         (*env)->ReleaseStringUTFChars(env, nextUriStr,nextUri);
-//     }
+/**
+ * Asks the playback listener which track should be played after the current one.
+ *
+ * @return The uri of the track, to be freed by the caller, or NULL if there is none.
+ */
+char *retrieveNextTrackToPreload() {
+	JNIEnv* env = NULL;
+	jstring nextUriStr;
+	char *nextUri = NULL;
+
+	if (!g_playbackListener) return NULL;
+
+	if (!retrieveEnv((JNIEnv*) &env)) {
+		goto fail;
+	}
+
+	if (g_jni.playbackListener.nextTrackToPreload == NULL) {
+		log_error("callbacks", "retrieveNextTrackToPreload", "Could not load callback method string nextTrackToPreload() on class PlaybackListener");
+		goto fail;
+	}
+
+	nextUriStr = (*env)->CallObjectMethod(env, g_playbackListener, g_jni.playbackListener.nextTrackToPreload);
+	if (checkException(env) != 0) {
+		log_error("callbacks", "retrieveNextTrackToPreload", "Exception while calling callback");
+		goto fail;
+	}
+
+	if (nextUriStr) {
+		const char *uri = (*env)->GetStringUTFChars(env, nextUriStr, NULL );
+		if (uri) {
+			nextUri = strdup(uri);
+			(*env)->ReleaseStringUTFChars(env, nextUriStr, uri);
+		}
+		(*env)->DeleteLocalRef(env, nextUriStr);
+	}
+	return nextUri;
+
+	fail: log_error("callbacks", "retrieveNextTrackToPreload", "Error during callback");
+	return NULL;
 }
 
 int signalConnected() {
@@ -117,11 +87,11 @@ int signalConnected() {
 		return 1;
 	}
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_connectionListenerClass, "connected", "()V");
+	method = g_jni.connectionListener.connected;
 
 	if (method == NULL) {
 		log_error("callbacks", "signalConnected", "Could not load callback method connected() on class ConnectionListener");
@@ -135,7 +105,7 @@ int signalConnected() {
 
 	fail: log_error("callbacks", "signalConnected", "Error during callback");
 
-	exit: detachThread();
+	exit: endCallback(env);
 
 	return 0;
 }
@@ -149,11 +119,11 @@ int signalInitialized(int initialized) {
 		return 1;
 	}
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_connectionListenerClass, "initialized", "(Z)V");
+	method = g_jni.connectionListener.initialized;
 
 	if (method == NULL) {
 		log_error("callbacks", "signalInitialized", "Could not load callback method initialized() on class ConnectionListener");
@@ -167,7 +137,7 @@ int signalInitialized(int initialized) {
 
 	fail: log_error("callbacks", "signalInitialized", "Error during callback");
 
-	exit: detachThread();
+	exit: endCallback(env);
 
 	return 0;
 }
@@ -181,11 +151,11 @@ int signalDisconnected() {
 		return 1;
 	}
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_connectionListenerClass, "disconnected", "()V");
+	method = g_jni.connectionListener.disconnected;
 
 	if (method == NULL) {
 		log_error("callbacks", "signalDisconnected", "Could not load callback method connected() on class ConnectionListener");
@@ -199,20 +169,20 @@ int signalDisconnected() {
 
 	fail: log_error("callbacks", "signalDisconnected", "Error during callback");
 
-	exit: detachThread();
+	exit: endCallback(env);
 
 	return 0;
 }
 
 int signalLoggedOut() {
 	JNIEnv* env = NULL;
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		log_info("callbacks", "signalLoggedOut", "Error during callback");
 	} else {
-		invokeVoidMethod(env, g_connectionListener, "loggedOut");
+		invokeVoidMethod(env, g_connectionListener, g_jni.connectionListener.loggedOut);
 		log_info("callbacks", "signalLoggedOut", "Logout signalled");
 	}
-	detachThread();
+	endCallback(env);
 	return 0;
 }
 
@@ -225,11 +195,11 @@ int signalLoggedIn(int loggedIn) {
 		return 1;
 	}
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_connectionListenerClass, "loggedIn", "(Z)V");
+	method = g_jni.connectionListener.loggedIn;
 
 	if (method == NULL) {
 		log_error("callbacks", "signalLoggedIn", "Could not load callback method loggedIn() on class ConnectionListener");
@@ -246,7 +216,7 @@ int signalLoggedIn(int loggedIn) {
 
 	fail: log_error("callbacks", "signalLoggedIn", "Error during callback");
 
-	exit: detachThread();
+	exit: endCallback(env);
 	return 0;
 }
 
@@ -257,7 +227,7 @@ int signalPlaylistsLoaded() {
 		detachThread();
 		return -1;
 	}
-	invokeVoidMethod(env, g_connectionListener, "playlistsLoaded");
+	invokeVoidMethod(env, g_connectionListener, g_jni.connectionListener.playlistsLoaded);
 	return 0;
 }
 
@@ -271,11 +241,11 @@ void signalBlobUpdated(const char* blob) {
 		return;
 	}
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_connectionListenerClass, "blobUpdated", "(Ljava/lang/String;)V");
+	method = g_jni.connectionListener.blobUpdated;
 	if (method == NULL) {
 		log_error("callbacks", "signalBlobUpdated", "Could not load callback method blobUpdated() on class ConnectionListener");
 		goto fail;
@@ -297,7 +267,7 @@ void signalBlobUpdated(const char* blob) {
 
 	if (blobStr) (*env)->DeleteLocalRef(env, blobStr);
 
-	detachThread();
+	endCallback(env);
 }
 
 int signalTrackEnded(char *uri, bool forcedTrackEnd) {
@@ -310,7 +280,7 @@ int signalTrackEnded(char *uri, bool forcedTrackEnd) {
 	jmethodID method;
 	jstring uriStr;
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
@@ -322,7 +292,7 @@ int signalTrackEnded(char *uri, bool forcedTrackEnd) {
 		}
 	}
 
-	method = (*env)->GetMethodID(env, g_playbackListenerClass, "trackEnded", "(Ljava/lang/String;Z)V");
+	method = g_jni.playbackListener.trackEnded;
 
 	if (method == NULL) {
 		log_error("callbacks", "signalTrackEnded", "Could not load callback method trackEnded(string) on class jahnotify.PlaybackListener");
@@ -341,7 +311,7 @@ int signalTrackEnded(char *uri, bool forcedTrackEnd) {
 
 	exit: if (uriStr) (*env)->DeleteLocalRef(env, uriStr);
 
-	detachThread();
+	endCallback(env);
 	return 0;
 }
 
@@ -356,7 +326,7 @@ int signalTrackStarted(const char *uri) {
 		return 1;
 	}
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
@@ -368,7 +338,7 @@ int signalTrackStarted(const char *uri) {
 		}
 	}
 
-	method = (*env)->GetMethodID(env, g_playbackListenerClass, "trackStarted", "(Ljava/lang/String;)V");
+	method = g_jni.playbackListener.trackStarted;
 
 	if (method == NULL) {
 		log_error("callbacks", "signalTrackStarted", "Could not load callback method trackStarted(string) on class jahnotify.PlaybackListener");
@@ -384,7 +354,7 @@ int signalTrackStarted(const char *uri) {
 
 	exit: if (uriStr) (*env)->DeleteLocalRef(env, uriStr);
 
-	detachThread();
+	endCallback(env);
 	return 0;
 }
 
@@ -397,11 +367,11 @@ void signalPlayTokenLost() {
 		return;
 	}
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_playbackListenerClass, "playTokenLost", "()V");
+	method = g_jni.playbackListener.playTokenLost;
 	if (method == NULL) {
 		log_error("callbacks", "signalPlayTokenLost", "Could not load callback method trackStarted() on class jahnotify.PlaybackListener");
 		goto fail;
@@ -413,7 +383,7 @@ void signalPlayTokenLost() {
 
 	fail: log_error("callbacks", "signalPlayTokenLost", "Error during callback");
 
-	exit: detachThread();
+	exit: endCallback(env);
 }
 
 int signalArtistBrowseLoaded(sp_artistbrowse *artistBrowse, jobject artistInstance) {
@@ -421,17 +391,10 @@ int signalArtistBrowseLoaded(sp_artistbrowse *artistBrowse, jobject artistInstan
 	jmethodID aMethod;
 
 	sp_link *artistLink = NULL;
-	jclass jClass;
 
 	log_debug("jahspotify", "signalArtistBrowseLoaded", "Artist browse loaded");
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
-		goto fail;
-	}
-
-	jClass = (*env)->FindClass(env, "jahspotify/media/Artist");
-	if (jClass == NULL) {
-		log_error("jahspotify", "createJArtistInstance", "Could not load jahnotify.media.Artist");
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
@@ -440,7 +403,7 @@ int signalArtistBrowseLoaded(sp_artistbrowse *artistBrowse, jobject artistInstan
 		goto fail;
 	}
 
-	aMethod = (*env)->GetMethodID(env, g_mediaLoadedListenerClass, "artist", "(ILjahspotify/media/Artist;)V");
+	aMethod = g_jni.mediaLoadedListener.artist;
 
 	if (aMethod == NULL) {
 		log_error("callbacks", "signalArtistBrowseLoaded", "Could not load callback method artist(int,artist) on class NativeMediaLoadedListener");
@@ -461,11 +424,11 @@ int signalArtistBrowseLoaded(sp_artistbrowse *artistBrowse, jobject artistInstan
 
 	jobject artistJLink = createJLinkInstance(env, artistLink);
 
-	setObjectObjectField(env, artistInstance, "id", "Ljahspotify/media/Link;", artistJLink);
+	setObjectObjectField(env, artistInstance, g_jni.artist.id, artistJLink);
 
 	sp_link_release(artistLink);
 
-	setObjectStringField(env, artistInstance, "name", sp_artist_name(artist));
+	setObjectStringField(env, artistInstance, g_jni.artist.name, sp_artist_name(artist));
 
 	sp_artist_release(artist);
 
@@ -473,7 +436,7 @@ int signalArtistBrowseLoaded(sp_artistbrowse *artistBrowse, jobject artistInstan
 	// Pass it up in the callback
 	populateJArtistInstanceFromArtistBrowse(env, artistBrowse, artistInstance);
 
-	invokeVoidMethod_Z(env, artistInstance, "setLoaded", JNI_TRUE);
+	invokeVoidMethod_Z(env, artistInstance, g_jni.loadable.setLoaded, JNI_TRUE);
 	(*env)->CallVoidMethod(env, g_mediaLoadedListener, aMethod, 0, artistInstance);
 	if (checkException(env) != 0) {
 		log_error("callbacks", "signalArtistBrowseLoaded", "Exception while calling callback");
@@ -488,7 +451,7 @@ int signalArtistBrowseLoaded(sp_artistbrowse *artistBrowse, jobject artistInstan
 	if (artistBrowse) {
 		sp_artistbrowse_release(artistBrowse);
 	}
-	detachThread();
+	endCallback(env);
 	return 0;
 }
 
@@ -503,11 +466,11 @@ int signalImageLoaded(sp_image *image, jobject imageInstance) {
 
 	log_debug("callbacks", "signalImageLoaded", "Image loaded: token: %d\n", 0);
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_mediaLoadedListenerClass, "image", "(ILjahspotify/media/Link;Ljahspotify/media/ImageSize;[B)V");
+	method = g_jni.mediaLoadedListener.image;
 
 	if (method == NULL) {
 		log_error("callbacks", "signalImageLoaded", "Could not load callback method image(Link) on class NativeMediaLoadedListener");
@@ -522,16 +485,11 @@ int signalImageLoaded(sp_image *image, jobject imageInstance) {
 	size_t size;
 	const void* pData = sp_image_data(image, &size);
 	jbyteArray byteArray = (*env)->NewByteArray(env, size);
-	jboolean isCopy = 0;
-	jbyte* pByteData = (*env)->GetByteArrayElements(env, byteArray, &isCopy);
-	size_t i;
-	for (i = 0; i < size; i++)
-		pByteData[i] = ((byte*) pData)[i];
-	(*env)->ReleaseByteArrayElements(env, byteArray, pByteData, 0);
-	setObjectObjectField(env, imageInstance, "bytes", "[B", byteArray);
+	(*env)->SetByteArrayRegion(env, byteArray, 0, size, (const jbyte*) pData);
+	setObjectObjectField(env, imageInstance, g_jni.image.bytes, byteArray);
 	(*env)->DeleteLocalRef(env, byteArray);
 
-	invokeVoidMethod_Z(env, imageInstance, "setLoaded", JNI_TRUE);
+	invokeVoidMethod_Z(env, imageInstance, g_jni.loadable.setLoaded, JNI_TRUE);
 	(*env)->CallVoidMethod(env, g_mediaLoadedListener, method, 0, jLink, NULL, NULL);
 
 	if (checkException(env) != 0) {
@@ -549,7 +507,7 @@ int signalImageLoaded(sp_image *image, jobject imageInstance) {
 
 	(*env)->DeleteGlobalRef(env, imageInstance);
 	sp_image_release(image);
-	detachThread();
+	endCallback(env);
 
 	return 0;
 }
@@ -565,11 +523,11 @@ int signalPlaylistLoaded(jobject playlist) {
 
 	log_debug("jahspotify", "signalPlaylistLoaded", "Playlist loaded");
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	method = (*env)->GetMethodID(env, g_mediaLoadedListenerClass, "playlist", "(Ljahspotify/media/Playlist;)V");
+	method = g_jni.mediaLoadedListener.playlist;
 	if (method == NULL) {
 		log_error("callbacks", "signalPlaylistLoaded", "Could not load callback method playlist(Link) on class NativeMediaLoadedListener");
 		goto fail;
@@ -582,7 +540,48 @@ int signalPlaylistLoaded(jobject playlist) {
 
 	fail:
 
-	exit: detachThread();
+	exit: endCallback(env);
+	return 0;
+}
+
+int signalPlaylistChanged(sp_playlist *playlist) {
+	if (!g_mediaLoadedListener) {
+		log_error("jahspotify", "signalPlaylistChanged", "No playlist media loaded listener registered");
+		return 1;
+	}
+
+	JNIEnv* env = NULL;
+	jmethodID method;
+	sp_link *link = NULL;
+
+	if (!beginCallback((JNIEnv*) &env)) {
+		goto fail;
+	}
+
+	method = g_jni.mediaLoadedListener.playlistChanged;
+	if (method == NULL) {
+		log_error("callbacks", "signalPlaylistChanged", "Could not load callback method playlistChanged(Link) on class NativeMediaLoadedListener");
+		goto fail;
+	}
+
+	link = sp_link_create_from_playlist(playlist);
+	if (!link) goto fail;
+
+	jobject jLink = createJLinkInstance(env, link);
+	(*env)->CallVoidMethod(env, g_mediaLoadedListener, method, jLink);
+
+	if (checkException(env) != 0) {
+		log_error("callbacks", "signalPlaylistChanged", "Exception while calling listener");
+	}
+	(*env)->DeleteLocalRef(env, jLink);
+
+	goto exit;
+
+	fail:
+
+	exit:
+	if (link) sp_link_release(link);
+	endCallback(env);
 	return 0;
 }
 
@@ -592,7 +591,6 @@ int signalAlbumBrowseLoaded(sp_albumbrowse *albumBrowse, jobject albumInstance)
 
 	sp_album *album = NULL;
 	sp_link *albumLink = NULL;
-	jclass jClass;
 
 	if (!g_mediaLoadedListener) {
 		log_error("jahspotify", "signalAlbumBrowseLoaded", "No album media loaded listener registered");
@@ -601,17 +599,11 @@ int signalAlbumBrowseLoaded(sp_albumbrowse *albumBrowse, jobject albumInstance)
 
 	log_debug("jahspotify", "signalAlbumBrowseLoaded", "Albumbrowse loaded");
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
-		goto fail;
-	}
-
-	jClass = (*env)->FindClass(env, "jahspotify/media/Album");
-	if (jClass == NULL) {
-		log_error("jahspotify", "signalAlbumBrowseLoaded", "Could not load jahnotify.media.Album");
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	aMethod = (*env)->GetMethodID(env, g_mediaLoadedListenerClass, "album", "(ILjahspotify/media/Album;)V");
+	aMethod = g_jni.mediaLoadedListener.album;
 
 	if (aMethod == NULL) {
 		log_error("callbacks", "signalAlbumBrowseLoaded", "Could not load callback method album(int,album) on class NativeMediaLoadedListener");
@@ -632,16 +624,16 @@ int signalAlbumBrowseLoaded(sp_albumbrowse *albumBrowse, jobject albumInstance)
 
 	jobject albumJLink = createJLinkInstance(env, albumLink);
 
-	setObjectObjectField(env, albumInstance, "id", "Ljahspotify/media/Link;", albumJLink);
+	setObjectObjectField(env, albumInstance, g_jni.album.id, albumJLink);
 
-	setObjectStringField(env, albumInstance, "name", sp_album_name(album));
+	setObjectStringField(env, albumInstance, g_jni.album.name, sp_album_name(album));
 
 	// Convert the instance to an artist
 	// Pass it up in the callback
 	populateJAlbumInstanceFromAlbumBrowse(env, album, albumBrowse, albumInstance);
 
 	(*env)->CallVoidMethod(env, g_mediaLoadedListener, aMethod, 0, albumInstance);
-	invokeVoidMethod_Z(env, albumInstance, "setLoaded", JNI_TRUE);
+	invokeVoidMethod_Z(env, albumInstance, g_jni.loadable.setLoaded, JNI_TRUE);
 
 	if (checkException(env) != 0) {
 		log_error("callbacks", "signalAlbumBrowseLoaded", "Exception while calling callback");
@@ -663,7 +655,7 @@ int signalAlbumBrowseLoaded(sp_albumbrowse *albumBrowse, jobject albumInstance)
 	if (albumBrowse) {
 		sp_albumbrowse_release(albumBrowse);
 	}
-	detachThread();
+	endCallback(env);
 	return 0;
 }
 
@@ -685,7 +677,7 @@ int signalAlbumBrowseLoaded(sp_albumbrowse *albumBrowse, jobject albumInstance)
 //       goto fail;
 //   }
 //   
-//   method = (*env)->GetMethodID(env, g_mediaLoadedListenerClass, "track", "(ILjahspotify/media/Link;)V");
+//   method = g_jni.mediaLoadedListener.track;
 //   
 //   if (method == NULL)
 //   {
@@ -719,7 +711,7 @@ int signalAlbumBrowseLoaded(sp_albumbrowse *albumBrowse, jobject albumInstance)
 // }
 
 jobject createSearchResult(JNIEnv* env) {
-	return createInstanceFromJClass(env, g_nativeSearchResultClass);
+	return createInstance(env, g_jni.searchResult.clazz, g_jni.searchResult.ctor);
 }
 
 void signalToplistComplete(sp_toplistbrowse *result, jobject nativeSearchResult) {
@@ -735,12 +727,12 @@ void signalToplistComplete(sp_toplistbrowse *result, jobject nativeSearchResult)
 
 	log_debug("jahspotify", "signalToplistComplete", "Search complete: token: %d");
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	trackLinkCollection = createInstance(env, "java/util/ArrayList");
-	setObjectObjectField(env, nativeSearchResult, "tracksFound", "Ljava/util/List;", trackLinkCollection);
+	trackLinkCollection = createInstance(env, g_jni.arrayList.clazz, g_jni.arrayList.ctor);
+	setObjectObjectField(env, nativeSearchResult, g_jni.searchResult.tracksFound, trackLinkCollection);
 
 	numResultsFound = sp_toplistbrowse_num_tracks(result);
 	for (index = 0; index < numResultsFound; index++) {
@@ -764,8 +756,8 @@ void signalToplistComplete(sp_toplistbrowse *result, jobject nativeSearchResult)
 	}
 	if (trackLinkCollection) (*env)->DeleteLocalRef(env, trackLinkCollection);
 
-	albumLinkCollection = createInstance(env, "java/util/ArrayList");
-	setObjectObjectField(env, nativeSearchResult, "albumsFound", "Ljava/util/List;", albumLinkCollection);
+	albumLinkCollection = createInstance(env, g_jni.arrayList.clazz, g_jni.arrayList.ctor);
+	setObjectObjectField(env, nativeSearchResult, g_jni.searchResult.albumsFound, albumLinkCollection);
 
 	numResultsFound = sp_toplistbrowse_num_albums(result);
 	for (index = 0; index < numResultsFound; index++) {
@@ -789,8 +781,8 @@ void signalToplistComplete(sp_toplistbrowse *result, jobject nativeSearchResult)
 	}
 	if (albumLinkCollection) (*env)->DeleteLocalRef(env, albumLinkCollection);
 
-	artistLinkCollection = createInstance(env, "java/util/ArrayList");
-	setObjectObjectField(env, nativeSearchResult, "artistsFound", "Ljava/util/List;", artistLinkCollection);
+	artistLinkCollection = createInstance(env, g_jni.arrayList.clazz, g_jni.arrayList.ctor);
+	setObjectObjectField(env, nativeSearchResult, g_jni.searchResult.artistsFound, artistLinkCollection);
 
 	numResultsFound = sp_toplistbrowse_num_artists(result);
 	for (index = 0; index < numResultsFound; index++) {
@@ -814,7 +806,7 @@ void signalToplistComplete(sp_toplistbrowse *result, jobject nativeSearchResult)
 	}
 	if (artistLinkCollection) (*env)->DeleteLocalRef(env, artistLinkCollection);
 
-	invokeVoidMethod_Z(env, nativeSearchResult, "setLoaded", JNI_TRUE);
+	invokeVoidMethod_Z(env, nativeSearchResult, g_jni.loadable.setLoaded, JNI_TRUE);
 
 	goto exit;
 
@@ -822,7 +814,7 @@ void signalToplistComplete(sp_toplistbrowse *result, jobject nativeSearchResult)
 
 	exit: sp_toplistbrowse_release(result);
 	(*env)->DeleteGlobalRef(env, nativeSearchResult);
-	detachThread();
+	endCallback(env);
 }
 
 int signalSearchComplete(sp_search *search, int32_t token) {
@@ -845,15 +837,15 @@ int signalSearchComplete(sp_search *search, int32_t token) {
 
 	log_debug("jahspotify", "signalSearchComplete", "Search complete: token: %d", token);
 
-	if (!retrieveEnv((JNIEnv*) &env)) {
+	if (!beginCallback((JNIEnv*) &env)) {
 		goto fail;
 	}
 
 	// Create the Native Search Result instance
-	nativeSearchResult = createInstanceFromJClass(env, g_nativeSearchResultClass);
+	nativeSearchResult = createInstance(env, g_jni.searchResult.clazz, g_jni.searchResult.ctor);
 
-	trackLinkCollection = createInstance(env, "java/util/ArrayList");
-	setObjectObjectField(env, nativeSearchResult, "tracksFound", "Ljava/util/List;", trackLinkCollection);
+	trackLinkCollection = createInstance(env, g_jni.arrayList.clazz, g_jni.arrayList.ctor);
+	setObjectObjectField(env, nativeSearchResult, g_jni.searchResult.tracksFound, trackLinkCollection);
 
 	numResultsFound = sp_search_num_tracks(search);
 	for (index = 0; index < numResultsFound; index++) {
@@ -879,8 +871,8 @@ int signalSearchComplete(sp_search *search, int32_t token) {
 	}
 	if (trackLinkCollection) (*env)->DeleteLocalRef(env, trackLinkCollection);
 
-	albumLinkCollection = createInstance(env, "java/util/ArrayList");
-	setObjectObjectField(env, nativeSearchResult, "albumsFound", "Ljava/util/List;", albumLinkCollection);
+	albumLinkCollection = createInstance(env, g_jni.arrayList.clazz, g_jni.arrayList.ctor);
+	setObjectObjectField(env, nativeSearchResult, g_jni.searchResult.albumsFound, albumLinkCollection);
 
 	numResultsFound = sp_search_num_albums(search);
 	for (index = 0; index < numResultsFound; index++) {
@@ -906,8 +898,8 @@ int signalSearchComplete(sp_search *search, int32_t token) {
 	}
 	if (albumLinkCollection) (*env)->DeleteLocalRef(env, albumLinkCollection);
 
-	artistLinkCollection = createInstance(env, "java/util/ArrayList");
-	setObjectObjectField(env, nativeSearchResult, "artistsFound", "Ljava/util/List;", artistLinkCollection);
+	artistLinkCollection = createInstance(env, g_jni.arrayList.clazz, g_jni.arrayList.ctor);
+	setObjectObjectField(env, nativeSearchResult, g_jni.searchResult.artistsFound, artistLinkCollection);
 
 	numResultsFound = sp_search_num_artists(search);
 	for (index = 0; index < numResultsFound; index++) {
@@ -933,8 +925,8 @@ int signalSearchComplete(sp_search *search, int32_t token) {
 	}
 	if (artistLinkCollection) (*env)->DeleteLocalRef(env, artistLinkCollection);
 
-	playlistLinkCollection = createInstance(env, "java/util/ArrayList");
-	setObjectObjectField(env, nativeSearchResult, "playlistsFound", "Ljava/util/List;", playlistLinkCollection);
+	playlistLinkCollection = createInstance(env, g_jni.arrayList.clazz, g_jni.arrayList.ctor);
+	setObjectObjectField(env, nativeSearchResult, g_jni.searchResult.playlistsFound, playlistLinkCollection);
 
 	numResultsFound = sp_search_num_playlists(search);
 	for (index = 0; index < numResultsFound; index++) {
@@ -949,22 +941,22 @@ int signalSearchComplete(sp_search *search, int32_t token) {
 	}
 	if (playlistLinkCollection) (*env)->DeleteLocalRef(env, playlistLinkCollection);
 
-	setObjectIntField(env, nativeSearchResult, "totalNumTracks", sp_search_total_tracks(search));
-	setObjectIntField(env, nativeSearchResult, "trackOffset", sp_search_num_tracks(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.totalNumTracks, sp_search_total_tracks(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.trackOffset, sp_search_num_tracks(search));
 
-	setObjectIntField(env, nativeSearchResult, "totalNumAlbums", sp_search_total_albums(search));
-	setObjectIntField(env, nativeSearchResult, "albumOffset", sp_search_num_albums(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.totalNumAlbums, sp_search_total_albums(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.albumOffset, sp_search_num_albums(search));
 
-	setObjectIntField(env, nativeSearchResult, "totalNumArtists", sp_search_total_artists(search));
-	setObjectIntField(env, nativeSearchResult, "artistOffset", sp_search_num_artists(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.totalNumArtists, sp_search_total_artists(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.artistOffset, sp_search_num_artists(search));
 
-	setObjectIntField(env, nativeSearchResult, "totalNumPlaylists", sp_search_total_playlists(search));
-	setObjectIntField(env, nativeSearchResult, "playlistOffset", sp_search_num_playlists(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.totalNumPlaylists, sp_search_total_playlists(search));
+	setObjectIntField(env, nativeSearchResult, g_jni.searchResult.playlistOffset, sp_search_num_playlists(search));
 
-	setObjectStringField(env, nativeSearchResult, "query", sp_search_query(search));
-	setObjectStringField(env, nativeSearchResult, "didYouMean", sp_search_did_you_mean(search));
+	setObjectStringField(env, nativeSearchResult, g_jni.searchResult.query, sp_search_query(search));
+	setObjectStringField(env, nativeSearchResult, g_jni.searchResult.didYouMean, sp_search_did_you_mean(search));
 
-	method = (*env)->GetMethodID(env, g_searchCompleteListenerClass, "searchCompleted", "(ILjahspotify/SearchResult;)V");
+	method = g_jni.searchCompleteListener.searchCompleted;
 
 	if (method == NULL) {
 		log_error("jahspotify", "signalSearchComplete", "Could not load callback method searchCompleted() on class SearchListener");
@@ -982,6 +974,6 @@ int signalSearchComplete(sp_search *search, int32_t token) {
 	fail:
 
 	exit: sp_search_release(search);
-	detachThread();
+	endCallback(env);
 	return 0;
 }
@@ -0,0 +1,230 @@
+#include <string.h>
+
+#include "JNICache.h"
+#include "Logging.h"
+
+jni_cache g_jni;
+
+#define LINK_SIG "Ljahspotify/media/Link;"
+#define STRING_SIG "Ljava/lang/String;"
+#define LIST_SIG "Ljava/util/List;"
+
+static int missing = 0;
+
+static void lookupFailed(JNIEnv *env, const char *kind, const char *name, const char *sig) {
+	// Clear the NoClassDefFoundError / NoSuchMethodError so the remaining lookups can continue.
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) (*env)->ExceptionClear(env);
+	fprintf(stderr, "jahspotify::initJNICache: could not find %s %s %s\n", kind, name, sig);
+	missing++;
+}
+
+static jclass findClass(JNIEnv *env, const char *name) {
+	jclass localRef = (*env)->FindClass(env, name);
+	if (localRef == NULL ) {
+		lookupFailed(env, "class", name, "");
+		return NULL ;
+	}
+
+	jclass globalRef = (*env)->NewGlobalRef(env, localRef);
+	(*env)->DeleteLocalRef(env, localRef);
+	return globalRef;
+}
+
+static jmethodID method(JNIEnv *env, jclass clazz, const char *name, const char *sig) {
+	jmethodID id = clazz ? (*env)->GetMethodID(env, clazz, name, sig) : NULL;
+	if (id == NULL ) lookupFailed(env, "method", name, sig);
+	return id;
+}
+
+static jmethodID staticMethod(JNIEnv *env, jclass clazz, const char *name, const char *sig) {
+	jmethodID id = clazz ? (*env)->GetStaticMethodID(env, clazz, name, sig) : NULL;
+	if (id == NULL ) lookupFailed(env, "static method", name, sig);
+	return id;
+}
+
+static jfieldID field(JNIEnv *env, jclass clazz, const char *name, const char *sig) {
+	jfieldID id = clazz ? (*env)->GetFieldID(env, clazz, name, sig) : NULL;
+	if (id == NULL ) lookupFailed(env, "field", name, sig);
+	return id;
+}
+
+jint initJNICache(JNIEnv *env) {
+	jclass clazz;
+	memset(&g_jni, 0, sizeof(g_jni));
+	missing = 0;
+
+	g_jni.logger.clazz = clazz = findClass(env, "jahspotify/impl/NativeLogger");
+	g_jni.logger.trace = staticMethod(env, clazz, "trace", "(" STRING_SIG STRING_SIG STRING_SIG ")V");
+	g_jni.logger.debug = staticMethod(env, clazz, "debug", "(" STRING_SIG STRING_SIG STRING_SIG ")V");
+	g_jni.logger.info = staticMethod(env, clazz, "info", "(" STRING_SIG STRING_SIG STRING_SIG ")V");
+	g_jni.logger.warn = staticMethod(env, clazz, "warn", "(" STRING_SIG STRING_SIG STRING_SIG ")V");
+	g_jni.logger.error = staticMethod(env, clazz, "error", "(" STRING_SIG STRING_SIG STRING_SIG ")V");
+	g_jni.logger.fatal = staticMethod(env, clazz, "fatal", "(" STRING_SIG STRING_SIG STRING_SIG ")V");
+	g_jni.logger.d = staticMethod(env, clazz, "d", "(Ljava/lang/Object;)V");
+
+	g_jni.arrayList.clazz = clazz = findClass(env, "java/util/ArrayList");
+	g_jni.arrayList.ctor = method(env, clazz, "<init>", "()V");
+	g_jni.arrayList.add = method(env, clazz, "add", "(Ljava/lang/Object;)Z");
+
+	g_jni.link.clazz = clazz = findClass(env, "jahspotify/media/Link");
+	g_jni.link.create = staticMethod(env, clazz, "create", "(" STRING_SIG ")" LINK_SIG);
+
+	clazz = findClass(env, "jahspotify/media/AbstractLoadable");
+	g_jni.loadable.setLoaded = method(env, clazz, "setLoaded", "(Z)V");
+	if (clazz) (*env)->DeleteGlobalRef(env, clazz);
+
+	g_jni.track.clazz = clazz = findClass(env, "jahspotify/media/Track");
+	g_jni.track.ctor = method(env, clazz, "<init>", "()V");
+	g_jni.track.id = field(env, clazz, "id", LINK_SIG);
+	g_jni.track.title = field(env, clazz, "title", STRING_SIG);
+	g_jni.track.length = field(env, clazz, "length", "I");
+	g_jni.track.popularity = field(env, clazz, "popularity", "I");
+	g_jni.track.trackNumber = field(env, clazz, "trackNumber", "I");
+	g_jni.track.setAlbum = method(env, clazz, "setAlbum", "(" LINK_SIG ")V");
+	g_jni.track.addArtist = method(env, clazz, "addArtist", "(" LINK_SIG ")V");
+
+	g_jni.album.clazz = clazz = findClass(env, "jahspotify/media/Album");
+	g_jni.album.ctor = method(env, clazz, "<init>", "()V");
+	g_jni.album.id = field(env, clazz, "id", LINK_SIG);
+	g_jni.album.name = field(env, clazz, "name", STRING_SIG);
+	g_jni.album.year = field(env, clazz, "year", "I");
+	g_jni.album.type = field(env, clazz, "type", "Ljahspotify/media/AlbumType;");
+	g_jni.album.cover = field(env, clazz, "cover", LINK_SIG);
+	g_jni.album.artist = field(env, clazz, "artist", LINK_SIG);
+	g_jni.album.review = field(env, clazz, "review", STRING_SIG);
+	g_jni.album.addTrack = method(env, clazz, "addTrack", "(I" LINK_SIG ")V");
+	g_jni.album.addCopyright = method(env, clazz, "addCopyright", "(" STRING_SIG ")V");
+
+	g_jni.albumType.clazz = clazz = findClass(env, "jahspotify/media/AlbumType");
+	g_jni.albumType.fromOrdinal = staticMethod(env, clazz, "fromOrdinal", "(I)Ljahspotify/media/AlbumType;");
+
+	g_jni.artist.clazz = clazz = findClass(env, "jahspotify/media/Artist");
+	g_jni.artist.ctor = method(env, clazz, "<init>", "()V");
+	g_jni.artist.id = field(env, clazz, "id", LINK_SIG);
+	g_jni.artist.name = field(env, clazz, "name", STRING_SIG);
+	g_jni.artist.bios = field(env, clazz, "bios", STRING_SIG);
+	g_jni.artist.addSimilarArtist = method(env, clazz, "addSimilarArtist", "(" LINK_SIG ")V");
+	g_jni.artist.addPortrait = method(env, clazz, "addPortrait", "(" LINK_SIG ")V");
+	g_jni.artist.addAlbum = method(env, clazz, "addAlbum", "(" LINK_SIG ")V");
+	g_jni.artist.addTopHitTrack = method(env, clazz, "addTopHitTrack", "(" LINK_SIG ")V");
+
+	g_jni.playlist.clazz = clazz = findClass(env, "jahspotify/media/Playlist");
+	g_jni.playlist.ctor = method(env, clazz, "<init>", "()V");
+	g_jni.playlist.create = staticMethod(env, clazz, "create", "(" LINK_SIG STRING_SIG LINK_SIG ")Ljahspotify/media/Playlist;");
+	g_jni.playlist.id = field(env, clazz, "id", LINK_SIG);
+	g_jni.playlist.name = field(env, clazz, "name", STRING_SIG);
+	g_jni.playlist.author = field(env, clazz, "author", STRING_SIG);
+	g_jni.playlist.numTracks = field(env, clazz, "numTracks", "I");
+	g_jni.playlist.addTrack = method(env, clazz, "addTrack", "(" LINK_SIG ")V");
+	g_jni.playlist.clear = method(env, clazz, "clear", "()V");
+
+	g_jni.playlistContainer.clazz = clazz = findClass(env, "jahspotify/media/PlaylistContainer");
+	g_jni.playlistContainer.addPlaylist = staticMethod(env, clazz, "addPlaylist", "(J)Ljahspotify/media/Playlist;");
+	g_jni.playlistContainer.removePlaylist = staticMethod(env, clazz, "removePlaylist", "(" STRING_SIG ")V");
+
+	clazz = findClass(env, "jahspotify/media/Image");
+	g_jni.image.bytes = field(env, clazz, "bytes", "[B");
+	if (clazz) (*env)->DeleteGlobalRef(env, clazz);
+
+	g_jni.searchResult.clazz = clazz = findClass(env, "jahspotify/SearchResult");
+	g_jni.searchResult.ctor = method(env, clazz, "<init>", "()V");
+	g_jni.searchResult.query = field(env, clazz, "query", STRING_SIG);
+	g_jni.searchResult.didYouMean = field(env, clazz, "didYouMean", STRING_SIG);
+	g_jni.searchResult.tracksFound = field(env, clazz, "tracksFound", LIST_SIG);
+	g_jni.searchResult.totalNumTracks = field(env, clazz, "totalNumTracks", "I");
+	g_jni.searchResult.trackOffset = field(env, clazz, "trackOffset", "I");
+	g_jni.searchResult.albumsFound = field(env, clazz, "albumsFound", LIST_SIG);
+	g_jni.searchResult.totalNumAlbums = field(env, clazz, "totalNumAlbums", "I");
+	g_jni.searchResult.albumOffset = field(env, clazz, "albumOffset", "I");
+	g_jni.searchResult.artistsFound = field(env, clazz, "artistsFound", LIST_SIG);
+	g_jni.searchResult.totalNumArtists = field(env, clazz, "totalNumArtists", "I");
+	g_jni.searchResult.artistOffset = field(env, clazz, "artistOffset", "I");
+	g_jni.searchResult.playlistsFound = field(env, clazz, "playlistsFound", LIST_SIG);
+	g_jni.searchResult.totalNumPlaylists = field(env, clazz, "totalNumPlaylists", "I");
+	g_jni.searchResult.playlistOffset = field(env, clazz, "playlistOffset", "I");
+
+	g_jni.user.clazz = clazz = findClass(env, "jahspotify/media/User");
+	g_jni.user.ctor = method(env, clazz, "<init>", "()V");
+	g_jni.user.fullName = field(env, clazz, "fullName", STRING_SIG);
+	g_jni.user.userName = field(env, clazz, "userName", STRING_SIG);
+	g_jni.user.displayName = field(env, clazz, "displayName", STRING_SIG);
+	g_jni.user.country = field(env, clazz, "country", STRING_SIG);
+
+	clazz = findClass(env, "jahspotify/NativeStatistics");
+	g_jni.statistics.threadAttaches = field(env, clazz, "threadAttaches", "J");
+	g_jni.statistics.threadDetaches = field(env, clazz, "threadDetaches", "J");
+	g_jni.statistics.persistentAttach = field(env, clazz, "persistentAttach", "Z");
+	g_jni.statistics.pendingLoads = field(env, clazz, "pendingLoads", "I");
+	g_jni.statistics.maxPendingLoads = field(env, clazz, "maxPendingLoads", "I");
+	g_jni.statistics.pendingWaiters = field(env, clazz, "pendingWaiters", "J");
+	g_jni.statistics.loadsCompleted = field(env, clazz, "loadsCompleted", "J");
+	g_jni.statistics.checkLoadedCalls = field(env, clazz, "checkLoadedCalls", "J");
+	g_jni.statistics.checkLoadedNanos = field(env, clazz, "checkLoadedNanos", "J");
+	g_jni.statistics.checkLoadedMaxNanos = field(env, clazz, "checkLoadedMaxNanos", "J");
+	g_jni.statistics.playRequests = field(env, clazz, "playRequests", "J");
+	g_jni.statistics.parkedPlays = field(env, clazz, "parkedPlays", "J");
+	g_jni.statistics.timeToFirstAudioCount = field(env, clazz, "timeToFirstAudioCount", "J");
+	g_jni.statistics.timeToFirstAudioNanos = field(env, clazz, "timeToFirstAudioNanos", "J");
+	g_jni.statistics.timeToFirstAudioMaxNanos = field(env, clazz, "timeToFirstAudioMaxNanos", "J");
+	g_jni.statistics.lastTimeToFirstAudioNanos = field(env, clazz, "lastTimeToFirstAudioNanos", "J");
+	if (clazz) (*env)->DeleteGlobalRef(env, clazz);
+
+	clazz = findClass(env, "jahspotify/impl/JahSpotifyImpl");
+	g_jni.jahSpotifyImpl.processCommands = method(env, clazz, "processCommands", "()V");
+	if (clazz) (*env)->DeleteGlobalRef(env, clazz);
+
+	clazz = findClass(env, "jahspotify/impl/JahSpotifyImpl$NativeSearchParameters");
+	g_jni.searchParameters.query = field(env, clazz, "_query", STRING_SIG);
+	g_jni.searchParameters.suggest = field(env, clazz, "suggest", "Z");
+	g_jni.searchParameters.trackOffset = field(env, clazz, "trackOffset", "I");
+	g_jni.searchParameters.numTracks = field(env, clazz, "numTracks", "I");
+	g_jni.searchParameters.albumOffset = field(env, clazz, "albumOffset", "I");
+	g_jni.searchParameters.numAlbums = field(env, clazz, "numAlbums", "I");
+	g_jni.searchParameters.artistOffset = field(env, clazz, "artistOffset", "I");
+	g_jni.searchParameters.numArtists = field(env, clazz, "numArtists", "I");
+	g_jni.searchParameters.playlistOffset = field(env, clazz, "playlistOffset", "I");
+	g_jni.searchParameters.numPlaylists = field(env, clazz, "numPlaylists", "I");
+	if (clazz) (*env)->DeleteGlobalRef(env, clazz);
+
+	g_jni.playbackListener.clazz = clazz = findClass(env, "jahspotify/impl/NativePlaybackListener");
+	g_jni.playbackListener.trackStarted = method(env, clazz, "trackStarted", "(" STRING_SIG ")V");
+	g_jni.playbackListener.trackEnded = method(env, clazz, "trackEnded", "(" STRING_SIG "Z)V");
+	g_jni.playbackListener.nextTrackToPreload = method(env, clazz, "nextTrackToPreload", "()" STRING_SIG);
+	g_jni.playbackListener.playTokenLost = method(env, clazz, "playTokenLost", "()V");
+	g_jni.playbackListener.setAudioFormat = method(env, clazz, "setAudioFormat", "(II)V");
+	g_jni.playbackListener.addToBuffer = method(env, clazz, "addToBuffer", "([B)I");
+	g_jni.playbackListener.addToBufferDirect = method(env, clazz, "addToBuffer", "(III)I");
+
+	g_jni.connectionListener.clazz = clazz = findClass(env, "jahspotify/impl/NativeConnectionListener");
+	g_jni.connectionListener.initialized = method(env, clazz, "initialized", "(Z)V");
+	g_jni.connectionListener.connected = method(env, clazz, "connected", "()V");
+	g_jni.connectionListener.disconnected = method(env, clazz, "disconnected", "()V");
+	g_jni.connectionListener.loggedIn = method(env, clazz, "loggedIn", "(Z)V");
+	g_jni.connectionListener.playlistsLoaded = method(env, clazz, "playlistsLoaded", "()V");
+	g_jni.connectionListener.loggedOut = method(env, clazz, "loggedOut", "()V");
+	g_jni.connectionListener.blobUpdated = method(env, clazz, "blobUpdated", "(" STRING_SIG ")V");
+
+	g_jni.mediaLoadedListener.clazz = clazz = findClass(env, "jahspotify/impl/NativeMediaLoadedListener");
+	g_jni.mediaLoadedListener.track = method(env, clazz, "track", "(I" LINK_SIG ")V");
+	g_jni.mediaLoadedListener.playlist = method(env, clazz, "playlist", "(Ljahspotify/media/Playlist;)V");
+	g_jni.mediaLoadedListener.album = method(env, clazz, "album", "(ILjahspotify/media/Album;)V");
+	g_jni.mediaLoadedListener.image = method(env, clazz, "image", "(I" LINK_SIG "Ljahspotify/media/ImageSize;[B)V");
+	g_jni.mediaLoadedListener.artist = method(env, clazz, "artist", "(ILjahspotify/media/Artist;)V");
+	g_jni.mediaLoadedListener.playlistChanged = method(env, clazz, "playlistChanged", "(" LINK_SIG ")V");
+
+	g_jni.searchCompleteListener.clazz = clazz = findClass(env, "jahspotify/impl/NativeSearchCompleteListener");
+	g_jni.searchCompleteListener.searchCompleted = method(env, clazz, "searchCompleted", "(ILjahspotify/SearchResult;)V");
+
+	return missing == 0 ? 0 : 1;
+}
+
+void releaseJNICache(JNIEnv *env) {
+	jclass *classes[] = { &g_jni.arrayList.clazz, &g_jni.link.clazz, &g_jni.track.clazz, &g_jni.album.clazz, &g_jni.albumType.clazz, &g_jni.artist.clazz,
+			&g_jni.playlist.clazz, &g_jni.playlistContainer.clazz, &g_jni.searchResult.clazz, &g_jni.user.clazz, &g_jni.logger.clazz,
+			&g_jni.playbackListener.clazz, &g_jni.connectionListener.clazz, &g_jni.mediaLoadedListener.clazz, &g_jni.searchCompleteListener.clazz };
+	size_t i;
+	for (i = 0; i < sizeof(classes) / sizeof(classes[0]); i++) {
+		if (*classes[i]) (*env)->DeleteGlobalRef(env, *classes[i]);
+		*classes[i] = NULL;
+	}
+}
@@ -1,21 +1,45 @@
 #include <string.h>
 #include <stdlib.h>
 #include <stdarg.h>
+#include <pthread.h>
 #include <libspotify/api.h>
 
 #include "JNIHelpers.h"
+#include "JNICache.h"
 #include "Logging.h"
 
 JavaVM* g_vm = NULL;
 
-jclass g_playbackListenerClass;
-jclass g_connectionListenerClass;
-jclass g_searchCompleteListenerClass;
-jclass g_mediaLoadedListenerClass;
-jclass g_linkClass;
-jclass g_playlistCLass;
-jclass g_nativeSearchResultClass;
-jclass g_loggerClass;
+/// When set, threads stay attached as daemon threads until they exit instead of detaching after each callback
+static int g_persistentAttach = 1;
+/// Thread local marker for threads attached in persistent mode, the destructor detaches them
+static pthread_key_t g_attachedKey;
+static int g_attachedKeyCreated = 0;
+
+static volatile jlong g_attachCount = 0;
+static volatile jlong g_detachCount = 0;
+
+static void detachOnThreadExit(void *value) {
+	JNIEnv* env = NULL;
+	if (!g_vm || (*g_vm)->GetEnv(g_vm, (void**) &env, JNI_VERSION_1_4) == JNI_EDETACHED) return;
+	if ((*g_vm)->DetachCurrentThread(g_vm) == JNI_OK) __sync_fetch_and_add(&g_detachCount, 1);
+}
+
+void setPersistentAttach(int persistent) {
+	g_persistentAttach = persistent && g_attachedKeyCreated;
+}
+
+int isPersistentAttach() {
+	return g_persistentAttach;
+}
+
+jlong getAttachCount() {
+	return g_attachCount;
+}
+
+jlong getDetachCount() {
+	return g_detachCount;
+}
 
 jint checkException(JNIEnv *env) {
 	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
@@ -29,6 +53,10 @@ jint checkException(JNIEnv *env) {
 
 jint detachThread() {
 	JNIEnv* env = NULL;
+
+	// Persistent threads are detached by the thread key destructor when they exit.
+	if (g_persistentAttach) return 0;
+
 	jint result = (*g_vm)->GetEnv(g_vm, (void**) &env, JNI_VERSION_1_4);
 
 	if (result != JNI_EDETACHED) {
@@ -36,73 +64,64 @@ jint detachThread() {
 		if (result != JNI_OK) {
 			return 1;
 		}
+		__sync_fetch_and_add(&g_detachCount, 1);
+		if (g_attachedKeyCreated) pthread_setspecific(g_attachedKey, NULL);
 	}
 	return 0;
 }
 
-jint invokeVoidMethod(JNIEnv *env, jobject instance, const char *methodName) {
-	jclass clazz;
-	jmethodID methodId;
-
-	clazz = (*env)->GetObjectClass(env, instance);
-	if (clazz == NULL ) return 1;
+/**
+ * Retrieves the environment like retrieveEnv and opens a local reference frame for a callback.
+ * Threads which stay attached never return to Java, so the local references they create are
+ * only freed when endCallback pops the frame. On failure the environment is set to NULL.
+ */
+int beginCallback(JNIEnv* env) {
+	if (!retrieveEnv(env)) return JNI_FALSE;
+
+	JNIEnv *myEnv = *(JNIEnv**) env;
+	if ((*myEnv)->PushLocalFrame(myEnv, 16) < 0) {
+		(*myEnv)->ExceptionClear(myEnv);
+		*(JNIEnv**) env = NULL;
+		return JNI_FALSE;
+	}
+	return JNI_TRUE;
+}
 
-	methodId = (*env)->GetMethodID(env, clazz, methodName, "()V");
-	(*env)->DeleteLocalRef(env, clazz);
+/**
+ * Frees the local references of a callback started with beginCallback and detaches the thread.
+ */
+void endCallback(JNIEnv *env) {
+	if (env) (*env)->PopLocalFrame(env, NULL );
+	detachThread();
+}
 
-	if (methodId == NULL ) return 1;
+jint invokeVoidMethod(JNIEnv *env, jobject instance, jmethodID methodId) {
+	if (instance == NULL || methodId == NULL ) return 1;
 	(*env)->CallVoidMethod(env, instance, methodId);
 	return 0;
 }
 
-jint invokeVoidMethod_II(JNIEnv *env, jobject instance, const char *methodName, jint arg1, jint arg2) {
-	jclass clazz;
-	jmethodID methodId;
-
-	clazz = (*env)->GetObjectClass(env, instance);
-	if (clazz == NULL ) return 1;
-
-	methodId = (*env)->GetMethodID(env, clazz, methodName, "(II)V");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (methodId == NULL ) return 1;
-
+jint invokeVoidMethod_II(JNIEnv *env, jobject instance, jmethodID methodId, jint arg1, jint arg2) {
+	if (instance == NULL || methodId == NULL ) return 1;
 	(*env)->CallVoidMethod(env, instance, methodId, arg1, arg2);
-
 	return 0;
 }
 
-jint invokeVoidMethod_Z(JNIEnv *env, jobject instance, const char *methodName, jboolean arg1) {
-	jclass clazz;
-	jmethodID methodId;
-
-	clazz = (*env)->GetObjectClass(env, instance);
-	if (clazz == NULL ) return 1;
-
-	methodId = (*env)->GetMethodID(env, clazz, methodName, "(Z)V");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (methodId == NULL ) return 1;
-
+jint invokeVoidMethod_Z(JNIEnv *env, jobject instance, jmethodID methodId, jboolean arg1) {
+	if (instance == NULL || methodId == NULL ) return 1;
 	(*env)->CallVoidMethod(env, instance, methodId, arg1);
-
 	return 0;
 }
 
-jint invokeIntMethod_B(JNIEnv *env, jobject instance, const char *methodName, int *returnValue, jbyteArray arr) {
-	jclass clazz;
-	jmethodID methodId;
-
-	clazz = (*env)->GetObjectClass(env, instance);
-	if (clazz == NULL ) return 1;
-
-	methodId = (*env)->GetMethodID(env, clazz, methodName, "([B)I");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (methodId == NULL ) return 1;
-
+jint invokeIntMethod_B(JNIEnv *env, jobject instance, jmethodID methodId, int *returnValue, jbyteArray arr) {
+	if (instance == NULL || methodId == NULL ) return 1;
 	*returnValue = (*env)->CallIntMethod(env, instance, methodId, arr);
+	return 0;
+}
 
+jint invokeIntMethod_III(JNIEnv *env, jobject instance, jmethodID methodId, int *returnValue, jint arg1, jint arg2, jint arg3) {
+	if (instance == NULL || methodId == NULL ) return 1;
+	*returnValue = (*env)->CallIntMethod(env, instance, methodId, arg1, arg2, arg3);
 	return 0;
 }
 
@@ -119,25 +138,15 @@ jint createNativeString(JNIEnv *env, jstring str, char **nativeStr) {
 	return 0;
 }
 
-jobject createInstance(JNIEnv *env, char *className) {
-	jclass jClass = (*env)->FindClass(env, className);
-	if (jClass == NULL ) {
-		log_error("jahspotify", "createInstance", "Could not load class: %s", className);
-		return NULL ;
-	}
-
-	return createInstanceFromJClass(env, jClass);
-
-}
-
-jobject createInstanceFromJClass(JNIEnv *env, jclass jClass) {
+jobject createInstance(JNIEnv *env, jclass jClass, jmethodID constructor) {
 	jobject instance = NULL;
-	jmethodID jConstructor = NULL;
 
-	jConstructor = (*env)->GetMethodID(env, jClass, "<init>", "()V");
+	if (jClass == NULL || constructor == NULL ) {
+		log_error("jahspotify", "createInstance", "Class or constructor not cached");
+		return NULL ;
+	}
 
-	// jobject instance = (*env)->AllocObject(env,jClass);
-	instance = (*env)->NewObject(env, jClass, jConstructor); // Release
+	instance = (*env)->NewObject(env, jClass, constructor); // Release
 
 	if (instance == NULL ) {
 		log_error("jahspotify", "createInstance", "Could not create instance");
@@ -146,135 +155,51 @@ jobject createInstanceFromJClass(JNIEnv *env, jclass jClass) {
 	return instance;
 }
 
-jint setObjectIntField(JNIEnv * env, jobject obj, const char *name, jint value) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "I");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint setObjectIntField(JNIEnv * env, jobject obj, jfieldID field, jint value) {
+	if (obj == NULL || field == NULL ) return 1;
 	(*env)->SetIntField(env, obj, field, value);
-
 	return 0;
 }
 
-jint setObjectFloatField(JNIEnv * env, jobject obj, const char *name, jfloat value) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "F");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint setObjectFloatField(JNIEnv * env, jobject obj, jfieldID field, jfloat value) {
+	if (obj == NULL || field == NULL ) return 1;
 	(*env)->SetFloatField(env, obj, field, value);
-
 	return 0;
 }
 
-jint setObjectBooleanField(JNIEnv * env, jobject obj, const char *name, jboolean value) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "Z");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint setObjectBooleanField(JNIEnv * env, jobject obj, jfieldID field, jboolean value) {
+	if (obj == NULL || field == NULL ) return 1;
 	(*env)->SetBooleanField(env, obj, field, value);
-
 	return 0;
 }
 
-jint getObjectLongField(JNIEnv * env, jobject obj, const char *name, jlong *value) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "J");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint getObjectLongField(JNIEnv * env, jobject obj, jfieldID field, jlong *value) {
+	if (obj == NULL || field == NULL ) return 1;
 	*value = (*env)->GetLongField(env, obj, field);
-
 	return 0;
 }
 
-jint setObjectLongField(JNIEnv * env, jobject obj, const char *name, jlong value) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "J");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint setObjectLongField(JNIEnv * env, jobject obj, jfieldID field, jlong value) {
+	if (obj == NULL || field == NULL ) return 1;
 	(*env)->SetLongField(env, obj, field, value);
-
 	return 0;
 }
 
-jstring getObjectStringField(JNIEnv * env, jobject obj, const char *name) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return NULL ;
-
-	field = (*env)->GetFieldID(env, clazz, name, "Ljava/lang/String;");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return NULL ;
-
+jstring getObjectStringField(JNIEnv * env, jobject obj, jfieldID field) {
+	if (obj == NULL || field == NULL ) return NULL ;
 	return (*env)->GetObjectField(env, obj, field);
 }
 
-jint setObjectObjectField(JNIEnv * env, jobject obj, const char *name, char *fieldClassName, jobject value) {
-	jclass clazz;
-	jfieldID field;
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, fieldClassName);
-
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint setObjectObjectField(JNIEnv * env, jobject obj, jfieldID field, jobject value) {
+	if (obj == NULL || field == NULL ) return 1;
 	(*env)->SetObjectField(env, obj, field, value);
-
 	return 0;
 }
 
-jint setObjectStringField(JNIEnv * env, jobject obj, const char *name, const char *value) {
-	jclass clazz;
-	jfieldID field;
+jint setObjectStringField(JNIEnv * env, jobject obj, jfieldID field, const char *value) {
 	jstring str;
 
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "Ljava/lang/String;");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
+	if (obj == NULL || field == NULL ) return 1;
 
 	str = (*env)->NewStringUTF(env, value);
 	if (str == NULL ) return 1;
@@ -284,37 +209,15 @@ jint setObjectStringField(JNIEnv * env, jobject obj, const char *name, const cha
 	return 0;
 }
 
-jint getObjectIntField(JNIEnv * env, jobject obj, const char *name, jint *value) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "I");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint getObjectIntField(JNIEnv * env, jobject obj, jfieldID field, jint *value) {
+	if (obj == NULL || field == NULL ) return 1;
 	*value = (*env)->GetIntField(env, obj, field);
-
 	return 0;
 }
 
-jint getObjectBoolField(JNIEnv * env, jobject obj, const char *name, jboolean *value) {
-	jclass clazz;
-	jfieldID field;
-
-	clazz = (*env)->GetObjectClass(env, obj);
-	if (clazz == NULL ) return 1;
-
-	field = (*env)->GetFieldID(env, clazz, name, "Z");
-	(*env)->DeleteLocalRef(env, clazz);
-
-	if (field == NULL ) return 1;
-
+jint getObjectBoolField(JNIEnv * env, jobject obj, jfieldID field, jboolean *value) {
+	if (obj == NULL || field == NULL ) return 1;
 	*value = (*env)->GetBooleanField(env, obj, field);
-
 	return 0;
 }
 
@@ -330,7 +233,13 @@ int retrieveEnv(JNIEnv* env) {
 	result = (*g_vm)->GetEnv(g_vm, (void**) &myEnv, JNI_VERSION_1_4);
 
 	if (result == JNI_EDETACHED) {
-		result = (*g_vm)->AttachCurrentThread(g_vm, (void**) &myEnv, NULL );
+		if (g_persistentAttach) {
+			result = (*g_vm)->AttachCurrentThreadAsDaemon(g_vm, (void**) &myEnv, NULL );
+			if (result == JNI_OK) pthread_setspecific(g_attachedKey, g_vm);
+		} else {
+			result = (*g_vm)->AttachCurrentThread(g_vm, (void**) &myEnv, NULL );
+		}
+		if (result == JNI_OK) __sync_fetch_and_add(&g_attachCount, 1);
 	}
 
 	if (result != JNI_OK) {
@@ -350,7 +259,6 @@ JNIEXPORT
 jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {
 	JNIEnv* env = NULL;
 	jint result = -1;
-	jclass aClass;
 
 	g_vm = vm;
 
@@ -359,70 +267,31 @@ jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {
 		goto error;
 	}
 
-	aClass = (*env)->FindClass(env, "jahspotify/impl/NativeLogger");
-	if (aClass == NULL ) {
-		fprintf(stderr,"jahspotify::JNI_OnLoad: could not load jahnotify.impl.NativeLogger\n");
-		goto error;
-	}
-	g_loggerClass = (*env)->NewGlobalRef(env, aClass);
-
-	log_debug("jnihelpers", "JNI_OnLoad", "vm: 0x%x env: 0x%x", (int) g_vm, (int) env);
-
-	aClass = (*env)->FindClass(env, "jahspotify/impl/NativePlaybackListener");
-	if (aClass == NULL ) {
-		log_error("jahspotify", "JNI_OnLoad", "Could not load jahnotify.impl.NativePlaybackListener");
-		goto error;
-	}
-	g_playbackListenerClass = (*env)->NewGlobalRef(env, aClass);
-
-	aClass = (*env)->FindClass(env, "jahspotify/SearchResult");
-	if (aClass == NULL ) {
-		log_error("jahspotify", "JNI_OnLoad", "Could not load jahspotify.SearchResult");
-		goto error;
-	}
-	g_nativeSearchResultClass = (*env)->NewGlobalRef(env, aClass);
-
-	aClass = (*env)->FindClass(env, "jahspotify/impl/NativeConnectionListener");
-	if (aClass == NULL ) {
-		log_error("jahspotify", "JNI_OnLoad", "Could not load jahspotify.NativeConnectionListener");
-		goto error;
-	}
-	g_connectionListenerClass = (*env)->NewGlobalRef(env, aClass);
-
-	aClass = (*env)->FindClass(env, "jahspotify/impl/NativeMediaLoadedListener");
-	if (aClass == NULL ) {
-		log_error("jahspotify", "JNI_OnLoad", "Could not load jahspotify.NativeMediaLoadedListener");
-		goto error;
-	}
-	g_mediaLoadedListenerClass = (*env)->NewGlobalRef(env, aClass);
-
-	aClass = (*env)->FindClass(env, "jahspotify/impl/NativeSearchCompleteListener");
-	if (aClass == NULL ) {
-		log_error("jahspotify", "JNI_OnLoad", "Could not load jahnotify.impl.NativeSearchCompleteListener");
-		goto error;
+	g_attachedKeyCreated = pthread_key_create(&g_attachedKey, detachOnThreadExit) == 0;
+	if (!g_attachedKeyCreated) {
+		fprintf(stderr,"jahspotify::JNI_OnLoad: could not create thread key, threads will be detached after each callback\n");
+		g_persistentAttach = 0;
 	}
-	g_searchCompleteListenerClass = (*env)->NewGlobalRef(env, aClass);
 
-	aClass = (*env)->FindClass(env, "jahspotify/media/Link");
-	if (aClass == NULL ) {
-		log_error("jahspotify", "JNI_OnLoad", "Could not load jahspotify.media.Link");
+	if (initJNICache(env) != 0) {
+		fprintf(stderr,"jahspotify::JNI_OnLoad: could not resolve all classes, methods and fields\n");
 		goto error;
 	}
-	g_linkClass = (*env)->NewGlobalRef(env, aClass);
 
-	aClass = (*env)->FindClass(env, "jahspotify/media/Playlist");
-	if (aClass == NULL ) {
-		log_error("jahspotify", "JNI_OnLoad", "Could not load jahspotify.media.Playlist");
-		goto error;
-	}
-	g_playlistCLass = (*env)->NewGlobalRef(env, aClass);
+	log_debug("jnihelpers", "JNI_OnLoad", "vm: 0x%x env: 0x%x", (int) g_vm, (int) env);
 
 	/* success -- return valid version number */
 	result = JNI_VERSION_1_4;
 	goto exit;
 
 	error: result = 0;
-	log_error("jahspotify", "JNI_OnLoad", "Error occured during initialization");
-	exit: log_debug("jahspotify", "JNI_OnLoad", "Exiting (result=0x%x)", result);
-	return result;
+	fprintf(stderr, "jahspotify::JNI_OnLoad: Error occured during initialization\n");
+	exit: return result;
+}
+
+JNIEXPORT
+void JNICALL JNI_OnUnload(JavaVM* vm, void* reserved) {
+	JNIEnv* env = NULL;
+	if ((*vm)->GetEnv(vm, (void**) &env, JNI_VERSION_1_4) == JNI_OK) releaseJNICache(env);
+	if (g_attachedKeyCreated) pthread_key_delete(g_attachedKey);
 }
@@ -27,6 +27,7 @@
 
 #include "Logging.h"
 #include "JNIHelpers.h"
+#include "JNICache.h"
 #include "JahSpotify.h"
 #include "jahspotify_impl_JahSpotifyImpl.h"
 #include "AppKey.h"
@@ -44,8 +45,14 @@ jobject g_connectionListener = NULL;
 jobject g_playbackListener = NULL;
 jobject g_searchCompleteListener = NULL;
 jobject g_mediaLoadedListener = NULL;
-extern jclass g_linkClass;
-extern jclass g_playlistCLass;
+
+/// Direct buffer shared with Java for audio delivery, NULL when the byte[] path is used
+static jobject g_audioBuffer = NULL;
+static char *g_audioRing = NULL;
+static jlong g_audioRingSize = 0;
+static jlong g_audioRingOffset = 0;
+/// Held while the ring is written or swapped, so it isn't released during a delivery
+static pthread_mutex_t g_audio_mutex = PTHREAD_MUTEX_INITIALIZER;
 
 /// Synchronization mutex for the main thread
 static pthread_mutex_t g_notify_mutex;
@@ -55,11 +62,34 @@ static pthread_cond_t g_notify_cond;
 static int g_notify_do;
 /// Non-zero when a track has ended and a new one has not yet started a new one
 static int g_playback_done;
+/// Set when libspotify started playing a track, so the next one can be prefetched
+static int g_preload_do;
 static int g_stop_after_logout = 0;
 static int g_stop = 0;
 
-static media *loading = NULL;
 static pthread_mutex_t g_loading_mutex;
+/// Bumped whenever new metadata arrived or a load was added, the main loop sweeps when it changed.
+static volatile int g_loading_generation = 0;
+static int g_checked_generation = 0;
+static void checkLoadedIfUpdated();
+static jlong monotonicNanos();
+
+/// Bumped by every play and stop request, a parked play only starts when nothing else was requested since.
+static volatile int g_playRequest = 0;
+static jlong g_playRequests = 0;
+static jlong g_parkedPlays = 0;
+/// Set when a track was handed to the player, cleared by the first audio delivered for it.
+/// The statistics are written by the libspotify audio thread and read by nativeReadStatistics.
+static volatile int g_awaitingFirstAudio = 0;
+static volatile jlong g_firstAudioRequestedNanos = 0;
+static volatile jlong g_firstAudioCount = 0;
+static volatile jlong g_firstAudioNanos = 0;
+static volatile jlong g_firstAudioMaxNanos = 0;
+static volatile jlong g_lastFirstAudioNanos = 0;
+
+/// The track which is played when the current one ends, with a reference held on it
+static sp_track *g_nextTrack = NULL;
+static char *g_nextTrackUri = NULL;
 
 void populateJAlbumInstanceFromAlbumBrowse(JNIEnv *env, sp_album *album, sp_albumbrowse *albumBrowse, jobject albumInstance);
 void populateJArtistInstanceFromArtistBrowse(JNIEnv *env, sp_artistbrowse *artistBrowse, jobject artist);
@@ -124,10 +154,10 @@ static void SP_CALLCONV tracks_moved(sp_playlist *pl, const int *tracks, int num
 static void SP_CALLCONV playlist_renamed(sp_playlist *pl, void *userdata) {
 	log_debug("jahspotify", "playlist_renamed", "Playlist renamed: playlist: %s", sp_playlist_name(pl));
 	JNIEnv *env = NULL;
-	if (!retrieveEnv((JNIEnv*) &env)) return;
+	if (!beginCallback((JNIEnv*) &env)) return;
 
-	setObjectStringField(env, (jobject) userdata, "name", sp_playlist_name(pl));
-	detachThread();
+	setObjectStringField(env, (jobject) userdata, g_jni.playlist.name, sp_playlist_name(pl));
+	endCallback(env);
 }
 
 static void SP_CALLCONV playlist_state_changed(sp_playlist *pl, void *userdata) {
@@ -146,11 +176,11 @@ static void SP_CALLCONV playlist_state_changed(sp_playlist *pl, void *userdata)
 			sp_playlist_remove_callbacks(pl, &pl_callbacks, userdata);
 
 			JNIEnv* env = NULL;
-			if (!retrieveEnv((JNIEnv*) &env)) return;
+			if (!beginCallback((JNIEnv*) &env)) return;
 
 			createJPlaylist(env, playlist, pl);
 			(*env)->DeleteGlobalRef(env, playlist);
-			detachThread();
+			endCallback(env);
 		}
 
 		sp_link_release(link);
@@ -174,6 +204,26 @@ static sp_playlist_callbacks pl_callbacks = { .tracks_added = &tracks_added, .tr
 		.playlist_renamed = &playlist_renamed, .playlist_state_changed = &playlist_state_changed, .playlist_update_in_progress = &playlist_update_in_progress,
 		.playlist_metadata_updated = &playlist_metadata_updated, };
 
+/* ----------------------  WATCHED PLAYLIST CALLBACKS  ---------------------- */
+/**
+ * Callbacks from libspotify for the playlists which are watched for changes to their tracks,
+ * see nativeWatchPlaylist. Each change is signalled with the link of the playlist.
+ */
+static void SP_CALLCONV watched_tracks_added(sp_playlist *pl, sp_track * const *tracks, int num_tracks, int position, void *userdata) {
+	signalPlaylistChanged(pl);
+}
+
+static void SP_CALLCONV watched_tracks_removed(sp_playlist *pl, const int *tracks, int num_tracks, void *userdata) {
+	signalPlaylistChanged(pl);
+}
+
+static void SP_CALLCONV watched_tracks_moved(sp_playlist *pl, const int *tracks, int num_tracks, int new_position, void *userdata) {
+	signalPlaylistChanged(pl);
+}
+
+static sp_playlist_callbacks pl_watch_callbacks = { .tracks_added = &watched_tracks_added, .tracks_removed = &watched_tracks_removed,
+		.tracks_moved = &watched_tracks_moved, };
+
 /* --------------------  PLAYLIST CONTAINER CALLBACKS  --------------------- */
 /**
  * Callback from libspotify, telling us a playlist was added to the playlist container.
@@ -189,26 +239,17 @@ static void SP_CALLCONV playlist_added(sp_playlistcontainer *pc, sp_playlist *pl
 	log_debug("jahspotify", "playlist_added", "Playlist added: %s (loaded: %s)", sp_playlist_name(pl), sp_playlist_is_loaded(pl) ? "Yes" : "No");
 
 	JNIEnv *env = NULL;
-	if (!retrieveEnv((JNIEnv*) &env)) return;
-
-	// Get container.
-	jclass jPc = (*env)->FindClass(env, "jahspotify/media/PlaylistContainer");
-	if (jPc == NULL ) {
-		log_error("jahspotify", "playlist_added", "Unable to get playlistcontainer class.");
-		detachThread();
-		return;
-	}
+	if (!beginCallback((JNIEnv*) &env)) return;
 
-	// Get 'Playlist addPlaylist(Long)' method
-	jmethodID jMethod = (*env)->GetStaticMethodID(env, jPc, "addPlaylist", "(J)Ljahspotify/media/Playlist;");
+	// Playlist PlaylistContainer.addPlaylist(long)
 	long pTr = (long) pl;
-	jobject playlist = (*env)->CallStaticObjectMethod(env, jPc, jMethod, (jlong) pTr);
+	jobject playlist = (*env)->CallStaticObjectMethod(env, g_jni.playlistContainer.clazz, g_jni.playlistContainer.addPlaylist, (jlong) pTr);
 
 	// If the playlist is null then it was already added.
 	if (playlist != NULL)
 		createJPlaylist(env, playlist, pl);
 
-	detachThread();
+	endCallback(env);
 }
 
 /**
@@ -228,23 +269,18 @@ static void SP_CALLCONV playlist_removed(sp_playlistcontainer *pc, sp_playlist *
 	log_debug("jahspotify", "playlist_removed", "Playlist removed: %s", name);
 
 	JNIEnv* env = NULL;
-	if (!retrieveEnv((JNIEnv*) &env)) return;
+	if (!beginCallback((JNIEnv*) &env)) return;
 
 	sp_link *link = sp_link_create_from_playlist(pl);
 	char *linkName = malloc(sizeof(char) * 100);
 	sp_link_as_string(link, linkName, 100);
 	jstring jString = (*env)->NewStringUTF(env, linkName);
 
-	jclass jPc = (*env)->FindClass(env, "jahspotify/media/PlaylistContainer");
-	if (jPc == NULL ) {
-		log_error("jahspotify", "playlist_removed", "Unable to get playlistcontainer class.");
-		return;
-	}
-	jmethodID jMethod = (*env)->GetStaticMethodID(env, jPc, "removePlaylist", "(Ljava/lang/String;)V");
-	(*env)->CallStaticVoidMethod(env, jPc, jMethod, jString);
+	(*env)->CallStaticVoidMethod(env, g_jni.playlistContainer.clazz, g_jni.playlistContainer.removePlaylist, jString);
 
 	if (linkName) free(linkName);
 	if (jString) (*env)->DeleteLocalRef(env, jString);
+	endCallback(env);
 }
 
 /**
@@ -329,19 +365,42 @@ static void SP_CALLCONV notify_main_thread(sp_session *sess) {
 static int SP_CALLCONV music_delivery(sp_session *sess, const sp_audioformat *format, const void *frames, int num_frames) {
 	if (num_frames == 0) return 0; // Audio discontinuity, do nothing
 
+	// The compare and swap is a full barrier, the requested time set before the flag is visible after it.
+	if (g_awaitingFirstAudio && __sync_bool_compare_and_swap(&g_awaitingFirstAudio, 1, 0)) {
+		jlong firstAudio = monotonicNanos() - g_firstAudioRequestedNanos;
+		g_lastFirstAudioNanos = firstAudio;
+		g_firstAudioNanos += firstAudio;
+		g_firstAudioCount++;
+		if (firstAudio > g_firstAudioMaxNanos) g_firstAudioMaxNanos = firstAudio;
+	}
+
 	JNIEnv* env = NULL;
 	if (!retrieveEnv((JNIEnv*) &env)) return 0;
 
-	invokeVoidMethod_II(env, g_playbackListener, "setAudioFormat", (jint) format->sample_rate, (jint) format->channels);
+	invokeVoidMethod_II(env, g_playbackListener, g_jni.playbackListener.setAudioFormat, (jint) format->sample_rate, (jint) format->channels);
 
 	int sampleSize = 2 * format->channels;
 	int numBytes = num_frames * sampleSize;
+	int buffered = 0;
+
+	pthread_mutex_lock(&g_audio_mutex);
+	char *ring = g_audioRing;
+	if (ring && numBytes <= g_audioRingSize) {
+		// Write to the shared ring, wrap around when the frames don't fit at the end.
+		if (g_audioRingOffset + numBytes > g_audioRingSize) g_audioRingOffset = 0;
+		int offset = (int) g_audioRingOffset;
+		memcpy(ring + offset, frames, numBytes);
+		invokeIntMethod_III(env, g_playbackListener, g_jni.playbackListener.addToBufferDirect, &buffered, offset, numBytes, num_frames);
+		g_audioRingOffset += (jlong) buffered * sampleSize;
+		pthread_mutex_unlock(&g_audio_mutex);
+		return buffered;
+	}
+	pthread_mutex_unlock(&g_audio_mutex);
 
 	jbyteArray byteArray = (*env)->NewByteArray(env, numBytes);
 
 	(*env)->SetByteArrayRegion(env, byteArray, 0, numBytes, (jbyte*) frames);
-	int buffered;
-	invokeIntMethod_B(env, g_playbackListener, "addToBuffer", &buffered, byteArray);
+	invokeIntMethod_B(env, g_playbackListener, g_jni.playbackListener.addToBuffer, &buffered, byteArray);
 
 	(*env)->DeleteLocalRef(env, byteArray);
 	return buffered;
@@ -369,7 +428,8 @@ static void SP_CALLCONV end_of_track(sp_session *sess) {
  */
 static void SP_CALLCONV metadata_updated(sp_session *sess) {
 	log_debug("jahspotify", "metadata_updated", "Metadata updated");
-	checkLoaded();
+	// Several updates usually arrive in one round of sp_session_process_events, the main loop sweeps once afterwards.
+	__sync_fetch_and_add(&g_loading_generation, 1);
 }
 
 /**
@@ -408,7 +468,10 @@ static void SP_CALLCONV streaming_error(sp_session *session, sp_error error) {
 
 static void SP_CALLCONV start_playback(sp_session *session) {
 	log_debug("jahspotify", "start_playback", "Next playback about to start, initiating pre-load sequence");
-	startPlaybackSignalled();
+	pthread_mutex_lock(&g_notify_mutex);
+	g_preload_do = 1;
+	pthread_cond_signal(&g_notify_cond);
+	pthread_mutex_unlock(&g_notify_mutex);
 }
 
 static void SP_CALLCONV message_to_user(sp_session *session, const char *data) {
@@ -436,10 +499,14 @@ static void SP_CALLCONV searchCompleteCallback(sp_search *result, void *userdata
 	} else {
 		log_error("jahspotify", "searchCompleteCallback", "Search completed with error: %s\n", sp_error_message(sp_search_error(result)));
 	}
+
+	// The search and its token are not used after the callback, release the reference from sp_search_create.
+	free(token);
+	sp_search_release(result);
 }
 
 JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeInitiateSearch(JNIEnv *env, jobject obj, jint javaToken, jobject javaNativeSearchParameters) {
-	char *nativeQuery;
+	char *nativeQuery = NULL;
 	int32_t *token = calloc(1, sizeof(int32_t));
 	int32_t numAlbums;
 	int32_t albumOffset;
@@ -455,32 +522,37 @@ JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeInitiateSearch(
 
 	*token = javaToken;
 
-	getObjectIntField(env, javaNativeSearchParameters, "numAlbums", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.numAlbums, &value);
 	numAlbums = value;
-	getObjectIntField(env, javaNativeSearchParameters, "albumOffset", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.albumOffset, &value);
 	albumOffset = value;
-	getObjectIntField(env, javaNativeSearchParameters, "numArtists", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.numArtists, &value);
 	numArtists = value;
-	getObjectIntField(env, javaNativeSearchParameters, "artistOffset", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.artistOffset, &value);
 	artistOffset = value;
-	getObjectIntField(env, javaNativeSearchParameters, "numTracks", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.numTracks, &value);
 	numTracks = value;
-	getObjectIntField(env, javaNativeSearchParameters, "trackOffset", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.trackOffset, &value);
 	trackOffset = value;
-	getObjectIntField(env, javaNativeSearchParameters, "numPlaylists", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.numPlaylists, &value);
 	numPlaylists = value;
-	getObjectIntField(env, javaNativeSearchParameters, "playlistOffset", &value);
+	getObjectIntField(env, javaNativeSearchParameters, g_jni.searchParameters.playlistOffset, &value);
 	playlistOffset = value;
-	getObjectBoolField(env, javaNativeSearchParameters, "suggest", &bValue);
+	getObjectBoolField(env, javaNativeSearchParameters, g_jni.searchParameters.suggest, &bValue);
 	suggest = bValue == JNI_TRUE ? 1 : 0;
 
-	if (createNativeString(env, getObjectStringField(env, javaNativeSearchParameters, "_query"), &nativeQuery) != 1) {
+	if (createNativeString(env, getObjectStringField(env, javaNativeSearchParameters, g_jni.searchParameters.query), &nativeQuery) != 1) {
 		// FIXME: Handle error
 	}
 
 	sp_search_type type = suggest ? SP_SEARCH_SUGGEST : SP_SEARCH_STANDARD;
-	sp_search_create(g_sess, nativeQuery, trackOffset, numTracks, albumOffset, numAlbums, artistOffset, numArtists, playlistOffset,
+	sp_search *search = sp_search_create(g_sess, nativeQuery, trackOffset, numTracks, albumOffset, numAlbums, artistOffset, numArtists, playlistOffset,
 			numPlaylists, type, searchCompleteCallback, token);
+	if (!search) {
+		log_error("jahspotify", "nativeInitiateSearch", "Could not create search for token %d", javaToken);
+		free(token);
+	}
+	if (nativeQuery) free(nativeQuery);
 }
 
 JNIEXPORT jboolean JNICALL Java_jahspotify_impl_JahSpotifyImpl_registerNativeMediaLoadedListener(JNIEnv *env, jobject obj, jobject mediaLoadedListener) {
@@ -501,6 +573,43 @@ JNIEXPORT jboolean JNICALL Java_jahspotify_impl_JahSpotifyImpl_registerNativePla
 	return JNI_TRUE;
 }
 
+JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_registerNativeAudioBuffer(JNIEnv *env, jobject obj, jobject buffer) {
+	pthread_mutex_lock(&g_audio_mutex);
+	jobject previous = g_audioBuffer;
+
+	g_audioRing = NULL;
+	g_audioRingSize = 0;
+	g_audioRingOffset = 0;
+	g_audioBuffer = NULL;
+
+	if (buffer) {
+		char *address = (char*) (*env)->GetDirectBufferAddress(env, buffer);
+		jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+		if (address && capacity > 0) {
+			g_audioBuffer = (*env)->NewGlobalRef(env, buffer);
+			g_audioRingSize = capacity;
+			g_audioRing = address;
+		} else {
+			log_error("jahspotify", "registerNativeAudioBuffer", "Buffer is not a direct buffer, using byte arrays for audio");
+		}
+	}
+	pthread_mutex_unlock(&g_audio_mutex);
+
+	// No delivery uses the previous ring anymore.
+	if (previous) (*env)->DeleteGlobalRef(env, previous);
+}
+
+JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeWakeup(JNIEnv *env, jobject obj) {
+	pthread_mutex_lock(&g_notify_mutex);
+	g_notify_do = 1;
+	pthread_cond_signal(&g_notify_cond);
+	pthread_mutex_unlock(&g_notify_mutex);
+}
+
+JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeSetPersistentAttach(JNIEnv *env, jobject obj, jboolean persistent) {
+	setPersistentAttach(persistent == JNI_TRUE ? 1 : 0);
+}
+
 JNIEXPORT jboolean JNICALL Java_jahspotify_impl_JahSpotifyImpl_registerNativeConnectionListener(JNIEnv *env, jobject obj, jobject connectionListener) {
 	g_connectionListener = (*env)->NewGlobalRef(env, connectionListener);
 	log_debug("jahspotify", "registerNativeConnectionListener", "Registered connection listener: 0x%x\n", (int) g_connectionListener);
@@ -543,7 +652,7 @@ JNIEXPORT jobject JNICALL Java_jahspotify_impl_JahSpotifyImpl_retrieveUser(JNIEn
 		return NULL ;
 	}
 
-	jobject userInstance = createInstance(env, "jahspotify/media/User");
+	jobject userInstance = createInstance(env, g_jni.user.clazz, g_jni.user.ctor);
 	if (!userInstance) {
 		log_error("jahspotify", "Java_jahspotify_impl_JahSpotifyImpl_retrieveUser", "Could not create instance of jahspotify.media.User");
 		return NULL ;
@@ -553,15 +662,15 @@ JNIEXPORT jobject JNICALL Java_jahspotify_impl_JahSpotifyImpl_retrieveUser(JNIEn
 		log_error("jahspotify", "Java_jahspotify_impl_JahSpotifyImpl_retrieveUser", "User is loaded");
 		value = sp_user_display_name(user);
 		if (value) {
-			setObjectStringField(env, userInstance, "fullName", value);
+			setObjectStringField(env, userInstance, g_jni.user.fullName, value);
 		}
 		value = sp_user_canonical_name(user);
 		if (value) {
-			setObjectStringField(env, userInstance, "userName", value);
+			setObjectStringField(env, userInstance, g_jni.user.userName, value);
 		}
 		value = sp_user_display_name(user);
 		if (value) {
-			setObjectStringField(env, userInstance, "displayName", value);
+			setObjectStringField(env, userInstance, g_jni.user.displayName, value);
 		}
 
 		// Country encoded in an integer 'SE' = 'S' << 8 | 'E'
@@ -569,7 +678,7 @@ JNIEXPORT jobject JNICALL Java_jahspotify_impl_JahSpotifyImpl_retrieveUser(JNIEn
 		char countryStr[] = "  ";
 		countryStr[0] = (byte) (country >> 8);
 		countryStr[1] = (byte) country;
-		setObjectStringField(env, userInstance, "country", countryStr);
+		setObjectStringField(env, userInstance, g_jni.user.country, countryStr);
 		return userInstance;
 	}
 	(*env)->DeleteLocalRef(env, userInstance);
@@ -587,16 +696,13 @@ char* createLinkStr(sp_link *link) {
 jobject createJLinkInstance(JNIEnv *env, sp_link *link) {
 	if (!link) return NULL ;
 	jobject linkInstance = NULL;
-	jmethodID jMethod = NULL;
 
 	char *linkStr = malloc(sizeof(char) * (100));
 	sp_link_as_string(link, linkStr, 100);
 
 	jstring jString = (*env)->NewStringUTF(env, linkStr);
 
-	jMethod = (*env)->GetStaticMethodID(env, g_linkClass, "create", "(Ljava/lang/String;)Ljahspotify/media/Link;");
-
-	linkInstance = (*env)->CallStaticObjectMethod(env, g_linkClass, jMethod, jString);
+	linkInstance = (*env)->CallStaticObjectMethod(env, g_jni.link.clazz, g_jni.link.create, jString);
 
 	if (!linkInstance) {
 		log_error("jahspotify", "createJLinkInstance", "Could not create instance of jahspotify.media.Link");
@@ -618,11 +724,8 @@ jobject createJPlaylistInstance(JNIEnv *env, sp_link* link, const char* name, sp
 	jstring jString = (*env)->NewStringUTF(env, name);
 
 	jobject playlistInstance = NULL;
-	jmethodID jMethod = NULL;
 
-	jMethod = (*env)->GetStaticMethodID(env, g_playlistCLass, "create",
-			"(Ljahspotify/media/Link;Ljava/lang/String;Ljahspotify/media/Link;)Ljahspotify/media/Playlist;");
-	playlistInstance = (*env)->CallStaticObjectMethod(env, g_linkClass, jMethod, linkInstance, jString, imageLinkInstance);
+	playlistInstance = (*env)->CallStaticObjectMethod(env, g_jni.playlist.clazz, g_jni.playlist.create, linkInstance, jString, imageLinkInstance);
 
 	if (!playlistInstance) {
 		log_error("jahspotify", "createJPlaylistInstance", "Could not create instance of jahspotify.media.Playlist");
@@ -636,16 +739,9 @@ jobject createJPlaylistInstance(JNIEnv *env, sp_link* link, const char* name, sp
 }
 
 jobject createJTrackInstance(JNIEnv *env, sp_track *track) {
-	jclass jClass;
 	jobject trackInstance;
 
-	jClass = (*env)->FindClass(env, "jahspotify/media/Track");
-	if (jClass == NULL ) {
-		log_error("jahspotify", "createJTrackInstance", "Could not load jahnotify.media.Track");
-		return NULL ;
-	}
-
-	trackInstance = createInstanceFromJClass(env, jClass);
+	trackInstance = createInstance(env, g_jni.track.clazz, g_jni.track.ctor);
 	if (!trackInstance) {
 		log_error("jahspotify", "createJTrackInstance", "Could not create instance of jahspotify.media.Track");
 		return NULL ;
@@ -660,26 +756,17 @@ jobject createJTrackInstance(JNIEnv *env, sp_track *track) {
 }
 
 void populateJTrackInstance(JNIEnv *env, jobject trackInstance, sp_track *track) {
-	jclass jClass;
-
-	jClass = (*env)->FindClass(env, "jahspotify/media/Track");
-	if (jClass == NULL ) {
-		log_error("jahspotify", "populateJTrackInstance", "Could not load jahnotify.media.Track");
-		sp_track_release(track);
-		return ;
-	}
-
 	sp_link *trackLink = sp_link_create_from_track(track, 0);
 
 	if (trackLink) {
 		sp_link_add_ref(trackLink);
 		jobject trackJLink = createJLinkInstance(env, trackLink);
-		setObjectObjectField(env, trackInstance, "id", "Ljahspotify/media/Link;", trackJLink);
+		setObjectObjectField(env, trackInstance, g_jni.track.id, trackJLink);
 
-		setObjectStringField(env, trackInstance, "title", sp_track_name(track));
-		setObjectIntField(env, trackInstance, "length", sp_track_duration(track));
-		setObjectIntField(env, trackInstance, "popularity", sp_track_popularity(track));
-		setObjectIntField(env, trackInstance, "trackNumber", sp_track_index(track));
+		setObjectStringField(env, trackInstance, g_jni.track.title, sp_track_name(track));
+		setObjectIntField(env, trackInstance, g_jni.track.length, sp_track_duration(track));
+		setObjectIntField(env, trackInstance, g_jni.track.popularity, sp_track_popularity(track));
+		setObjectIntField(env, trackInstance, g_jni.track.trackNumber, sp_track_index(track));
 
 		sp_album *album = sp_track_album(track);
 		if (album) {
@@ -690,16 +777,8 @@ void populateJTrackInstance(JNIEnv *env, jobject trackInstance, sp_track *track)
 
 				jobject albumJLink = createJLinkInstance(env, albumLink);
 
-				jmethodID jMethod = (*env)->GetMethodID(env, jClass, "setAlbum", "(Ljahspotify/media/Link;)V");
-
-				if (jMethod == NULL ) {
-					log_error("jahspotify", "populateJTrackInstance", "Could not load method setAlbum(link) on class Track");
-					sp_track_release(track);
-					return ;
-				}
-
 				// set it on the track
-				(*env)->CallVoidMethod(env, trackInstance, jMethod, albumJLink);
+				(*env)->CallVoidMethod(env, trackInstance, g_jni.track.setAlbum, albumJLink);
 
 				sp_link_release(albumLink);
 
@@ -709,13 +788,7 @@ void populateJTrackInstance(JNIEnv *env, jobject trackInstance, sp_track *track)
 
 		int numArtists = sp_track_num_artists(track);
 		if (numArtists > 0) {
-			jmethodID jMethod = (*env)->GetMethodID(env, jClass, "addArtist", "(Ljahspotify/media/Link;)V");
-
-			if (jMethod == NULL ) {
-				log_error("jahspotify", "populateJTrackInstance", "Could not load method addArtist(link) on class Track");
-				sp_track_release(track);
-				return ;
-			}
+			jmethodID jMethod = g_jni.track.addArtist;
 
 			int i = 0;
 			for (i = 0; i < numArtists; i++) {
@@ -742,7 +815,7 @@ void populateJTrackInstance(JNIEnv *env, jobject trackInstance, sp_track *track)
 
 		sp_link_release(trackLink);
 	}
-	invokeVoidMethod_Z(env, trackInstance, "setLoaded", JNI_TRUE);
+	invokeVoidMethod_Z(env, trackInstance, g_jni.loadable.setLoaded, JNI_TRUE);
 	sp_track_release(track);
 }
 
@@ -789,21 +862,13 @@ void SP_CALLCONV albumBrowseCompleteCallback(sp_albumbrowse *result, void *userd
 }
 
 void populateJAlbumInstanceFromAlbumBrowse(JNIEnv *env, sp_album *album, sp_albumbrowse *albumBrowse, jobject albumInstance) {
-	jclass albumJClass;
-
 	sp_album_add_ref(album);
 	sp_albumbrowse_add_ref(albumBrowse);
 
-	albumJClass = (*env)->FindClass(env, "jahspotify/media/Album");
-	if (albumJClass == NULL ) {
-		log_error("jahspotify", "populateJAlbumInstanceFromAlbumBrowse", "Could not load jahnotify.media.Album");
-		return;
-	}
-
 	int numTracks = sp_albumbrowse_num_tracks(albumBrowse);
 	if (numTracks > 0) {
 		// Add each track to the album - also pass in the disk as need be
-		jmethodID addTrackJMethodID = (*env)->GetMethodID(env, albumJClass, "addTrack", "(ILjahspotify/media/Link;)V");
+		jmethodID addTrackJMethodID = g_jni.album.addTrack;
 		int i = 0;
 		for (i = 0; i < numTracks; i++) {
 			sp_track *track = sp_albumbrowse_track(albumBrowse, i);
@@ -825,7 +890,7 @@ void populateJAlbumInstanceFromAlbumBrowse(JNIEnv *env, sp_album *album, sp_albu
 	int numCopyrights = sp_albumbrowse_num_copyrights(albumBrowse);
 	if (numCopyrights > 0) {
 		// Add copyrights to album
-		jmethodID addCopyrightMethodID = (*env)->GetMethodID(env, albumJClass, "addCopyright", "(Ljava/lang/String;)V");
+		jmethodID addCopyrightMethodID = g_jni.album.addCopyright;
 		int i = 0;
 		for (i = 0; i < numCopyrights; i++) {
 			const char *copyright = sp_albumbrowse_copyright(albumBrowse, i);
@@ -839,7 +904,7 @@ void populateJAlbumInstanceFromAlbumBrowse(JNIEnv *env, sp_album *album, sp_albu
 
 	const char *review = sp_albumbrowse_review(albumBrowse);
 	if (review) {
-		setObjectStringField(env, albumInstance, "review", review);
+		setObjectStringField(env, albumInstance, g_jni.album.review, review);
 	}
 
 	sp_album_release(album);
@@ -849,16 +914,8 @@ void populateJAlbumInstanceFromAlbumBrowse(JNIEnv *env, sp_album *album, sp_albu
 
 jobject createJAlbumInstance(JNIEnv *env, sp_album *album, int browse) {
 	jobject albumInstance;
-	jclass albumJClass;
 
-	albumJClass = (*env)->FindClass(env, "jahspotify/media/Album");
-	if (albumJClass == NULL ) {
-		log_error("jahspotify", "createJAlbumInstance", "Could not load jahnotify.media.Album");
-		sp_album_release(album);
-		return NULL ;
-	}
-
-	albumInstance = createInstanceFromJClass(env, albumJClass);
+	albumInstance = createInstance(env, g_jni.album.clazz, g_jni.album.ctor);
 	if (!albumInstance) {
 		log_error("jahspotify", "createJAlbumInstance", "Could not create instance of jahspotify.media.Album");
 		sp_album_release(album);
@@ -880,27 +937,25 @@ void populateJAlbumInstance(JNIEnv *env, jobject albumInstance, sp_album *album,
 		sp_link_add_ref(albumLink);
 
 		jobject albumJLink = createJLinkInstance(env, albumLink);
-		setObjectObjectField(env, albumInstance, "id", "Ljahspotify/media/Link;", albumJLink);
+		setObjectObjectField(env, albumInstance, g_jni.album.id, albumJLink);
 
 		sp_link_release(albumLink);
 	}
 
-	setObjectStringField(env, albumInstance, "name", sp_album_name(album));
-	setObjectIntField(env, albumInstance, "year", sp_album_year(album));
+	setObjectStringField(env, albumInstance, g_jni.album.name, sp_album_name(album));
+	setObjectIntField(env, albumInstance, g_jni.album.year, sp_album_year(album));
 
 	sp_albumtype albumType = sp_album_type(album);
 
-	jclass albumTypeJClass = (*env)->FindClass(env, "jahspotify/media/AlbumType");
-	jmethodID jMethod = (*env)->GetStaticMethodID(env, albumTypeJClass, "fromOrdinal", "(I)Ljahspotify/media/AlbumType;");
-	jobject albumTypeEnum = (jobjectArray) (*env)->CallStaticObjectMethod(env, albumTypeJClass, jMethod, (int) albumType);
-	setObjectObjectField(env, albumInstance, "type", "Ljahspotify/media/AlbumType;", albumTypeEnum);
+	jobject albumTypeEnum = (*env)->CallStaticObjectMethod(env, g_jni.albumType.clazz, g_jni.albumType.fromOrdinal, (int) albumType);
+	setObjectObjectField(env, albumInstance, g_jni.album.type, albumTypeEnum);
 
 	sp_link *albumCoverLink = sp_link_create_from_album_cover(album, SP_IMAGE_SIZE_NORMAL);
 	if (albumCoverLink) {
 		sp_link_add_ref(albumCoverLink);
 
 		jobject albumCoverJLink = createJLinkInstance(env, albumCoverLink);
-		setObjectObjectField(env, albumInstance, "cover", "Ljahspotify/media/Link;", albumCoverJLink);
+		setObjectObjectField(env, albumInstance, g_jni.album.cover, albumCoverJLink);
 
 //		sp_image *albumCoverImage = sp_image_create_from_link(g_sess, albumCoverLink);
 //		if (albumCoverImage) {
@@ -921,7 +976,7 @@ void populateJAlbumInstance(JNIEnv *env, jobject albumInstance, sp_album *album,
 
 			jobject artistJLink = createJLinkInstance(env, artistLink);
 
-			setObjectObjectField(env, albumInstance, "artist", "Ljahspotify/media/Link;", artistJLink);
+			setObjectObjectField(env, albumInstance, g_jni.album.artist, artistJLink);
 
 			sp_link_release(artistLink);
 		}
@@ -932,7 +987,7 @@ void populateJAlbumInstance(JNIEnv *env, jobject albumInstance, sp_album *album,
 	if (browse)
 		sp_albumbrowse_create(g_sess, album, albumBrowseCompleteCallback, (*env)->NewGlobalRef(env, albumInstance));
 	else
-		invokeVoidMethod_Z(env, albumInstance, "setLoaded", JNI_TRUE);
+		invokeVoidMethod_Z(env, albumInstance, g_jni.loadable.setLoaded, JNI_TRUE);
 
 	sp_album_release(album);
 }
@@ -943,15 +998,8 @@ void populateJArtistInstanceFromArtistBrowse(JNIEnv *env, sp_artistbrowse *artis
 	sp_artistbrowse_add_ref(artistBrowse);
 
 	int numSimilarArtists = sp_artistbrowse_num_similar_artists(artistBrowse);
-	jclass jClass = (*env)->FindClass(env, "jahspotify/media/Artist");
 	if (numSimilarArtists > 0) {
-		jmethodID jMethod = (*env)->GetMethodID(env, jClass, "addSimilarArtist", "(Ljahspotify/media/Link;)V");
-
-		if (jMethod == NULL ) {
-			log_error("jahspotify", "populateJArtistInstanceFromArtistBrowse", "Could not load method addSimilarArtist(link) on class Artist");
-			sp_artistbrowse_release(artistBrowse);
-			return;
-		}
+		jmethodID jMethod = g_jni.artist.addSimilarArtist;
 
 		// Load the artist links
 		int count = 0;
@@ -981,13 +1029,7 @@ void populateJArtistInstanceFromArtistBrowse(JNIEnv *env, sp_artistbrowse *artis
 	int numPortraits = sp_artistbrowse_num_portraits(artistBrowse);
 
 	if (numPortraits > 0) {
-		jmethodID jMethod = (*env)->GetMethodID(env, jClass, "addPortrait", "(Ljahspotify/media/Link;)V");
-
-		if (jMethod == NULL ) {
-			log_error("jahspotify", "populateJArtistInstanceFromArtistBrowse", "Could not load method addAlbum(link) on class Artist");
-			sp_artistbrowse_release(artistBrowse);
-			return;
-		}
+		jmethodID jMethod = g_jni.artist.addPortrait;
 
 		int count = 0;
 
@@ -1032,13 +1074,7 @@ void populateJArtistInstanceFromArtistBrowse(JNIEnv *env, sp_artistbrowse *artis
 
 	int numAlbums = sp_artistbrowse_num_albums(artistBrowse);
 	if (numAlbums > 0) {
-		jmethodID jMethod = (*env)->GetMethodID(env, jClass, "addAlbum", "(Ljahspotify/media/Link;)V");
-
-		if (jMethod == NULL ) {
-			log_error("jahspotify", "populateJArtistInstanceFromArtistBrowse", "Could not load method addAlbum(link) on class Artist");
-			sp_artistbrowse_release(artistBrowse);
-			return;
-		}
+		jmethodID jMethod = g_jni.artist.addAlbum;
 
 		int count = 0;
 		for (count = 0; count < numAlbums; count++) {
@@ -1060,13 +1096,7 @@ void populateJArtistInstanceFromArtistBrowse(JNIEnv *env, sp_artistbrowse *artis
 
 	int numTopTracks = sp_artistbrowse_num_tophit_tracks(artistBrowse);
 	if (numTopTracks > 0) {
-		jmethodID jMethod = (*env)->GetMethodID(env, jClass, "addTopHitTrack", "(Ljahspotify/media/Link;)V");
-
-		if (jMethod == NULL ) {
-			log_error("jahspotify", "populateJArtistInstanceFromArtistBrowse", "Could not load method addTopHitTrack(link) on class Artist");
-			sp_artistbrowse_release(artistBrowse);
-			return;
-		}
+		jmethodID jMethod = g_jni.artist.addTopHitTrack;
 
 		int count = 0;
 		for (count = 0; count < numTopTracks; count++) {
@@ -1089,7 +1119,7 @@ void populateJArtistInstanceFromArtistBrowse(JNIEnv *env, sp_artistbrowse *artis
 	const char *bios = sp_artistbrowse_biography(artistBrowse);
 
 	if (bios) {
-		setObjectStringField(env, artistInstance, "bios", bios);
+		setObjectStringField(env, artistInstance, g_jni.artist.bios, bios);
 	}
 
 	sp_artistbrowse_release(artistBrowse);
@@ -1100,15 +1130,7 @@ jobject createJArtistInstance(JNIEnv *env, sp_artist *artist, int browse) {
 
 	sp_artist_add_ref(artist);
 
-	jclass jClass = (*env)->FindClass(env, "jahspotify/media/Artist");
-
-	if (jClass == NULL ) {
-		log_error("jahspotify", "createJArtistInstance", "Could not load jahnotify.media.Artist");
-		sp_artist_release(artist);
-		return NULL ;
-	}
-
-	artistInstance = createInstanceFromJClass(env, jClass);
+	artistInstance = createInstance(env, g_jni.artist.clazz, g_jni.artist.ctor);
 
 	if (sp_artist_is_loaded(artist))
 		populateJArtistInstance(env, artistInstance, artist, browse);
@@ -1125,17 +1147,17 @@ void populateJArtistInstance(JNIEnv *env, jobject artistInstance, sp_artist *art
 		sp_link_add_ref(artistLink);
 
 		jobject artistJLink = createJLinkInstance(env, artistLink);
-		setObjectObjectField(env, artistInstance, "id", "Ljahspotify/media/Link;", artistJLink);
+		setObjectObjectField(env, artistInstance, g_jni.artist.id, artistJLink);
 
 		sp_link_release(artistLink);
 
-		setObjectStringField(env, artistInstance, "name", sp_artist_name(artist));
+		setObjectStringField(env, artistInstance, g_jni.artist.name, sp_artist_name(artist));
 
 		if (browse > 0)
 			sp_artistbrowse_create(g_sess, artist, browse == 1 ? SP_ARTISTBROWSE_NO_TRACKS : SP_ARTISTBROWSE_NO_ALBUMS, artistBrowseCompleteCallback,
 					(*env)->NewGlobalRef(env, artistInstance));
 		else
-			invokeVoidMethod_Z(env, artistInstance, "setLoaded", JNI_TRUE);
+			invokeVoidMethod_Z(env, artistInstance, g_jni.loadable.setLoaded, JNI_TRUE);
 	}
 
 	sp_artist_release(artist);
@@ -1143,16 +1165,9 @@ void populateJArtistInstance(JNIEnv *env, jobject artistInstance, sp_artist *art
 
 jobject createJPlaylist(JNIEnv *env, jobject playlistInstance, sp_playlist *playlist) {
 	jmethodID jMethod;
-	jclass jClass;
 
-	jClass = (*env)->FindClass(env, "jahspotify/media/Playlist");
 	if (!playlistInstance) {
-		if (jClass == NULL ) {
-			log_error("jahspotify", "createJPlaylist", "Could not load jahnotify.media.Playlist");
-			return NULL ;
-		}
-
-		playlistInstance = createInstanceFromJClass(env, jClass);
+		playlistInstance = createInstance(env, g_jni.playlist.clazz, g_jni.playlist.ctor);
 		if (!playlistInstance) {
 			log_error("jahspotify", "createJPlaylist", "Could not create instance of jahspotify.media.Playlist");
 			return NULL ;
@@ -1168,28 +1183,22 @@ jobject createJPlaylist(JNIEnv *env, jobject playlistInstance, sp_playlist *play
 	sp_link *playlistLink = sp_link_create_from_playlist(playlist);
 	if (playlistLink) {
 		jobject playlistJLink = createJLinkInstance(env, playlistLink);
-		setObjectObjectField(env, playlistInstance, "id", "Ljahspotify/media/Link;", playlistJLink);
+		setObjectObjectField(env, playlistInstance, g_jni.playlist.id, playlistJLink);
 		sp_link_release(playlistLink);
 	}
 
-	setObjectStringField(env, playlistInstance, "name", sp_playlist_name(playlist));
+	setObjectStringField(env, playlistInstance, g_jni.playlist.name, sp_playlist_name(playlist));
 	sp_user *owner = sp_playlist_owner(playlist);
 	if (owner) {
-		setObjectStringField(env, playlistInstance, "author", sp_user_display_name(owner));
+		setObjectStringField(env, playlistInstance, g_jni.playlist.author, sp_user_display_name(owner));
 		sp_user_release(owner);
 	}
 
-	// Lookup the method now - saves us looking it up for each iteration of the loop
-	jMethod = (*env)->GetMethodID(env, jClass, "addTrack", "(Ljahspotify/media/Link;)V");
-	if (jMethod == NULL ) {
-		log_error("jahspotify", "createJPlaylist", "Could not load method addTrack(track) on class Playlist");
-		return NULL ;
-	}
-	jmethodID clearMethod = (*env)->GetMethodID(env, jClass, "clear", "()V");
-	(*env)->CallVoidMethod(env, playlistInstance, clearMethod);
+	jMethod = g_jni.playlist.addTrack;
+	(*env)->CallVoidMethod(env, playlistInstance, g_jni.playlist.clear);
 
 	int numTracks = sp_playlist_num_tracks(playlist);
-	setObjectIntField(env, playlistInstance, "numTracks", numTracks);
+	setObjectIntField(env, playlistInstance, g_jni.playlist.numTracks, numTracks);
 
 	int trackCounter = 0;
 	for (trackCounter = 0; trackCounter < numTracks; trackCounter++) {
@@ -1209,7 +1218,7 @@ jobject createJPlaylist(JNIEnv *env, jobject playlistInstance, sp_playlist *play
 		}
 	}
 	if (sp_playlist_is_loaded(playlist)) {
-		invokeVoidMethod_Z(env, playlistInstance, "setLoaded", JNI_TRUE);
+		invokeVoidMethod_Z(env, playlistInstance, g_jni.loadable.setLoaded, JNI_TRUE);
 		signalPlaylistLoaded(playlistInstance);
 	}
 	return playlistInstance;
@@ -1321,6 +1330,22 @@ JNIEXPORT jobject JNICALL Java_jahspotify_impl_JahSpotifyImpl_retrievePlaylist(J
 	return playlistInstance;
 }
 
+JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeWatchPlaylist(JNIEnv *env, jobject obj, jstring uri) {
+	const char *nativeUri = (*env)->GetStringUTFChars(env, uri, NULL );
+	sp_link *link = sp_link_create_from_string(nativeUri);
+
+	if (link) {
+		// The reference of the playlist is kept, so it stays watched for the rest of the session.
+		sp_playlist *playlist = sp_playlist_create(g_sess, link);
+		if (playlist) sp_playlist_add_callbacks(playlist, &pl_watch_callbacks, NULL );
+		sp_link_release(link);
+	} else {
+		log_warn("jahspotify", "nativeWatchPlaylist", "Could not create link for: %s", nativeUri);
+	}
+
+	(*env)->ReleaseStringUTFChars(env, uri, nativeUri);
+}
+
 static void SP_CALLCONV toplistCallback(sp_toplistbrowse *result, void *userdata) {
 	signalToplistComplete(result, (jobject) userdata);
 }
@@ -1331,8 +1356,41 @@ JNIEXPORT jobject JNICALL Java_jahspotify_impl_JahSpotifyImpl_retrieveTopList(JN
 }
 
 JNIEXPORT jobjectArray JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeReadTracks(JNIEnv *env, jobject obj, jobjectArray uris) {
-	// For each track, read out the info and populate all of the info in the Track instance
-	return NULL ;
+	jsize numUris = uris ? (*env)->GetArrayLength(env, uris) : 0;
+	jobjectArray tracks = (*env)->NewObjectArray(env, numUris, g_jni.track.clazz, NULL );
+	jsize i;
+
+	if (!tracks) {
+		log_error("jahspotify", "nativeReadTracks", "Could not create track array of size %d", numUris);
+		return NULL ;
+	}
+
+	// For each track, create the Track instance. Loaded tracks are populated directly, the others are filled in by checkLoaded.
+	for (i = 0; i < numUris; i++) {
+		// Populating a track creates a local reference per artist and album link, drop them after every track.
+		if ((*env)->PushLocalFrame(env, 16) != 0) break;
+
+		jstring uri = (jstring) (*env)->GetObjectArrayElement(env, uris, i);
+		const char *nativeUri = uri ? (*env)->GetStringUTFChars(env, uri, NULL ) : NULL;
+		sp_link *link = nativeUri ? sp_link_create_from_string(nativeUri) : NULL;
+
+		if (link) {
+			sp_track *track = sp_link_as_track(link);
+			if (track) {
+				sp_track_add_ref(track);
+				jobject trackInstance = createJTrackInstance(env, track);
+				if (trackInstance) (*env)->SetObjectArrayElement(env, tracks, i, trackInstance);
+			}
+			sp_link_release(link);
+		} else {
+			log_warn("jahspotify", "nativeReadTracks", "Could not create link for: %s", nativeUri ? nativeUri : "null");
+		}
+
+		if (nativeUri) (*env)->ReleaseStringUTFChars(env, uri, nativeUri);
+		(*env)->PopLocalFrame(env, NULL );
+	}
+
+	return tracks;
 }
 
 JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativePause(JNIEnv *env, jobject obj) {
@@ -1366,7 +1424,7 @@ JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_readImage(JNIEnv *env
 				log_debug("jahspotify", "readImage", "Image already loaded, dont wait for callback.");
 				signalImageLoaded(image, imageInstance);
 			} else {
-				sp_image_add_load_callback(image, imageLoadedCallback, (*env)->NewGlobalRef(env, imageInstance));
+				sp_image_add_load_callback(image, imageLoadedCallback, imageInstance);
 			}
 		}
 		sp_link_release(imageLink);
@@ -1382,120 +1440,209 @@ JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeTrackSeek(JNIEn
 	sp_session_player_seek(g_sess, offset);
 }
 
+static void releaseNextTrack();
+
 JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeStopTrack(JNIEnv *env, jobject obj) {
 	log_debug("jahspotify", "nativeStopTrack", "Stopping playback");
+	// A play which is parked until its track loaded should not start after the stop.
+	__sync_add_and_fetch(&g_playRequest, 1);
+	g_awaitingFirstAudio = 0;
+	releaseNextTrack();
 	sp_session_player_unload(g_sess);
-  sp_track_release(g_currenttrack);
-  g_currenttrack = NULL;
+	if (g_currenttrack) sp_track_release(g_currenttrack);
+	g_currenttrack = NULL;
 }
 
 JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_setBitrate(JNIEnv * env, jobject obj, jint rate) {
 	sp_session_preferred_bitrate(g_sess, rate);
 }
 
-JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativePlayTrack(JNIEnv *env, jobject obj, jstring uri) {
-	const char *nativeURI = NULL;
+JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeSetVolumeNormalization(JNIEnv * env, jobject obj, jboolean normalize) {
+	sp_session_set_volume_normalization(g_sess, normalize == JNI_TRUE);
+}
 
-	nativeURI = (*env)->GetStringUTFChars(env, uri, NULL );
+/**
+ * Hands a loaded track to the player and starts playing it. Takes over the reference the caller holds on the track.
+ *
+ * @param requestedNanos When the play was requested, for the time to first audio. 0 for a gapless switch to a
+ *        prefetched track, which isn't a time to first audio sample.
+ */
+static int playLoadedTrack(sp_track *t, const char *uri, jlong requestedNanos) {
+	if (sp_track_error(t) != SP_ERROR_OK) {
+		log_debug("jahspotify", "playLoadedTrack", "Error with track: %s", sp_error_message(sp_track_error(t)));
+		sp_track_release(t);
+		return -1;
+	}
 
-	log_debug("jahspotify", "nativePlayTrack", "Initiating play: %s", nativeURI);
+	log_debug("jahspotify", "playLoadedTrack", "track name: %s duration: %d", sp_track_name(t), sp_track_duration(t));
 
-	// For each track, read out the info and populate all of the info in the Track instance
-	sp_link *link = sp_link_create_from_string(nativeURI);
-	if (link) {
-		sp_track *t = sp_link_as_track(link);
+	if (g_currenttrack == t) {
+		log_warn("jahspotify", "playLoadedTrack", "Same track, will not play");
+		sp_track_release(t);
+		return -1;
+	}
 
-		if (!t) {
-			log_error("jahspotify", "nativePlayTrack", "No track from link");
-			return -1;
-		}
+	// If there is one playing, unload that now
+	if (g_currenttrack) {
+		sp_session_player_unload(g_sess);
+		sp_track_release(g_currenttrack);
+		g_currenttrack = NULL;
+	}
 
-		int count = 0;
-		while (!sp_track_is_loaded(t) && count < 4) {
-			usleep(250);
-			count++;
-		}
+	sp_error result = sp_session_player_load(g_sess, t);
 
-		if (count == 4) {
-			log_warn("jahspotify", "nativePlayTrack", "Track not loaded after 1 second, will have to wait for callback");
-			return -1;
-		}
+	if (sp_track_error(t) != SP_ERROR_OK) {
+		log_error("jahspotify", "playLoadedTrack", "Issue loading track: %s", sp_error_message((sp_track_error(t))));
+		sp_track_release(t);
+		return -1;
+	}
 
-		if (sp_track_error(t) != SP_ERROR_OK) {
-			log_debug("jahspotify", "nativePlayTrack", "Error with track: %s", sp_error_message(sp_track_error(t)));
-			return -1;
-		}
+	log_debug("jahspotify", "playLoadedTrack", "Track loaded: %s", (result == SP_ERROR_OK ? "yes" : "no"));
 
-		log_debug("jahspotify", "nativePlayTrack", "track name: %s duration: %d", sp_track_name(t), sp_track_duration(t));
+	// Update the global reference
+	g_currenttrack = t;
 
-		if (g_currenttrack == t) {
-			log_warn("jahspotify", "nativePlayTrack", "Same track, will not play");
-			return -1;
-		}
+	if (requestedNanos) {
+		g_firstAudioRequestedNanos = requestedNanos;
+		__sync_synchronize();
+		g_awaitingFirstAudio = 1;
+	} else {
+		g_awaitingFirstAudio = 0;
+	}
 
-		// If there is one playing, unload that now
-		if (g_currenttrack && t != g_currenttrack) {
-			// Unload the current track now
-			sp_session_player_unload(g_sess);
+	// Start playing the next track
+	sp_session_player_play(g_sess, 1);
 
-			sp_link *currentTrackLink = sp_link_create_from_track(g_currenttrack, 0);
-			char *currentTrackLinkStr = NULL;
-			if (currentTrackLink) {
-				currentTrackLinkStr = calloc(1, sizeof(char) * (100));
-				sp_link_as_string(currentTrackLink, currentTrackLinkStr, 100);
-				sp_link_release(currentTrackLink);
-			}
+	log_debug("jahspotify", "playLoadedTrack", "Playing track");
 
-			if (currentTrackLinkStr) {
-				free(currentTrackLinkStr);
-			}
+	signalTrackStarted(uri);
+	return 0;
+}
 
-			sp_track_release(g_currenttrack);
+/**
+ * Plays a parked track which finished loading, unless another play was requested in the meantime.
+ */
+static void startParkedPlay(media *parked) {
+	if (parked->playRequest != g_playRequest) {
+		log_debug("jahspotify", "startParkedPlay", "Not playing %s, another track was requested since", parked->playUri);
+		sp_track_release(parked->track);
+	} else if (playLoadedTrack(parked->track, parked->playUri, parked->playRequestedNanos) != 0) {
+		log_error("jahspotify", "startParkedPlay", "Error starting play of %s", parked->playUri);
+	}
+	free(parked->playUri);
+}
 
-			g_currenttrack = NULL;
+static void addWaiter(void *key, media *lmedia);
 
-		}
+/**
+ * Starts playing the track. A track which isn't loaded yet is parked with the pending loads
+ * and started from the main loop when it has loaded.
+ *
+ * @return 0 when the track started playing, 1 when it was parked and -1 on errors.
+ */
+JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativePlayTrack(JNIEnv *env, jobject obj, jstring uri) {
+	jlong requested = monotonicNanos();
+	int request = __sync_add_and_fetch(&g_playRequest, 1);
+	int result = -1;
+	g_playRequests++;
+	releaseNextTrack();
 
-		sp_track_add_ref(t);
+	const char *nativeURI = (*env)->GetStringUTFChars(env, uri, NULL );
 
-		sp_error result = sp_session_player_load(g_sess, t);
+	log_debug("jahspotify", "nativePlayTrack", "Initiating play: %s", nativeURI);
 
-		if (sp_track_error(t) != SP_ERROR_OK) {
-			log_error("jahspotify", "nativePlayTrack", "Issue loading track: %s", sp_error_message((sp_track_error(t))));
-			goto fail;
-		}
+	sp_link *link = sp_link_create_from_string(nativeURI);
+	if (!link) {
+		log_error("jahspotify", "nativePlayTrack", "Unable to load link at this point");
+		goto exit;
+	}
 
-		log_debug("jahspotify", "nativePlayTrack", "Track loaded: %s", (result == SP_ERROR_OK ? "yes" : "no"));
+	sp_track *t = sp_link_as_track(link);
+	if (!t) {
+		log_error("jahspotify", "nativePlayTrack", "No track from link");
+		sp_link_release(link);
+		goto exit;
+	}
+	sp_track_add_ref(t);
+	sp_link_release(link);
+
+	if (!sp_track_is_loaded(t)) {
+		media *parked = calloc(1, sizeof *parked);
+		char *playUri = strdup(nativeURI);
+		if (!parked || !playUri) {
+			log_error("jahspotify", "nativePlayTrack", "Could not park the play request");
+			free(parked);
+			free(playUri);
+			sp_track_release(t);
+			goto exit;
+		}
+		parked->track = t;
+		parked->playUri = playUri;
+		parked->playRequest = request;
+		parked->playRequestedNanos = requested;
+
+		log_debug("jahspotify", "nativePlayTrack", "Track not loaded yet, it will be played once it is");
+		g_parkedPlays++;
+		addWaiter(t, parked);
+		result = 1;
+		goto exit;
+	}
 
-		// Update the global reference
-		g_currenttrack = t;
+	result = playLoadedTrack(t, nativeURI, requested);
 
-		// Start playing the next track
-		sp_session_player_play(g_sess, 1);
+	exit:
+	if (result < 0) log_error("jahspotify", "nativePlayTrack", "Error starting play");
+	if (nativeURI) (*env)->ReleaseStringUTFChars(env, uri, (char *) nativeURI);
+	return result;
+}
 
-		log_debug("jahspotify", "nativePlayTrack", "Playing track");
+static void releaseNextTrack() {
+	if (g_nextTrack) sp_track_release(g_nextTrack);
+	free(g_nextTrackUri);
+	g_nextTrack = NULL;
+	g_nextTrackUri = NULL;
+}
 
-		sp_link_release(link);
+/**
+ * Asks the playback listener for the track after the current one and lets libspotify start loading it into its cache.
+ *
+ * Called from the main loop when the start_playback() callback has set g_preload_do.
+ */
+static void prefetchNextTrack() {
+	releaseNextTrack();
+
+	char *uri = retrieveNextTrackToPreload();
+	if (!uri) return;
+
+	sp_link *link = sp_link_create_from_string(uri);
+	sp_track *t = link ? sp_link_as_track(link) : NULL;
+	if (!t) {
+		log_error("jahspotify", "prefetchNextTrack", "No track from link: %s", uri);
+		if (link) sp_link_release(link);
+		free(uri);
+		return;
+	}
+	sp_track_add_ref(t);
+	sp_link_release(link);
 
-		signalTrackStarted(nativeURI);
+	g_nextTrack = t;
+	g_nextTrackUri = uri;
 
-		goto exit;
+	sp_error error = sp_session_player_prefetch(g_sess, t);
+	if (error != SP_ERROR_OK) {
+		log_debug("jahspotify", "prefetchNextTrack", "Could not prefetch %s: %s", uri, sp_error_message(error));
 	} else {
-		log_error("jahspotify", "nativePlayTrack", "Unable to load link at this point");
-		goto fail;
+		log_debug("jahspotify", "prefetchNextTrack", "Prefetching %s", uri);
 	}
-
-	goto exit;
-
-	fail: log_error("jahspotify", "nativePlayTrack", "Error starting play");
-
-	exit: if (nativeURI) (*env)->ReleaseStringUTFChars(env, uri, (char *) nativeURI);
-	return 0;
 }
 
 /**
  * A track has ended. Remove it from the playlist.
  *
+ * When the next track was prefetched and has loaded it is started right away, before the end of the
+ * previous track is signalled, so there is no gap between the two. The playback listener is asked for
+ * the next track again first, a prefetched track which isn't next anymore is dropped.
+ *
  * Called from the main loop when the music_delivery() callback has set g_playback_done.
  */
 static void track_ended(void) {
@@ -1510,11 +1657,33 @@ static void track_ended(void) {
 			sp_link_release(link);
 		}
 
-		sp_session_player_unload(g_sess);
-
-		sp_track_release(g_currenttrack);
+		int switched = 0;
+		if (g_nextTrack && sp_track_is_loaded(g_nextTrack)) {
+			// The queue can have changed since the track was prefetched, only continue if it is still the next one.
+			char *wanted = retrieveNextTrackToPreload();
+			int stillNext = wanted && strcmp(wanted, g_nextTrackUri) == 0;
+			free(wanted);
+
+			if (stillNext) {
+				sp_track *next = g_nextTrack;
+				char *nextUri = g_nextTrackUri;
+				g_nextTrack = NULL;
+				g_nextTrackUri = NULL;
+
+				log_debug("jahspotify", "track_ended", "Continuing with prefetched track %s", nextUri);
+				switched = playLoadedTrack(next, nextUri, 0) == 0;
+				free(nextUri);
+			} else {
+				log_debug("jahspotify", "track_ended", "Prefetched track %s is not the next track anymore", g_nextTrackUri);
+				releaseNextTrack();
+			}
+		}
 
-		g_currenttrack = NULL;
+		if (!switched && g_currenttrack) {
+			sp_session_player_unload(g_sess);
+			sp_track_release(g_currenttrack);
+			g_currenttrack = NULL;
+		}
 
 		signalTrackEnded(trackLinkStr, JNI_FALSE);
 
@@ -1548,7 +1717,6 @@ JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeInitialize(JNIE
 		return 1;
 	}
 	g_sess = sp;
-	sp_session_set_volume_normalization(g_sess, 1);
 	log_debug("jahspotify", "Java_jahspotify_impl_JahSpotifyImpl_initialize", "Session created 0x%x", sp);
 
 	pthread_mutex_lock(&g_notify_mutex);
@@ -1557,7 +1725,7 @@ JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeInitialize(JNIE
 	for (;;) {
 		if (next_timeout == 0) {
 			signalInitialized(1);
-			while (!g_notify_do && !g_playback_done)
+			while (!g_notify_do && !g_playback_done && !g_preload_do)
 				pthread_cond_wait(&g_notify_cond, &g_notify_mutex);
 		} else {
 			struct timespec ts;
@@ -1582,6 +1750,18 @@ JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeInitialize(JNIE
 		g_notify_do = 0;
 		pthread_mutex_unlock(&g_notify_mutex);
 
+		// Run the calls other threads queued for libspotify.
+		(*env)->CallVoidMethod(env, obj, g_jni.jahSpotifyImpl.processCommands);
+		if ((*env)->ExceptionCheck(env)) {
+			(*env)->ExceptionDescribe(env);
+			(*env)->ExceptionClear(env);
+		}
+
+		if (g_preload_do) {
+			g_preload_do = 0;
+			prefetchNextTrack();
+		}
+
 		if (g_playback_done) {
 			track_ended();
 			g_playback_done = 0;
@@ -1603,12 +1783,14 @@ JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeInitialize(JNIE
 		do {
 			sp_session_process_events(sp, &next_timeout);
 		} while (next_timeout == 0);
+		checkLoadedIfUpdated();
 
 		if (g_stop) break;
 		pthread_mutex_lock(&g_notify_mutex);
 	}
 
 	log_debug("jahspotify", "Java_jahspotify_impl_JahSpotifyImpl_initialize", "Cleaning up.");
+	releaseNextTrack();
 	sp_session_release(g_sess);
 
 	if (nativeCacheFolder) (*env)->ReleaseStringUTFChars(env, cacheFolder, nativeCacheFolder);
@@ -1664,67 +1846,250 @@ JNIEXPORT jint JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeDestroy(JNIEnv
 }
 
 
+/**
+ * The pending loads are indexed by the native pointer of the track, album or artist
+ * they wait for. Every indexed object can have several waiting Java instances, so a
+ * sweep only asks libspotify once per object. The objects are also kept in a dense
+ * array so a sweep does not have to walk the empty buckets.
+ */
+static pending_load **g_pendingBuckets = NULL;
+static int g_pendingBucketCount = 0;
+static pending_load **g_pending = NULL;
+static int g_pendingCount = 0;
+static int g_pendingCapacity = 0;
+
+static int g_pendingMax = 0;
+static jlong g_pendingWaiters = 0;
+static jlong g_loadsCompleted = 0;
+static jlong g_checkLoadedCalls = 0;
+static jlong g_checkLoadedNanos = 0;
+static jlong g_checkLoadedMaxNanos = 0;
+
+static jlong monotonicNanos() {
+#if _POSIX_TIMERS > 0
+	struct timespec ts;
+	clock_gettime(CLOCK_MONOTONIC, &ts);
+	return (jlong) ts.tv_sec * 1000000000LL + ts.tv_nsec;
+#else
+	struct timeval tv;
+	gettimeofday(&tv, NULL );
+	return (jlong) tv.tv_sec * 1000000000LL + (jlong) tv.tv_usec * 1000;
+#endif
+}
+
+static int pendingBucket(void *key, int bucketCount) {
+	size_t h = (size_t) key;
+	h ^= h >> 4;
+	h *= 0x9E3779B1u;
+	h ^= h >> 16;
+	return (int) (h & (size_t) (bucketCount - 1));
+}
+
+/**
+ * Grows the bucket array so the table stays below a load factor of 3/4.
+ * Must be called with g_loading_mutex held.
+ */
+static int growPendingBuckets() {
+	int newCount = g_pendingBucketCount ? g_pendingBucketCount * 2 : 64;
+	pending_load **buckets = calloc(newCount, sizeof *buckets);
+	if (!buckets) return 0;
+
+	int i;
+	for (i = 0; i < g_pendingCount; i++) {
+		pending_load *entry = g_pending[i];
+		int bucket = pendingBucket(entry->key, newCount);
+		entry->nextInBucket = buckets[bucket];
+		buckets[bucket] = entry;
+	}
+	free(g_pendingBuckets);
+	g_pendingBuckets = buckets;
+	g_pendingBucketCount = newCount;
+	return 1;
+}
+
+/**
+ * Removes an entry from the index and the dense array. Must be called with g_loading_mutex held.
+ */
+static void removePending(pending_load *entry) {
+	pending_load **link = &g_pendingBuckets[pendingBucket(entry->key, g_pendingBucketCount)];
+	while (*link != entry)
+		link = &(*link)->nextInBucket;
+	*link = entry->nextInBucket;
+
+	g_pendingCount--;
+	if (entry->slot != g_pendingCount) {
+		g_pending[entry->slot] = g_pending[g_pendingCount];
+		g_pending[entry->slot]->slot = entry->slot;
+	}
+	g_pending[g_pendingCount] = NULL;
+}
+
+static int isPendingLoaded(media *waiter) {
+	if (waiter->track) return sp_track_is_loaded(waiter->track);
+	if (waiter->artist) return sp_artist_is_loaded(waiter->artist);
+	if (waiter->album) return sp_album_is_loaded(waiter->album);
+	return 1;
+}
+
 void addLoading(jobject javainstance, sp_track* track, sp_album* album, sp_artist* artist, int browse) {
-	pthread_mutex_lock(&g_loading_mutex);
+	void *key = track ? (void*) track : album ? (void*) album : (void*) artist;
 
-	media *lmedia = malloc(sizeof *lmedia);
-	lmedia->prev = NULL;
-	lmedia->next = loading;
+	media *lmedia = calloc(1, sizeof *lmedia);
 	lmedia->javainstance = javainstance;
 	lmedia->track = track;
 	lmedia->album = album;
 	lmedia->artist = artist;
 	lmedia->browse = browse;
 
-	if (loading != NULL)
-		loading->prev = lmedia;
-	loading = lmedia;
+	addWaiter(key, lmedia);
+}
+
+/**
+ * Adds the waiter to the pending load of the key, the entry is created when it's the first waiter.
+ */
+static void addWaiter(void *key, media *lmedia) {
+	pthread_mutex_lock(&g_loading_mutex);
 
+	if (g_pendingBucketCount == 0 || (g_pendingCount + 1) * 4 > g_pendingBucketCount * 3) {
+		if (!growPendingBuckets() && g_pendingBucketCount == 0) goto fail;
+	}
+
+	pending_load *entry = g_pendingBuckets[pendingBucket(key, g_pendingBucketCount)];
+	while (entry && entry->key != key)
+		entry = entry->nextInBucket;
+
+	if (!entry) {
+		if (g_pendingCount == g_pendingCapacity) {
+			int newCapacity = g_pendingCapacity ? g_pendingCapacity * 2 : 64;
+			pending_load **pending = realloc(g_pending, newCapacity * sizeof *pending);
+			if (!pending) goto fail;
+			g_pending = pending;
+			g_pendingCapacity = newCapacity;
+		}
+
+		entry = malloc(sizeof *entry);
+		if (!entry) goto fail;
+		entry->key = key;
+		entry->waiters = NULL;
+		entry->slot = g_pendingCount;
+
+		int bucket = pendingBucket(key, g_pendingBucketCount);
+		entry->nextInBucket = g_pendingBuckets[bucket];
+		g_pendingBuckets[bucket] = entry;
+		g_pending[g_pendingCount++] = entry;
+		if (g_pendingCount > g_pendingMax) g_pendingMax = g_pendingCount;
+	}
+
+	lmedia->next = entry->waiters;
+	entry->waiters = lmedia;
+	g_pendingWaiters++;
+
+	pthread_mutex_unlock(&g_loading_mutex);
+
+	// The object might have finished loading between the is_loaded check of the caller and now, make sure the next sweep sees it.
+	__sync_fetch_and_add(&g_loading_generation, 1);
+	return;
+
+fail:
 	pthread_mutex_unlock(&g_loading_mutex);
+	log_error("jahspotify", "addWaiter", "Could not allocate a pending load entry");
+	if (lmedia->playUri) {
+		sp_track_release(lmedia->track);
+		free(lmedia->playUri);
+	}
+	free(lmedia);
+}
+
+/**
+ * Sweeps the pending loads when new metadata arrived since the last sweep.
+ * Called from the main thread after the libspotify events have been processed.
+ */
+static void checkLoadedIfUpdated() {
+	int generation = g_loading_generation;
+	if (generation == g_checked_generation) return;
+	g_checked_generation = generation;
+	checkLoaded();
 }
 
 void checkLoaded() {
-	pthread_mutex_lock(&g_loading_mutex);
+	jlong started = monotonicNanos();
+	media *retired = NULL;
 
+	// Without an environment the waiters can't be filled in, leave everything pending for the next sweep.
 	JNIEnv* env = NULL;
+	if (!beginCallback((JNIEnv*) &env)) {
+		log_error("jahspotify", "checkLoaded", "Could not retrieve the environment, keeping loaded media for the next sweep");
+		__sync_fetch_and_add(&g_loading_generation, 1);
+		return;
+	}
 
-	media *checkload = loading;
-	while (checkload != NULL) {
-
-		if (  (checkload->track && sp_track_is_loaded(checkload->track))
-		   || (checkload->artist && sp_artist_is_loaded(checkload->artist))
-		   || (checkload->album && sp_album_is_loaded(checkload->album))) {
-			if (loading == checkload) { // First
-				loading = checkload->next;
-				if (loading != NULL)
-					loading->prev = NULL;
-			} else { // Any other.
-				if (checkload->prev != NULL)
-					checkload->prev->next = checkload->next;
-				if (checkload->next != NULL)
-					checkload->next->prev = checkload->prev;
-			}
+	// Unlink every loaded object and its waiters in one pass, the Java instances are populated after the lock is released.
+	pthread_mutex_lock(&g_loading_mutex);
+	int i = g_pendingCount;
+	while (i-- > 0) {
+		pending_load *entry = g_pending[i];
+		if (!isPendingLoaded(entry->waiters)) continue;
+
+		removePending(entry);
+
+		media *last = entry->waiters;
+		while (last->next)
+			last = last->next;
+		last->next = retired;
+		retired = entry->waiters;
+		free(entry);
+	}
+	pthread_mutex_unlock(&g_loading_mutex);
 
-			if (!env && !retrieveEnv((JNIEnv*) &env)) return;
+	while (retired) {
+		media *checkload = retired;
+		retired = retired->next;
 
-			if (checkload->track) {
-				populateJTrackInstance(env, checkload->javainstance, checkload->track);
-			} else if (checkload->artist) {
-				populateJArtistInstance(env, checkload->javainstance, checkload->artist, checkload->browse);
-			} else if (checkload->album) {
-				populateJAlbumInstance(env, checkload->javainstance, checkload->album, checkload->browse);
-			}
-			(*env)->DeleteGlobalRef(env, checkload->javainstance);
+		if (checkload->playUri) {
+			startParkedPlay(checkload);
+			free(checkload);
+			continue;
+		}
 
-			media *toFree = checkload;
-			checkload = checkload->next;
-			free(toFree);
-		} else {
-			checkload = checkload->next;
+		if (checkload->track) {
+			populateJTrackInstance(env, checkload->javainstance, checkload->track);
+		} else if (checkload->artist) {
+			populateJArtistInstance(env, checkload->javainstance, checkload->artist, checkload->browse);
+		} else if (checkload->album) {
+			populateJAlbumInstance(env, checkload->javainstance, checkload->album, checkload->browse);
 		}
+		(*env)->DeleteGlobalRef(env, checkload->javainstance);
+		free(checkload);
+		__sync_fetch_and_add(&g_loadsCompleted, 1);
 	}
-	if (env)
-		detachThread();
+	endCallback(env);
+
+	jlong spent = monotonicNanos() - started;
+	__sync_fetch_and_add(&g_checkLoadedCalls, 1);
+	__sync_fetch_and_add(&g_checkLoadedNanos, spent);
+	if (spent > g_checkLoadedMaxNanos) g_checkLoadedMaxNanos = spent;
+}
 
+JNIEXPORT void JNICALL Java_jahspotify_impl_JahSpotifyImpl_nativeReadStatistics(JNIEnv *env, jobject obj, jobject statistics) {
+	setObjectLongField(env, statistics, g_jni.statistics.threadAttaches, getAttachCount());
+	setObjectLongField(env, statistics, g_jni.statistics.threadDetaches, getDetachCount());
+	setObjectBooleanField(env, statistics, g_jni.statistics.persistentAttach, isPersistentAttach() ? JNI_TRUE : JNI_FALSE);
+
+	pthread_mutex_lock(&g_loading_mutex);
+	setObjectIntField(env, statistics, g_jni.statistics.pendingLoads, g_pendingCount);
+	setObjectIntField(env, statistics, g_jni.statistics.maxPendingLoads, g_pendingMax);
+	setObjectLongField(env, statistics, g_jni.statistics.pendingWaiters, g_pendingWaiters);
 	pthread_mutex_unlock(&g_loading_mutex);
+
+	setObjectLongField(env, statistics, g_jni.statistics.loadsCompleted, g_loadsCompleted);
+	setObjectLongField(env, statistics, g_jni.statistics.checkLoadedCalls, g_checkLoadedCalls);
+	setObjectLongField(env, statistics, g_jni.statistics.checkLoadedNanos, g_checkLoadedNanos);
+	setObjectLongField(env, statistics, g_jni.statistics.checkLoadedMaxNanos, g_checkLoadedMaxNanos);
+
+	setObjectLongField(env, statistics, g_jni.statistics.playRequests, g_playRequests);
+	setObjectLongField(env, statistics, g_jni.statistics.parkedPlays, g_parkedPlays);
+	setObjectLongField(env, statistics, g_jni.statistics.timeToFirstAudioCount, g_firstAudioCount);
+	setObjectLongField(env, statistics, g_jni.statistics.timeToFirstAudioNanos, g_firstAudioNanos);
+	setObjectLongField(env, statistics, g_jni.statistics.timeToFirstAudioMaxNanos, g_firstAudioMaxNanos);
+	setObjectLongField(env, statistics, g_jni.statistics.lastTimeToFirstAudioNanos, g_lastFirstAudioNanos);
 }
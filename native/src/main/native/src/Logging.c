@@ -1,10 +1,11 @@
 #include "Logging.h"
+#include "JNICache.h"
 
-extern jclass g_loggerClass;
-
-static void logToJava(const char *method, const char *component, const char *subComponent, const char *format, va_list args) {
-	jmethodID jMethod = NULL;
+static void logToJava(jmethodID jMethod, const char *component, const char *subComponent, const char *format, va_list args) {
 	JNIEnv* env = NULL;
+	jstring componentStr = NULL;
+	jstring subComponentStr = NULL;
+	jstring messageStr = NULL;
 
 	// FIXME: This should probably be a little more clever?
 	char *buffer = calloc(1, 1024);
@@ -15,17 +16,15 @@ static void logToJava(const char *method, const char *component, const char *sub
 		goto fail;
 	}
 
-	jstring componentStr = (*env)->NewStringUTF(env, component);
-	jstring subComponentStr = (*env)->NewStringUTF(env, subComponent);
-	jstring messageStr = (*env)->NewStringUTF(env, buffer);
-
-	jMethod = (*env)->GetStaticMethodID(env, g_loggerClass, method, "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
-
 	if (!jMethod) {
 		goto fail;
 	}
 
-	(*env)->CallStaticVoidMethod(env, g_loggerClass, jMethod, componentStr, subComponentStr, messageStr);
+	componentStr = (*env)->NewStringUTF(env, component);
+	subComponentStr = (*env)->NewStringUTF(env, subComponent);
+	messageStr = (*env)->NewStringUTF(env, buffer);
+
+	(*env)->CallStaticVoidMethod(env, g_jni.logger.clazz, jMethod, componentStr, subComponentStr, messageStr);
 
 	fail: if (buffer) {
 		free(buffer);
@@ -42,60 +41,58 @@ static void logToJava(const char *method, const char *component, const char *sub
 void log_trace(const char *component, const char *subComponent, const char *format, ...) {
 	va_list args;
 	va_start(args, format);
-	logToJava("trace", component, subComponent, format, args);
+	logToJava(g_jni.logger.trace, component, subComponent, format, args);
 	va_end(args);
 }
 
 void log_debug(const char *component, const char *subComponent, const char *format, ...) {
 	va_list args;
 	va_start(args, format);
-	logToJava("debug", component, subComponent, format, args);
+	logToJava(g_jni.logger.debug, component, subComponent, format, args);
 	va_end(args);
 }
 
 void log_info(const char *component, const char *subComponent, char *format, ...) {
 	va_list args;
 	va_start(args, format);
-	logToJava("info", component, subComponent, format, args);
+	logToJava(g_jni.logger.info, component, subComponent, format, args);
 	va_end(args);
 }
 
 void log_warn(const char *component, const char *subComponent, char *format, ...) {
 	va_list args;
 	va_start(args, format);
-	logToJava("warn", component, subComponent, format, args);
+	logToJava(g_jni.logger.warn, component, subComponent, format, args);
 	va_end(args);
 }
 
 void log_error(const char *component, const char *subComponent, char *format, ...) {
 	va_list args;
 	va_start(args, format);
-	logToJava("error", component, subComponent, format, args);
+	logToJava(g_jni.logger.error, component, subComponent, format, args);
 	va_end(args);
 }
 
 void log_fatal(const char *component, const char *subComponent, char *format, ...) {
 	va_list args;
 	va_start(args, format);
-	logToJava("fatal", component, subComponent, format, args);
+	logToJava(g_jni.logger.fatal, component, subComponent, format, args);
 	va_end(args);
 }
 
 void log_d(jobject o) {
-	jmethodID jMethod = NULL;
+	jmethodID jMethod = g_jni.logger.d;
 	JNIEnv* env = NULL;
 
 	if (!retrieveEnv((JNIEnv*) &env)) {
 		goto fail;
 	}
 
-	jMethod = (*env)->GetStaticMethodID(env, g_loggerClass, "d", "(Ljava/lang/Object;)V");
-
 	if (!jMethod) {
 		goto fail;
 	}
 
-	(*env)->CallStaticVoidMethod(env, g_loggerClass, jMethod, o);
+	(*env)->CallStaticVoidMethod(env, g_jni.logger.clazz, jMethod, o);
 
 	fail:
 	detachThread();